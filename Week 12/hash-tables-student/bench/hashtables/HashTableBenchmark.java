@@ -0,0 +1,532 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import hashmaps.SimpleHashMap;
+
+/**
+ * Benchmarks the HashTable implementations against each other, and prints the
+ * results as JSON.
+ *
+ * For each implementation, measured are: the throughput of add() into a new
+ * table (including its resizes), and of addAll() of all the elements at once,
+ * of contains() for elements that are present and for elements that are not,
+ * and of containsAll() of the present elements at once, of scanning every
+ * element with an iterator, with forEach() and with a parallel stream, the
+ * latency percentiles of single add()s as the table grows, the throughput of
+ * add() and contains() for some Strings that all have the same hash code (as
+ * an adversary might choose them), and the heap the table uses per element,
+ * not counting the elements themselves. Tables that can be shared between
+ * threads are also run through a mixed workload (80% contains(), 10% add()
+ * and 10% remove()) by each of some numbers of threads at once;
+ * SynchronizedChainingHashTable, a ChainingHashTable behind a single lock, is
+ * the baseline for that. The elements are random non-negative Integers,
+ * created before anything is measured. Each measurement is repeated for some
+ * warmup iterations, whose results are discarded, and then for some measured
+ * iterations; the median is reported.
+ *
+ * Run it from the project directory, after compiling src, support and bench:
+ *
+ *     java -cp bin hashtables.HashTableBenchmark --elements=1000000
+ *
+ * Options (with their defaults) are --elements=1000000, --seed=42,
+ * --warmup=3, --iterations=5, --threads=1,2,4,8, --colliding=8192 and
+ * --tables=ChainingHashTable,IncrementalChainingHashTable,RobinHoodHashTable,ConcurrentHashTable,SynchronizedChainingHashTable,IntHashSet,SimpleHashMap.
+ * IntHashSet is not a HashTable; it gets only the add, contains and bytes per
+ * element measurements, of the same elements unboxed. SimpleHashMap is
+ * measured by put(), get() of present and absent keys, and put() then
+ * remove() of every key, with each element mapped to itself.
+ * Tables benchmarked in the same run share the JIT's profile of the benchmark
+ * loops, and the heap; for the fairest comparison, run each in its own JVM,
+ * with --tables=ChainingHashTable and so on.
+ */
+public final class HashTableBenchmark {
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final List<String> results = new ArrayList<>();
+
+    private HashTableBenchmark(String[] args) {
+        options.put("elements", "1000000");
+        options.put("seed", "42");
+        options.put("warmup", "3");
+        options.put("iterations", "5");
+        options.put("threads", "1,2,4,8");
+        options.put("colliding", "8192");
+        options.put("tables", "ChainingHashTable,IncrementalChainingHashTable,RobinHoodHashTable,"
+                + "ConcurrentHashTable,SynchronizedChainingHashTable,IntHashSet,SimpleHashMap");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("expected --option=value, not " + arg);
+            }
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+    }
+
+    private int option(String name) {
+        return Integer.parseInt(options.get(name));
+    }
+
+    public static void main(String[] args) {
+        System.out.println(new HashTableBenchmark(args).run());
+    }
+
+    private String run() {
+        int n = option("elements");
+        Random random = new Random(Long.parseLong(options.get("seed")));
+        // present and absent elements, drawn independently from disjoint
+        // ranges of the non-negative ints
+        Integer[] present = new Integer[n];
+        Integer[] absent = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            present[i] = random.nextInt(1 << 30);
+            absent[i] = (1 << 30) + random.nextInt(1 << 30);
+        }
+        Map<String, TableFactory> tables = new LinkedHashMap<>();
+        tables.put("ChainingHashTable", ChainingHashTable::new);
+        tables.put("IncrementalChainingHashTable", HashTableBenchmark::incrementalChainingHashTable);
+        tables.put("RobinHoodHashTable", RobinHoodHashTable::new);
+        // the tables that can be shared between threads
+        Map<String, TableFactory> concurrent = new LinkedHashMap<>();
+        concurrent.put("ConcurrentHashTable", ConcurrentHashTable::new);
+        concurrent.put("SynchronizedChainingHashTable", HashTableBenchmark::synchronizedChainingHashTable);
+        tables.putAll(concurrent);
+
+        for (String name : options.get("tables").split(",")) {
+            if (name.equals("IntHashSet")) {
+                intHashSet(present, absent);
+                continue;
+            }
+            if (name.equals("SimpleHashMap")) {
+                simpleHashMap(present, absent);
+                continue;
+            }
+            TableFactory kind = tables.get(name);
+            if (kind == null) {
+                throw new IllegalArgumentException("no such table: " + name);
+            }
+            Supplier<HashTable<Integer>> factory = kind::create;
+            @SuppressWarnings("unchecked")
+            HashTable<Integer>[] table = (HashTable<Integer>[]) new HashTable<?>[1];
+            throughput(name + ".add", n, () -> {
+                table[0] = null;
+                table[0] = factory.get();
+                for (Integer x : present) {
+                    table[0].add(x);
+                }
+            });
+            List<Integer> elements = Arrays.asList(present);
+            throughput(name + ".addAll", n, () -> {
+                table[0] = null;
+                table[0] = factory.get();
+                table[0].addAll(elements);
+            });
+            throughput(name + ".containsHit", n, () -> {
+                int found = 0;
+                for (Integer x : present) {
+                    if (table[0].contains(x)) {
+                        found++;
+                    }
+                }
+                check(found == present.length);
+            });
+            throughput(name + ".containsAllHit", n, () -> {
+                check(table[0].containsAll(elements).cardinality() == present.length);
+            });
+            throughput(name + ".containsMiss", n, () -> {
+                int found = 0;
+                for (Integer x : absent) {
+                    if (table[0].contains(x)) {
+                        found++;
+                    }
+                }
+                check(found == 0);
+            });
+            long sum = 0;
+            for (Integer x : table[0]) {
+                sum += x;
+            }
+            long expected = sum;
+            throughput(name + ".iterate", table[0].size(), () -> {
+                long total = 0;
+                for (Integer x : table[0]) {
+                    total += x;
+                }
+                check(total == expected);
+            });
+            throughput(name + ".forEach", table[0].size(), () -> {
+                long[] total = {0};
+                table[0].forEach(x -> total[0] += x);
+                check(total[0] == expected);
+            });
+            throughput(name + ".parallelStream", table[0].size(), () -> {
+                check(table[0].parallelStream().mapToLong(x -> x).sum() == expected);
+            });
+            table[0] = null;
+            colliding(name, kind::create);
+            addLatency(name + ".addLatency", factory, present);
+            long before = usedHeap();
+            HashTable<Integer> t = factory.get();
+            for (Integer x : present) {
+                t.add(x);
+            }
+            long bytes = usedHeap() - before;
+            result(name + ".bytesPerElement", "bytes", (double) bytes / t.size(), t.size());
+            t = null;
+            if (concurrent.containsKey(name)) {
+                for (String threads : options.get("threads").split(",")) {
+                    mixed(name + ".mixed.threads" + threads, factory, Integer.parseInt(threads), present, absent);
+                }
+            }
+        }
+
+        StringBuilder json = new StringBuilder("{\n  \"config\": {");
+        String separator = "";
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            json.append(separator).append("\"").append(option.getKey()).append("\": \"").append(option.getValue()).append("\"");
+            separator = ", ";
+        }
+        json.append(", \"java\": \"").append(System.getProperty("java.version")).append("\"},\n");
+        json.append("  \"results\": [\n    ").append(String.join(",\n    ", results)).append("\n  ]\n}");
+        return json.toString();
+    }
+
+    /**
+     * The same add and contains measurements as for the HashTables, and the
+     * bytes per element, for an IntHashSet of the same elements, unboxed.
+     */
+    private void intHashSet(Integer[] present, Integer[] absent) {
+        int n = present.length;
+        int[] in = new int[n];
+        int[] out = new int[n];
+        for (int i = 0; i < n; i++) {
+            in[i] = present[i];
+            out[i] = absent[i];
+        }
+        IntHashSet[] set = new IntHashSet[1];
+        throughput("IntHashSet.add", n, () -> {
+            set[0] = new IntHashSet();
+            for (int x : in) {
+                set[0].add(x);
+            }
+        });
+        throughput("IntHashSet.containsHit", n, () -> {
+            int found = 0;
+            for (int x : in) {
+                if (set[0].contains(x)) {
+                    found++;
+                }
+            }
+            check(found == n);
+        });
+        throughput("IntHashSet.containsMiss", n, () -> {
+            int found = 0;
+            for (int x : out) {
+                if (set[0].contains(x)) {
+                    found++;
+                }
+            }
+            check(found == 0);
+        });
+        set[0] = null;
+        long before = usedHeap();
+        IntHashSet s = new IntHashSet();
+        for (int x : in) {
+            s.add(x);
+        }
+        long bytes = usedHeap() - before;
+        result("IntHashSet.bytesPerElement", "bytes", (double) bytes / s.size(), s.size());
+    }
+
+    /**
+     * Measures add() and contains() of Strings made of blocks of "Aa" and
+     * "BB", which all have the same hash code.
+     */
+    private void colliding(String name, Supplier<HashTable<String>> factory) {
+        int n = Integer.highestOneBit(option("colliding"));
+        List<String> strings = new ArrayList<>();
+        strings.add("");
+        while (strings.size() < n) {
+            List<String> longer = new ArrayList<>();
+            for (String s : strings) {
+                longer.add(s + "Aa");
+                longer.add(s + "BB");
+            }
+            strings = longer;
+        }
+        List<String> elements = strings;
+        @SuppressWarnings("unchecked")
+        HashTable<String>[] table = (HashTable<String>[]) new HashTable<?>[1];
+        throughput(name + ".collidingAdd", n, () -> {
+            table[0] = factory.get();
+            for (String s : elements) {
+                table[0].add(s);
+            }
+        });
+        throughput(name + ".collidingContains", n, () -> {
+            int found = 0;
+            for (String s : elements) {
+                if (table[0].contains(s)) {
+                    found++;
+                }
+            }
+            check(found == n);
+        });
+    }
+
+    private void simpleHashMap(Integer[] present, Integer[] absent) {
+        int n = present.length;
+        @SuppressWarnings("unchecked")
+        SimpleHashMap<Integer, Integer>[] map = (SimpleHashMap<Integer, Integer>[]) new SimpleHashMap<?, ?>[1];
+        throughput("SimpleHashMap.put", n, () -> {
+            map[0] = new SimpleHashMap<>();
+            for (Integer x : present) {
+                map[0].put(x, x);
+            }
+        });
+        throughput("SimpleHashMap.getHit", n, () -> {
+            int found = 0;
+            for (Integer x : present) {
+                if (map[0].get(x) != null) {
+                    found++;
+                }
+            }
+            check(found == n);
+        });
+        throughput("SimpleHashMap.getMiss", n, () -> {
+            int found = 0;
+            for (Integer x : absent) {
+                if (map[0].get(x) != null) {
+                    found++;
+                }
+            }
+            check(found == 0);
+        });
+        throughput("SimpleHashMap.putAndRemove", 2 * n, () -> {
+            SimpleHashMap<Integer, Integer> m = new SimpleHashMap<>();
+            for (Integer x : present) {
+                m.put(x, x);
+            }
+            for (Integer x : present) {
+                m.remove(x);
+            }
+            check(m.size() == 0);
+        });
+    }
+
+    private static void check(boolean ok) {
+        if (!ok) {
+            throw new IllegalStateException("wrong result");
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Runs an operation over n elements for some warmup and measured
+     * iterations, and records the median throughput of the measured ones.
+     */
+    private void throughput(String name, int n, Runnable operation) {
+        int warmup = option("warmup");
+        int iterations = option("iterations");
+        long[] nanos = new long[iterations];
+        for (int i = -warmup; i < iterations; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            if (i >= 0) {
+                nanos[i] = System.nanoTime() - start;
+            }
+        }
+        Arrays.sort(nanos);
+        result(name, "operations/s", n * 1e9 / nanos[iterations / 2], (long) n * iterations);
+    }
+
+    /**
+     * Times every add() of the elements into new tables, over the measured
+     * iterations, and records the percentiles of their latency, and the
+     * slowest of the adds that grew the table (whose capacity changed). The
+     * slowest adds may also include garbage collection pauses.
+     */
+    private void addLatency(String name, Supplier<HashTable<Integer>> factory, Integer[] elements) {
+        int warmup = option("warmup");
+        int iterations = option("iterations");
+        long[] samples = new long[elements.length * iterations];
+        int count = 0;
+        long growMax = 0;
+        int grows = 0;
+        for (int i = -warmup; i < iterations; i++) {
+            HashTable<Integer> t = factory.get();
+            for (Integer x : elements) {
+                int capacity = t.capacity();
+                long start = System.nanoTime();
+                t.add(x);
+                long nanos = System.nanoTime() - start;
+                if (i >= 0) {
+                    samples[count++] = nanos;
+                    if (t.capacity() != capacity) {
+                        growMax = Math.max(growMax, nanos);
+                        grows++;
+                    }
+                }
+            }
+        }
+        Arrays.sort(samples);
+        results.add(String.format(Locale.ROOT,
+                "{\"name\": \"%s\", \"unit\": \"ns\", \"p50\": %d, \"p99\": %d, \"p99.9\": %d, \"p99.99\": %d, "
+                + "\"max\": %d, \"growMax\": %d, \"grows\": %d, \"operations\": %d}",
+                name, percentile(samples, 50), percentile(samples, 99), percentile(samples, 99.9),
+                percentile(samples, 99.99), samples[samples.length - 1], growMax, grows, samples.length));
+    }
+
+    /**
+     * Fills a table with half of the present elements, then has some threads
+     * at once perform n operations in all on it, each a contains() of a
+     * present or absent element (80%), or an add() (10%) or remove() (10%) of
+     * a present one; and records the median throughput of the measured
+     * iterations. Adds and removes are equally likely, so every iteration
+     * runs on a table about as full as the first.
+     */
+    private void mixed(String name, Supplier<HashTable<Integer>> factory, int threads,
+            Integer[] present, Integer[] absent) {
+        int n = present.length;
+        long seed = Long.parseLong(options.get("seed"));
+        HashTable<Integer> t = factory.get();
+        for (int i = 0; i < n / 2; i++) {
+            t.add(present[i]);
+        }
+        throughput(name, n, () -> {
+            CountDownLatch start = new CountDownLatch(1);
+            Thread[] running = new Thread[threads];
+            for (int i = 0; i < threads; i++) {
+                Random random = new Random(seed + i);
+                int operations = n / threads;
+                running[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < operations; j++) {
+                        int op = random.nextInt(10);
+                        Integer x = present[random.nextInt(n)];
+                        if (op == 0) {
+                            t.add(x);
+                        } else if (op == 1) {
+                            t.remove(x);
+                        } else if (op < 6) {
+                            t.contains(x);
+                        } else {
+                            t.contains(absent[random.nextInt(n)]);
+                        }
+                    }
+                });
+                running[i].start();
+            }
+            start.countDown();
+            for (Thread thread : running) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Makes empty tables of one kind, for elements of any type.
+     */
+    private interface TableFactory {
+        <E> HashTable<E> create();
+    }
+
+    private static <E> HashTable<E> incrementalChainingHashTable() {
+        return new ChainingHashTable<>(7, true);
+    }
+
+    private static <E> HashTable<E> synchronizedChainingHashTable() {
+        return new SynchronizedHashTable<>(new ChainingHashTable<>());
+    }
+
+    /**
+     * A HashTable shared between threads by locking the whole table for
+     * every operation.
+     */
+    private static final class SynchronizedHashTable<E> implements HashTable<E> {
+        private final HashTable<E> table;
+
+        SynchronizedHashTable(HashTable<E> table) {
+            this.table = table;
+        }
+
+        @Override
+        public synchronized int capacity() {
+            return table.capacity();
+        }
+
+        @Override
+        public synchronized int size() {
+            return table.size();
+        }
+
+        @Override
+        public synchronized double loadFactor() {
+            return table.loadFactor();
+        }
+
+        @Override
+        public synchronized boolean add(E e) {
+            return table.add(e);
+        }
+
+        @Override
+        public synchronized boolean remove(E e) {
+            return table.remove(e);
+        }
+
+        @Override
+        public synchronized boolean contains(E e) {
+            return table.contains(e);
+        }
+
+        @Override
+        public synchronized E get(E e) {
+            return table.get(e);
+        }
+
+        /**
+         * Not safe to use while other threads modify the table.
+         */
+        @Override
+        public Iterator<E> iterator() {
+            return table.iterator();
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[(int) Math.max(0, Math.ceil(sorted.length * percentile / 100) - 1)];
+    }
+
+    private void result(String name, String unit, double value, long operations) {
+        results.add(String.format(Locale.ROOT, "{\"name\": \"%s\", \"unit\": \"%s\", \"value\": %.4f, \"operations\": %d}",
+                name, unit, value, operations));
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+package hashmaps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts values of some type to and from a fixed number of bytes, so that
+ * MappedHashMap can store them in a file.
+ *
+ * Two values that are equal must be written as the same bytes, since
+ * MappedHashMap compares keys by their bytes.
+ */
+public interface Codec<T> {
+
+    /**
+     * @return the number of bytes every value is written as
+     */
+    int size();
+
+    /**
+     * Write a value as size() bytes, starting at an index of a buffer.
+     *
+     * @throws IllegalArgumentException if the value cannot be written in
+     *         size() bytes
+     */
+    void write(ByteBuffer buffer, int index, T value);
+
+    /**
+     * @return the value written as the size() bytes starting at an index of
+     *         a buffer
+     */
+    T read(ByteBuffer buffer, int index);
+
+    Codec<Integer> INTEGER = new Codec<Integer>() {
+        @Override
+        public int size() {
+            return 4;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int index, Integer value) {
+            buffer.putInt(index, value);
+        }
+
+        @Override
+        public Integer read(ByteBuffer buffer, int index) {
+            return buffer.getInt(index);
+        }
+    };
+
+    Codec<Long> LONG = new Codec<Long>() {
+        @Override
+        public int size() {
+            return 8;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int index, Long value) {
+            buffer.putLong(index, value);
+        }
+
+        @Override
+        public Long read(ByteBuffer buffer, int index) {
+            return buffer.getLong(index);
+        }
+    };
+
+    Codec<Double> DOUBLE = new Codec<Double>() {
+        @Override
+        public int size() {
+            return 8;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int index, Double value) {
+            // doubleToLongBits, unlike putDouble, writes every NaN as the same
+            // bytes, since they are all equal as Doubles
+            buffer.putLong(index, Double.doubleToLongBits(value));
+        }
+
+        @Override
+        public Double read(ByteBuffer buffer, int index) {
+            return Double.longBitsToDouble(buffer.getLong(index));
+        }
+    };
+
+    /**
+     * Returns a Codec for Strings of at most some number of bytes in UTF-8,
+     * padded with zero bytes. Strings ending in the character \0 cannot be
+     * read back exactly.
+     */
+    static Codec<String> string(int bytes) {
+        if (bytes < 1) {
+            throw new IllegalArgumentException("bytes must be positive");
+        }
+        return new Codec<String>() {
+            @Override
+            public int size() {
+                return bytes;
+            }
+
+            @Override
+            public void write(ByteBuffer buffer, int index, String value) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                if (utf8.length > bytes) {
+                    throw new IllegalArgumentException("longer than " + bytes + " bytes: " + value);
+                }
+                buffer.put(index, utf8);
+                for (int i = utf8.length; i < bytes; i++) {
+                    buffer.put(index + i, (byte) 0);
+                }
+            }
+
+            @Override
+            public String read(ByteBuffer buffer, int index) {
+                int length = bytes;
+                while (length > 0 && buffer.get(index + length - 1) == 0) {
+                    length--;
+                }
+                byte[] utf8 = new byte[length];
+                buffer.get(index, utf8);
+                return new String(utf8, StandardCharsets.UTF_8);
+            }
+        };
+    }
+}
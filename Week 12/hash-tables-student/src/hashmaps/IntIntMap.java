@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+package hashmaps;
+
+import java.util.Arrays;
+
+import hashtables.IntHashSet;
+
+/**
+ * A map from ints to ints, stored without boxing. It is the primitive
+ * counterpart of a SimpleMap<Integer, Integer>: there is no null, so get() is
+ * replaced by getOrDefault() and containsKey().
+ *
+ * Like IntHashSet, it uses open addressing with linear probing, Fibonacci
+ * hashing and an occupancy bitmap, with a value array parallel to the key
+ * array, so no entry objects are created and put() and getOrDefault()
+ * allocate nothing.
+ */
+public class IntIntMap {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private int[] keys;
+    private int[] values;
+    private long[] occupied;
+    private int size;
+    private int shift;
+
+    /**
+     * Instantiate a new map, with an initial capacity of 8.
+     */
+    public IntIntMap() {
+        this(6);
+    }
+
+    /**
+     * Instantiate a new map, with an initial capacity sufficient to hold n
+     * entries without resizing.
+     *
+     * @throws IllegalArgumentException if n is more than a map can hold
+     */
+    public IntIntMap(int n) {
+        if (n > MAX_CAPACITY / 4 * 3) {
+            throw new IllegalArgumentException("too many entries: " + n);
+        }
+        int capacity = 8;
+        while (capacity * 3L / 4 < n) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        occupied = new long[(capacity + 63) / 64];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /**
+     * @return the number of distinct keys stored in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    private int home(int key) {
+        return (key * 0x9e3779b9) >>> shift;
+    }
+
+    private boolean isOccupied(int i) {
+        return (occupied[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return the slot holding key, or -1 - the empty slot where it would go
+     */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (isOccupied(i)) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
+
+    public boolean containsKey(int k) {
+        return find(k) >= 0;
+    }
+
+    /**
+     * Associate a value with a key, overwriting any value it had.
+     */
+    public void put(int k, int v) {
+        int i = find(k);
+        if (i < 0) {
+            if (size + 1 > keys.length * 3L / 4) {
+                resize();
+                i = find(k);
+            }
+            i = -1 - i;
+            keys[i] = k;
+            occupied[i >>> 6] |= 1L << i;
+            size++;
+        }
+        values[i] = v;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        long[] oldOccupied = occupied;
+        if (oldKeys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("too many entries: " + size);
+        }
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((oldOccupied[i >>> 6] & (1L << i)) != 0) {
+                int j = home(oldKeys[i]);
+                while (isOccupied(j)) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                occupied[j >>> 6] |= 1L << j;
+            }
+        }
+    }
+
+    /**
+     * @return the value associated with k, or defaultValue if k is not in the
+     *         map
+     */
+    public int getOrDefault(int k, int defaultValue) {
+        int i = find(k);
+        return i < 0 ? defaultValue : values[i];
+    }
+
+    /**
+     * Remove a key from the map, if present.
+     *
+     * @return the value that was associated with k, or defaultValue if k was
+     *         not in the map
+     */
+    public int remove(int k, int defaultValue) {
+        int i = find(k);
+        if (i < 0) {
+            return defaultValue;
+        }
+        int result = values[i];
+        int mask = keys.length - 1;
+        // backward-shift deletion, as in IntHashSet
+        for (int j = (i + 1) & mask; isOccupied(j); j = (j + 1) & mask) {
+            if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        occupied[i >>> 6] &= ~(1L << i);
+        size--;
+        return result;
+    }
+
+    /**
+     * Remove every entry from the map, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(occupied, 0);
+        size = 0;
+    }
+
+    /**
+     * Return the set of keys stored in the map. This set does not share
+     * structure with the internals of the map.
+     */
+    public IntHashSet keys() {
+        IntHashSet result = new IntHashSet(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (isOccupied(i)) {
+                result.add(keys[i]);
+            }
+        }
+        return result;
+    }
+}
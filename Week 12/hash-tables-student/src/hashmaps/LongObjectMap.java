@@ -0,0 +1,207 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+package hashmaps;
+
+import java.util.Arrays;
+
+import hashtables.LongHashSet;
+
+/**
+ * A map from longs to objects, with the keys stored without boxing. It
+ * behaves like a SimpleMap<Long, V>, whose methods it mirrors with long keys.
+ *
+ * Like LongHashSet, it uses open addressing with linear probing, Fibonacci
+ * hashing and an occupancy bitmap, with a value array parallel to the key
+ * array, so no entry objects are created and put() and get() allocate
+ * nothing. Null values may be stored; get() cannot tell them from absent
+ * keys, but containsKey() can.
+ */
+public class LongObjectMap<V> {
+
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    private long[] keys;
+    private Object[] values;
+    private long[] occupied;
+    private int size;
+    private int shift;
+
+    /**
+     * Instantiate a new map, with an initial capacity of 8.
+     */
+    public LongObjectMap() {
+        this(6);
+    }
+
+    /**
+     * Instantiate a new map, with an initial capacity sufficient to hold n
+     * entries without resizing.
+     *
+     * @throws IllegalArgumentException if n is more than a map can hold
+     */
+    public LongObjectMap(int n) {
+        if (n > MAX_CAPACITY / 4 * 3) {
+            throw new IllegalArgumentException("too many entries: " + n);
+        }
+        int capacity = 8;
+        while (capacity * 3L / 4 < n) {
+            capacity *= 2;
+        }
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        occupied = new long[(capacity + 63) / 64];
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /**
+     * @return the number of distinct keys stored in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    private int home(long key) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> shift);
+    }
+
+    private boolean isOccupied(int i) {
+        return (occupied[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return the slot holding key, or -1 - the empty slot where it would go
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (isOccupied(i)) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
+
+    public boolean containsKey(long k) {
+        return find(k) >= 0;
+    }
+
+    /**
+     * Associate a value with a key, overwriting any value it had.
+     */
+    public void put(long k, V v) {
+        int i = find(k);
+        if (i < 0) {
+            if (size + 1 > keys.length * 3L / 4) {
+                resize();
+                i = find(k);
+            }
+            i = -1 - i;
+            keys[i] = k;
+            occupied[i >>> 6] |= 1L << i;
+            size++;
+        }
+        values[i] = v;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        long[] oldOccupied = occupied;
+        if (oldKeys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("too many entries: " + size);
+        }
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((oldOccupied[i >>> 6] & (1L << i)) != 0) {
+                int j = home(oldKeys[i]);
+                while (isOccupied(j)) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+                occupied[j >>> 6] |= 1L << j;
+            }
+        }
+    }
+
+    /**
+     * @return the value associated with k, or null if k is not in the map
+     */
+    public V get(long k) {
+        return getOrDefault(k, null);
+    }
+
+    /**
+     * @return the value associated with k, or defaultValue if k is not in the
+     *         map
+     */
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(long k, V defaultValue) {
+        int i = find(k);
+        return i < 0 ? defaultValue : (V) values[i];
+    }
+
+    /**
+     * Remove a key from the map, if present.
+     *
+     * @return the value that was associated with k, or null if k was not in
+     *         the map
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long k) {
+        int i = find(k);
+        if (i < 0) {
+            return null;
+        }
+        V result = (V) values[i];
+        int mask = keys.length - 1;
+        // backward-shift deletion, as in LongHashSet
+        for (int j = (i + 1) & mask; isOccupied(j); j = (j + 1) & mask) {
+            if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        occupied[i >>> 6] &= ~(1L << i);
+        // let the value be collected
+        values[i] = null;
+        size--;
+        return result;
+    }
+
+    /**
+     * Remove every entry from the map, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(occupied, 0);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Return the set of keys stored in the map. This set does not share
+     * structure with the internals of the map.
+     */
+    public LongHashSet keys() {
+        LongHashSet result = new LongHashSet(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (isOccupied(i)) {
+                result.add(keys[i]);
+            }
+        }
+        return result;
+    }
+}
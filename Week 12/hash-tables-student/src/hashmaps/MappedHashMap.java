@@ -0,0 +1,416 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+package hashmaps;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An implementation of a SimpleMap that keeps its entries in a memory-mapped
+ * file, rather than in objects on the heap, so that it can hold more entries
+ * than would fit in the heap, adds nothing per entry for the garbage collector
+ * to trace, and can be reopened, instantly, from the same file after a
+ * restart.
+ *
+ * Keys and values are stored as a fixed number of bytes each, written and read
+ * by Codecs. Keys are hashed and compared by those bytes, not by hashCode()
+ * and equals(), so the layout of the file does not depend on the JVM that
+ * wrote it. Null keys and values are not supported.
+ *
+ * The file is a 32-byte header (magic number, version, key and value sizes,
+ * capacity and size) followed by an array of capacity slots, each a 4-byte tag
+ * and then the key and value bytes. The tag of an empty slot is 0, and that of
+ * a full one is the key's hash, with its top bit set. Collisions are resolved
+ * by linear probing from the slot given by the low bits of the tag (the
+ * capacity is a power of two), and removal shifts the following slots of the
+ * run back (backward-shift deletion), as in IntHashSet. The slots are mapped
+ * in chunks of at most 1 GiB, since a single mapping is limited to 2 GiB.
+ *
+ * When a put() would push the load factor over 0.75, the map is rehashed into
+ * a new file of twice the capacity, which then replaces the old one. Changes
+ * are written to the mapped file as they are made, but are only certain to
+ * reach the disk once force() or close() is called; a map whose file is
+ * reopened after a crash may have lost, or partly applied, the changes since.
+ *
+ * A MappedHashMap is not safe for use by several threads at once.
+ */
+public class MappedHashMap<K, V> implements SimpleMap<K, V>, Closeable {
+
+    static final int MAGIC = 0x534d4150; // "SMAP"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    private static final long CHUNK_BYTES = 1L << 30;
+    private static final long MAX_CAPACITY = 1L << 30;
+
+    private final Path file;
+    private final Codec<K> keyCodec;
+    private final Codec<V> valueCodec;
+    private final int keySize;
+    private final int slotSize;
+    // the bytes of the key most recently hashed
+    private final ByteBuffer key;
+
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] chunks;
+    private int chunkShift;
+    private long capacity;
+    private long size;
+
+    /**
+     * Open the map stored in a file, or create an empty one in it, if there is
+     * no such file, with an initial capacity of 8.
+     *
+     * @throws IOException if the file cannot be read or created, or is not a
+     *         MappedHashMap with keys and values of the codecs' sizes
+     */
+    public MappedHashMap(Path file, Codec<K> keys, Codec<V> values) throws IOException {
+        this(file, 6, keys, values);
+    }
+
+    /**
+     * Open the map stored in a file, or create an empty one in it, if there is
+     * no such file, with an initial capacity sufficient to hold n entries
+     * without resizing.
+     *
+     * @throws IOException if the file cannot be read or created, or is not a
+     *         MappedHashMap with keys and values of the codecs' sizes
+     */
+    public MappedHashMap(Path file, long n, Codec<K> keys, Codec<V> values) throws IOException {
+        this.file = file;
+        this.keyCodec = keys;
+        this.valueCodec = values;
+        this.keySize = keys.size();
+        this.slotSize = 4 + keySize + values.size();
+        this.key = ByteBuffer.allocate(keySize);
+        if (Files.exists(file)) {
+            open();
+        }
+        else {
+            long capacity = 8;
+            while (capacity * 3 / 4 < n) {
+                capacity *= 2;
+            }
+            if (capacity > MAX_CAPACITY) {
+                throw new IllegalArgumentException("too many entries: " + n);
+            }
+            use(create(file, capacity));
+        }
+    }
+
+    private void open() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(file + " is not a MappedHashMap file");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException(file + " is not a MappedHashMap file");
+            }
+            if (header.getInt(8) != keySize || header.getInt(12) != valueCodec.size()) {
+                throw new IOException(file + " holds keys of " + header.getInt(8) + " bytes and values of "
+                        + header.getInt(12) + " bytes, not " + keySize + " and " + valueCodec.size());
+            }
+            long capacity = header.getLong(16);
+            if (Long.bitCount(capacity) != 1 || capacity > MAX_CAPACITY
+                    || channel.size() != HEADER_BYTES + capacity * slotSize) {
+                throw new IOException(file + " is truncated or corrupt");
+            }
+            use(map(channel, header, capacity));
+        }
+    }
+
+    /**
+     * Creates a new file of empty slots, and maps it; the map goes on using
+     * its current file until the mapping is passed to use().
+     */
+    private Mapping create(Path path, long capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+            // mapping past the end of the file extends it, with zeros: empty slots
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putInt(0, MAGIC);
+            header.putInt(4, VERSION);
+            header.putInt(8, keySize);
+            header.putInt(12, valueCodec.size());
+            header.putLong(16, capacity);
+            header.putLong(24, 0);
+            return map(channel, header, capacity);
+        }
+    }
+
+    private Mapping map(FileChannel channel, MappedByteBuffer header, long capacity) throws IOException {
+        long slotsPerChunk = Math.min(capacity, Math.max(1, Long.highestOneBit(CHUNK_BYTES / slotSize)));
+        MappedByteBuffer[] chunks = new MappedByteBuffer[(int) (capacity / slotsPerChunk)];
+        for (int c = 0; c < chunks.length; c++) {
+            chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + c * slotsPerChunk * slotSize, slotsPerChunk * slotSize);
+        }
+        return new Mapping(header, chunks, Long.numberOfTrailingZeros(slotsPerChunk), capacity);
+    }
+
+    /**
+     * Switches the map over to a mapping, and the size stored in its header.
+     */
+    private void use(Mapping mapping) {
+        this.header = mapping.header;
+        this.chunks = mapping.chunks;
+        this.chunkShift = mapping.chunkShift;
+        this.capacity = mapping.capacity;
+        this.size = mapping.header.getLong(24);
+    }
+
+    private ByteBuffer chunk(long slot) {
+        return chunks[(int) (slot >>> chunkShift)];
+    }
+
+    /**
+     * @return the index of a slot in its chunk
+     */
+    private int offset(long slot) {
+        return (int) (slot & ((1L << chunkShift) - 1)) * slotSize;
+    }
+
+    /**
+     * Writes k into key, and returns its tag: a hash of its bytes, with the
+     * top bit set.
+     */
+    private int hash(K k) {
+        keyCodec.write(key, 0, k);
+        long h = 0;
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            h = (h ^ key.getLong(i)) * 0x9e3779b97f4a7c15L;
+            h ^= h >>> 32;
+        }
+        for (; i < keySize; i++) {
+            h = (h ^ key.get(i)) * 0x9e3779b97f4a7c15L;
+        }
+        // the finalizer of SplitMix64
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        h ^= h >>> 31;
+        return (int) h | 0x80000000;
+    }
+
+    private boolean keyEquals(ByteBuffer chunk, int index) {
+        int i = 0;
+        for (; i + 8 <= keySize; i += 8) {
+            if (chunk.getLong(index + i) != key.getLong(i)) {
+                return false;
+            }
+        }
+        for (; i < keySize; i++) {
+            if (chunk.get(index + i) != key.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the slot holding the key last hashed, whose tag is tag, or -1 -
+     *         the empty slot where it would go
+     */
+    private long find(int tag) {
+        long mask = capacity - 1;
+        for (long i = tag & mask;; i = (i + 1) & mask) {
+            ByteBuffer chunk = chunk(i);
+            int offset = offset(i);
+            int t = chunk.getInt(offset);
+            if (t == 0) {
+                return -1 - i;
+            }
+            if (t == tag && keyEquals(chunk, offset + 4)) {
+                return i;
+            }
+        }
+    }
+
+    private void setSize(long size) {
+        this.size = size;
+        header.putLong(24, size);
+    }
+
+    @Override
+    public int size() {
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void put(K k, V v) {
+        int tag = hash(k);
+        long i = find(tag);
+        if (i >= 0) {
+            valueCodec.write(chunk(i), offset(i) + 4 + keySize, v);
+            return;
+        }
+        if (size + 1 > capacity * 3 / 4) {
+            resize();
+            i = find(tag);
+        }
+        i = -1 - i;
+        ByteBuffer chunk = chunk(i);
+        int offset = offset(i);
+        chunk.put(offset + 4, key, 0, keySize);
+        valueCodec.write(chunk, offset + 4 + keySize, v);
+        // the tag last, so the slot is not full until its key and value are
+        chunk.putInt(offset, tag);
+        setSize(size + 1);
+    }
+
+    /**
+     * Rehashes every entry into a new file of twice the capacity, and moves it
+     * over the old file. The map switches to the new file only once it has
+     * replaced the old one; if anything fails before then, the map is left on
+     * the old file, and the new one is deleted.
+     */
+    private void resize() {
+        if (capacity * 2 > MAX_CAPACITY) {
+            throw new IllegalStateException("too many entries: " + size);
+        }
+        Path path = file.resolveSibling(file.getFileName() + ".resize");
+        try {
+            Files.deleteIfExists(path);
+            Mapping grown = create(path, capacity * 2);
+            long mask = grown.capacity - 1;
+            for (ByteBuffer chunk : chunks) {
+                for (int offset = 0; offset < chunk.capacity(); offset += slotSize) {
+                    int tag = chunk.getInt(offset);
+                    if (tag != 0) {
+                        long i = tag & mask;
+                        while (grown.chunk(i).getInt(grown.offset(i)) != 0) {
+                            i = (i + 1) & mask;
+                        }
+                        grown.chunk(i).put(grown.offset(i), chunk, offset, slotSize);
+                    }
+                }
+            }
+            grown.header.putLong(24, size);
+            force(grown.header, grown.chunks);
+            Files.move(path, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            use(grown);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public V get(K k) {
+        return getOrDefault(k, null);
+    }
+
+    @Override
+    public V getOrDefault(K k, V defaultValue) {
+        long i = find(hash(k));
+        return i < 0 ? defaultValue : valueCodec.read(chunk(i), offset(i) + 4 + keySize);
+    }
+
+    @Override
+    public V remove(K k) {
+        long i = find(hash(k));
+        if (i < 0) {
+            return null;
+        }
+        V result = valueCodec.read(chunk(i), offset(i) + 4 + keySize);
+        long mask = capacity - 1;
+        for (long j = (i + 1) & mask;; j = (j + 1) & mask) {
+            ByteBuffer chunk = chunk(j);
+            int offset = offset(j);
+            int tag = chunk.getInt(offset);
+            if (tag == 0) {
+                break;
+            }
+            // move back the entry in slot j if slot i is between its home
+            // slot and j
+            if (((j - (tag & mask)) & mask) >= ((j - i) & mask)) {
+                chunk(i).put(offset(i), chunk, offset, slotSize);
+                i = j;
+            }
+        }
+        chunk(i).putInt(offset(i), 0);
+        setSize(size - 1);
+        return result;
+    }
+
+    @Override
+    public Set<K> keys() {
+        Set<K> keys = new HashSet<K>();
+        for (ByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < chunk.capacity(); offset += slotSize) {
+                if (chunk.getInt(offset) != 0) {
+                    keys.add(keyCodec.read(chunk, offset + 4));
+                }
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Write every change made to the map to its file on disk.
+     */
+    public void force() {
+        force(header, chunks);
+    }
+
+    private static void force(MappedByteBuffer header, MappedByteBuffer[] chunks) {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        header.force();
+    }
+
+    /**
+     * Write every change made to the map to its file on disk. The map must
+     * not be used afterwards; its file is unmapped once it is garbage
+     * collected.
+     */
+    @Override
+    public void close() {
+        force();
+        chunks = null;
+        header = null;
+    }
+
+    /**
+     * The header and chunks of slots mapped from one file.
+     */
+    private final class Mapping {
+        final MappedByteBuffer header;
+        final MappedByteBuffer[] chunks;
+        final int chunkShift;
+        final long capacity;
+
+        Mapping(MappedByteBuffer header, MappedByteBuffer[] chunks, int chunkShift, long capacity) {
+            this.header = header;
+            this.chunks = chunks;
+            this.chunkShift = chunkShift;
+            this.capacity = capacity;
+        }
+
+        ByteBuffer chunk(long slot) {
+            return chunks[(int) (slot >>> chunkShift)];
+        }
+
+        int offset(long slot) {
+            return (int) (slot & ((1L << chunkShift) - 1)) * slotSize;
+        }
+    }
+}
@@ -6,24 +6,61 @@ package hashmaps;
 import java.util.HashSet;
 import java.util.Set;
 
-import hashtables.ChainingHashTable;
-
-
-
 /**
- * An implementation of a SimpleMap, built using the ChainingHashTable and 
- * SimpleMapEntry classes. This class should behave similarly to the built-in
- * java.util.HashMap, though it is much simpler!
+ * An implementation of a SimpleMap. This class should behave similarly to the
+ * built-in java.util.HashMap, though it is much simpler!
+ *
+ * Like ChainingHashTable, it chains colliding entries together in buckets,
+ * maintains a capacity equal to 2^n - 1, and resizes by incrementing n when a
+ * put() finds the load factor above 0.75. But its buckets hold entries looked
+ * up by key, whose values are replaced in place, so each operation hashes the
+ * key once and searches its bucket once, and only a put() of a new key
+ * allocates (its entry).
  */
 public class SimpleHashMap<K, V> implements SimpleMap<K, V> {
-    
+
+    private static final class Entry<K, V> {
+        final K k;
+        final int hash;
+        V v;
+        Entry<K, V> next;
+
+        Entry(K k, int hash, V v, Entry<K, V> next) {
+            this.k = k;
+            this.hash = hash;
+            this.v = v;
+            this.next = next;
+        }
+    }
+
     private int size = 0;
-    private ChainingHashTable<SimpleMapEntry<K,V>> table = new ChainingHashTable<>();
-    private Set<K> keys = new HashSet<K>();
+    private Entry<K, V>[] table = newTable(7);
 
     public SimpleHashMap() {
     }
 
+    @SuppressWarnings("unchecked")
+    private static <K, V> Entry<K, V>[] newTable(int capacity) {
+        return (Entry<K, V>[]) new Entry<?, ?>[capacity];
+    }
+
+    private static int index(int hash, int length) {
+        return (hash & 0x7fffffff) % length;
+    }
+
+    /**
+     * @return the entry for k, or null if k is not in the map
+     */
+    private Entry<K, V> find(K k) {
+        int hash = k.hashCode();
+        for (Entry<K, V> e = table[index(hash, table.length)]; e != null; e = e.next) {
+            if (e.hash == hash && e.k.equals(k)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
     @Override
     public int size() {
         return size;
@@ -31,52 +68,79 @@ public class SimpleHashMap<K, V> implements SimpleMap<K, V> {
 
     @Override
     public void put(K k, V v) {
-        SimpleMapEntry newEntry = new SimpleMapEntry<K,V>(k, v);
-        if (!table.contains(newEntry)){
-            table.add(newEntry);
-            size ++ ;
+        int hash = k.hashCode();
+        int i = index(hash, table.length);
+        for (Entry<K, V> e = table[i]; e != null; e = e.next) {
+            if (e.hash == hash && e.k.equals(k)) {
+                e.v = v;
+                return;
+            }
+        }
+        if ((double) size / table.length > 0.75) {
+            resize();
+            i = index(hash, table.length);
+        }
+        table[i] = new Entry<>(k, hash, v, table[i]);
+        size++;
+    }
+
+    private void resize() {
+        Entry<K, V>[] old = table;
+        table = newTable(old.length * 2 + 1);
+        for (Entry<K, V> bucket : old) {
+            for (Entry<K, V> e = bucket, next; e != null; e = next) {
+                next = e.next;
+                int i = index(e.hash, table.length);
+                e.next = table[i];
+                table[i] = e;
+            }
         }
-        else{
-            table.add(newEntry);
-        }        
-        keys.add(k);
-        
     }
 
     @Override
     public V get(K k) {
-        SimpleMapEntry<K, V> temp = new SimpleMapEntry<K, V>(k, null);
-        if (table.contains(temp)){
-            return table.get(temp).v;
-        }
-        return null;
+        Entry<K, V> e = find(k);
+        return e == null ? null : e.v;
     }
 
     @Override
     public V getOrDefault(K k, V defaultValue) {
-        SimpleMapEntry<K,V> temp = new SimpleMapEntry<K,V>(k, defaultValue);
-        if (table.contains(temp)){
-            return table.get(temp).v;
-        }
-        else{
-            return defaultValue;
-        }
+        Entry<K, V> e = find(k);
+        return e == null ? defaultValue : e.v;
     }
 
     @Override
     public V remove(K k) {
-        SimpleMapEntry<K,V> temp = new SimpleMapEntry<K,V>(k, null);
-        V res = getOrDefault(k, null);
-        if (table.contains(temp)){
-            size --;
+        int hash = k.hashCode();
+        int i = index(hash, table.length);
+        Entry<K, V> previous = null;
+        for (Entry<K, V> e = table[i]; e != null; previous = e, e = e.next) {
+            if (e.hash == hash && e.k.equals(k)) {
+                if (previous == null) {
+                    table[i] = e.next;
+                }
+                else {
+                    previous.next = e.next;
+                }
+                size--;
+                return e.v;
+            }
         }
-        table.remove(temp);
-        return res;
-        
+        return null;
     }
 
+    /**
+     * Returns a snapshot of the keys, built by walking the buckets; later
+     * changes to the map do not show in it, nor changes to it in the map.
+     */
     @Override
     public Set<K> keys() {
+        Set<K> keys = new HashSet<K>((int) (size / 0.75f) + 1);
+        for (Entry<K, V> bucket : table) {
+            for (Entry<K, V> e = bucket; e != null; e = e.next) {
+                keys.add(e.k);
+            }
+        }
         return keys;
-    }    
+    }
 }
@@ -1,8 +1,14 @@
 package hashtables;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 /**
  * An implementation of HashTable.
@@ -19,18 +25,59 @@ import java.util.NoSuchElementException;
  * resize by incrementing n (by one). For example, when n=3, then capacity=7.
  * When size=6, then load factor ~=0.86. The addition of the seventh item would
  * trigger a resize, increasing the capacity of the array to 15.
+ * 
+ * By default a resize rehashes every element at once, inside the add() that
+ * triggers it. A table created with incrementalResize set instead keeps the
+ * old array alongside the new one, and each later operation moves at most
+ * MIGRATE_BUCKETS of the old buckets into the new array; until they have all
+ * moved, lookups check the element's old bucket as well as its new one. So no
+ * single add() pays for rehashing the whole table, and the latency of add()
+ * stays flat as the table grows.
+ * 
+ * Buckets are found from hash codes mixed with a seed chosen at random for 
+ * each table (see Hashing), so that poor hash codes do not cluster, and 
+ * chosen elements cannot be made to collide unless their hash codes are 
+ * equal. Since that is still possible, a bucket that grows past 
+ * TREEIFY_THRESHOLD elements is converted from a list into a TreeBucket,
+ * which sorts its elements by mixed hash code, and elements with equal hash
+ * codes by compareTo() when they are Comparable with each other. So a lookup
+ * takes O(log n) time even when every element collides, unless they also 
+ * have equal hash codes and are not Comparable.
  */
 public class ChainingHashTable<E> implements HashTable<E> {
     
+    /**
+     * The number of old buckets an operation moves to the new array during an
+     * incremental resize. Since the capacity more than doubles, and the next
+     * resize takes at least another 0.75 * capacity adds, any value of 2 or
+     * more finishes each resize before the next one starts.
+     */
+    static final int MIGRATE_BUCKETS = 4;
+
+    /**
+     * A list bucket is converted into a TreeBucket when an add() would give it
+     * more than this many elements. As in java.util.HashMap, a bucket this 
+     * large is vanishingly rare unless hash codes are poor or chosen to 
+     * collide.
+     */
+    static final int TREEIFY_THRESHOLD = 8;
+
     int capacity;
     int size;
-    ArrayList<E>[] array;
+    Bucket<E>[] array;
+    /** during an incremental resize, the array being emptied into array; otherwise null */
+    Bucket<E>[] old;
+    /** the old buckets below this index have been moved */
+    int migrated;
+    final boolean incrementalResize;
+    final int seed = Hashing.newSeed();
     /**
      * Instantiate a new hash table. The initial capacity should be 7.
      */
     public ChainingHashTable() {
         this.capacity = 7;
-        this.array = (ArrayList<E>[]) new ArrayList[capacity]; 
+        this.array = (Bucket<E>[]) new Bucket<?>[capacity]; 
+        this.incrementalResize = false;
     }
 
     /**
@@ -47,9 +94,18 @@ public class ChainingHashTable<E> implements HashTable<E> {
         return res;
     }
     public ChainingHashTable(int n) {
+        this(n, false);
+    }
+
+    /**
+     * Instantiate a new hash table, as ChainingHashTable(n), that resizes 
+     * incrementally if incrementalResize is true.
+     */
+    public ChainingHashTable(int n, boolean incrementalResize) {
         int temp = log2(n);
         this.capacity = (int) Math.pow(2, temp+1)-1;
-        this.array = (ArrayList<E>[]) new ArrayList[capacity];
+        this.array = (Bucket<E>[]) new Bucket<?>[capacity];
+        this.incrementalResize = incrementalResize;
     }
 
     @Override
@@ -68,142 +124,589 @@ public class ChainingHashTable<E> implements HashTable<E> {
         return res;
     }
 
+    /**
+     * Return e's hash code, mixed with this table's seed.
+     */
+    private int hash(Object e) {
+        return Hashing.mix(e.hashCode(), seed);
+    }
+
+    /**
+     * Return the index of the bucket for a mixed hash in an array of the 
+     * given length. 
+     */
+    private static int index(int hash, int length) {
+        return (hash & 0x7fffffff) % length;
+    }
+
+    /**
+     * Return the bucket that may hold an element equal to e, whose mixed hash
+     * is hash, or null if there is none: its old bucket if that has not been
+     * moved yet (since an element is only ever added to the new array if no 
+     * equal element is in the old one), and otherwise its bucket in the new
+     * array.
+     */
+    private Bucket<E> bucket(E e, int hash) {
+        if (old != null) {
+            int i = index(hash, old.length);
+            if (i >= migrated && old[i] != null && old[i].get(e, hash) != null) {
+                return old[i];
+            }
+        }
+        return array[index(hash, capacity)];
+    }
+
     @Override
     public boolean add(E e) {
-        int temp = Math.abs(e.hashCode());
-        
+        migrate();
         if (loadFactor() > 0.75) {
             increment();
         }
-        int index = temp % capacity;
-        if (array[index] == null){
-            array[index] = new ArrayList<E>();            
-        }
-        for (int i = 0; i < array[index].size(); i ++){
-            if (array[index].get(i).equals(e)){
-                array[index].remove(i);
-                array[index].add(e);
-                return false;
-            }
-            
+        int hash = hash(e);
+        Bucket<E> bucket = bucket(e, hash);
+        if (bucket != null && bucket.get(e, hash) != null) {
+            bucket.add(e, hash);
+            return false;
         }
-        array[index].add(e);
+        insert(e, hash);
         size ++;
         return true;
     }
+
+    /**
+     * Add e, which no bucket holds, to its bucket in the new array, 
+     * converting that bucket into a TreeBucket if it grows too large.
+     */
+    private void insert(E e, int hash) {
+        int index = index(hash, capacity);
+        Bucket<E> bucket = array[index];
+        if (bucket == null){
+            bucket = array[index] = new ListBucket<E>();
+        }
+        else if (bucket instanceof ListBucket && bucket.size() >= TREEIFY_THRESHOLD) {
+            TreeBucket<E> tree = new TreeBucket<E>();
+            for (E el : bucket) {
+                tree.add(el, hash(el));
+            }
+            bucket = array[index] = tree;
+        }
+        bucket.add(e, hash);
+    }
+
+    /**
+     * Grow the array to 2 * capacity + 1. Unless this table resizes 
+     * incrementally, every element is moved at once.
+     */
     public void increment(){
-        capacity = capacity * 2+ 1;
-        ArrayList<E>[] temp = (ArrayList<E>[]) new ArrayList[capacity];
-        for (int i = 0; i < array.length; i ++){
-            if (array[i] != null){
-                for (int j = 0; j < array[i].size(); j++){
-                    E el = array[i].get(j);
-                    int tempHash = array[i].get(j).hashCode();
-                    int index = tempHash % capacity;
-                    if (temp[index] == null){
-                        temp[index] = new ArrayList<E>();
-                        temp[index].add(el);
-                    }
-                    else{
-                        temp[index].add(el);
-                    }
-                    
-                }
-            }                
-            
+        resize(capacity * 2+ 1);
+    }
+
+    private void resize(int newCapacity) {
+        if (old != null) {
+            // the previous resize has not finished; finish it first
+            migrate(old.length);
+        }
+        old = array;
+        migrated = 0;
+        capacity = newCapacity;
+        array = (Bucket<E>[]) new Bucket<?>[capacity];
+        if (!incrementalResize) {
+            migrate(old.length);
         }
-        array = temp;
+    }
 
+    /**
+     * Return a new hash table of the elements of c, as addAll() adds them.
+     */
+    public static <E> ChainingHashTable<E> of(Collection<? extends E> c) {
+        ChainingHashTable<E> t = new ChainingHashTable<>();
+        t.addAll(c);
+        return t;
     }
 
+    /**
+     * Grows the array at most once, to the capacity it would end with if 
+     * every element of c were added one at a time and none were already
+     * present, and then adds them without checking the load factor. So if 
+     * some of them are present, or equal to each other, the table may end up
+     * with a larger capacity than add() would have given it. A resize in 
+     * progress, or started here, is finished at once, even if this table 
+     * resizes incrementally.
+     */
     @Override
-    public boolean remove(E e) {
-        int temp = e.hashCode();
-        int index = temp % capacity;
-        if (array[index] == null){
-            return false;
+    public boolean addAll(Collection<? extends E> c) {
+        int target = capacity;
+        // add() grows the table when it finds the load factor above 0.75, so
+        // the last of them is added at a load factor of at most 0.75
+        while ((double) (size + c.size() - 1) / target > 0.75) {
+            target = target * 2 + 1;
         }
-        else{
-            for (int i = 0; i < array[index].size(); i++){
-                if (array[index].get(i).equals(e)){
-                    array[index].remove(i);
-                    size--;
-                    return true;
-                }
+        if (target != capacity) {
+            resize(target);
+        }
+        if (old != null) {
+            migrate(old.length);
+        }
+        boolean changed = false;
+        for (E e : c) {
+            int hash = hash(e);
+            Bucket<E> bucket = array[index(hash, capacity)];
+            if (bucket != null && bucket.get(e, hash) != null) {
+                bucket.add(e, hash);
+            }
+            else {
+                insert(e, hash);
+                size ++;
+                changed = true;
             }
-            return false;
         }
+        return changed;
     }
 
-    @Override
-    public boolean contains(E e) {
-        int temp = e.hashCode();
-        int index = temp % capacity;
-        if (array[index] == null){
-            return false;
+    /**
+     * Move up to MIGRATE_BUCKETS old buckets, if a resize is in progress.
+     */
+    private void migrate() {
+        if (old != null) {
+            migrate(MIGRATE_BUCKETS);
         }
-        else{
-            for (int i = 0; i < array[index].size(); i ++){
-                if (array[index].get(i).equals(e)){
-                    return true;
+    }
+
+    /**
+     * Move up to n old buckets into the new array, and end the resize once 
+     * they have all moved. The elements of a TreeBucket are spread over new
+     * buckets, which are lists again unless they too grow too large.
+     */
+    private void migrate(int n) {
+        int end = Math.min(old.length, migrated + n);
+        for (; migrated < end; migrated++) {
+            Bucket<E> bucket = old[migrated];
+            if (bucket != null) {
+                for (E el : bucket) {
+                    insert(el, hash(el));
                 }
+                old[migrated] = null;
             }
+        }
+        if (migrated == old.length) {
+            old = null;
+        }
+    }
+
+    @Override
+    public boolean remove(E e) {
+        migrate();
+        int hash = hash(e);
+        Bucket<E> bucket = bucket(e, hash);
+        if (bucket == null || !bucket.remove(e, hash)){
             return false;
         }
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean contains(E e) {
+        return get(e) != null;
     }
 
     @Override
     public E get(E e) {
-        int temp = e.hashCode();
-        int index = temp % capacity;
-        if (array[index] == null){
-            return null;
-        }
-        else{
-            for (int i = 0; i < array[index].size(); i ++){
-                if (array[index].get(i).equals(e)){
-                    return array[index].get(i);
+        migrate();
+        int hash = hash(e);
+        Bucket<E> bucket = bucket(e, hash);
+        return bucket == null ? null : bucket.get(e, hash);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new CHTIterator();
+    }
+
+    /**
+     * Performs an action on each element, bucket by bucket, without creating
+     * an iterator for each list bucket.
+     */
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        if (old != null) {
+            for (int i = migrated; i < old.length; i++) {
+                if (old[i] != null) {
+                    old[i].forEach(action);
                 }
             }
-            return null;
+        }
+        for (Bucket<E> bucket : array) {
+            if (bucket != null) {
+                bucket.forEach(action);
+            }
         }
     }
 
+    /**
+     * Returns a Spliterator that splits the buckets into ranges, so that a
+     * parallel stream scans each range on its own thread. Like the iterator,
+     * it must not be used while the table is modified.
+     */
     @Override
-    public Iterator<E> iterator() {
-        return new CHTIterator<E>();
+    public Spliterator<E> spliterator() {
+        return new CHTSpliterator<>(old, array, 0, (old != null ? old.length : 0) + array.length, size, true);
     }
 
-    class CHTIterator<E> implements Iterator<E> {
+    /**
+     * Iterates over the old buckets not yet moved, if a resize is in 
+     * progress, and then over the new array.
+     */
+    class CHTIterator implements Iterator<E> {
+        Bucket<E>[] buckets;
         int current;
-        int indexAt; 
+        Iterator<E> inBucket = Collections.emptyIterator();
         
         public CHTIterator(){
-            current = 0;
-            indexAt =0 ;
+            buckets = old != null ? old : array;
+            current = old != null ? migrated : 0;
         }
         @Override
         public boolean hasNext() {
-            while (current < array.length && array[current] == null){
-                current ++;
+            while (!inBucket.hasNext()) {
+                while (current < buckets.length && (buckets[current] == null || buckets[current].size() == 0)){
+                    current ++;
+                }
+                if (current < buckets.length) {
+                    inBucket = buckets[current++].iterator();
+                }
+                else if (buckets == array) {
+                    return false;
+                }
+                else {
+                    buckets = array;
+                    current = 0;
+                }
             }
-            if (current == array.length) return false;
             return true;
         }
 
         @Override
         public E next() {
-            
-            // E result = null;          
-            E result = (E) array[current].get(indexAt);
-            if (indexAt ==  array[current].size()-1){                
-                indexAt = 0;
-                current ++;
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
-            else{
-                indexAt ++;
+            return inBucket.next();
+        }
+    }
+
+    /**
+     * Splits a range of the buckets: those of old (the ones not yet moved are
+     * not null) and then those of array, numbered as one array. The estimated
+     * size of a range is an even share of the table's size, and only the 
+     * range of all the buckets, before any split, reports it as exact.
+     */
+    static final class CHTSpliterator<E> implements Spliterator<E> {
+        private final Bucket<E>[] old;
+        private final Bucket<E>[] array;
+        private final int oldLength;
+        /** the next bucket to traverse */
+        private int index;
+        private final int fence;
+        private long estimate;
+        private boolean sized;
+        /** the rest of the bucket being traversed by tryAdvance(), if any */
+        private Iterator<E> inBucket;
+
+        CHTSpliterator(Bucket<E>[] old, Bucket<E>[] array, int index, int fence, long estimate, boolean sized) {
+            this.old = old;
+            this.array = array;
+            this.oldLength = old != null ? old.length : 0;
+            this.index = index;
+            this.fence = fence;
+            this.estimate = estimate;
+            this.sized = sized;
+        }
+
+        private Bucket<E> bucket(int i) {
+            return i < oldLength ? old[i] : array[i - oldLength];
+        }
+
+        @Override
+        public Spliterator<E> trySplit() {
+            int mid = (index + fence) >>> 1;
+            if (inBucket != null || mid <= index) {
+                return null;
+            }
+            estimate >>>= 1;
+            sized = false;
+            Spliterator<E> prefix = new CHTSpliterator<E>(old, array, index, mid, estimate, false);
+            index = mid;
+            return prefix;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super E> action) {
+            while (inBucket == null || !inBucket.hasNext()) {
+                inBucket = null;
+                if (index >= fence) {
+                    return false;
+                }
+                Bucket<E> bucket = bucket(index++);
+                if (bucket != null && bucket.size() > 0) {
+                    inBucket = bucket.iterator();
+                }
+            }
+            action.accept(inBucket.next());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (inBucket != null) {
+                inBucket.forEachRemaining(action);
+                inBucket = null;
+            }
+            for (; index < fence; index++) {
+                Bucket<E> bucket = bucket(index);
+                if (bucket != null) {
+                    bucket.forEach(action);
+                }
+            }
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimate;
+        }
+
+        @Override
+        public int characteristics() {
+            return DISTINCT | NONNULL | (sized ? SIZED : 0);
+        }
+    }
+
+    /**
+     * The elements of one bucket. Each method is given the element's mixed 
+     * hash, as well as the element.
+     */
+    interface Bucket<E> extends Iterable<E> {
+        int size();
+
+        /**
+         * @return the element equal to e, or null if there is none
+         */
+        E get(E e, int hash);
+
+        /**
+         * Add e, replacing any equal element.
+         */
+        void add(E e, int hash);
+
+        /**
+         * @return true if an element equal to e was removed
+         */
+        boolean remove(E e, int hash);
+    }
+
+    /**
+     * A bucket of a few elements, searched in order.
+     */
+    static final class ListBucket<E> implements Bucket<E> {
+        private final ArrayList<E> elements = new ArrayList<E>(2);
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        @Override
+        public E get(E e, int hash) {
+            for (int i = 0; i < elements.size(); i ++){
+                if (elements.get(i).equals(e)){
+                    return elements.get(i);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void add(E e, int hash) {
+            for (int i = 0; i < elements.size(); i ++){
+                if (elements.get(i).equals(e)){
+                    elements.set(i, e);
+                    return;
+                }
+            }
+            elements.add(e);
+        }
+
+        @Override
+        public boolean remove(E e, int hash) {
+            for (int i = 0; i < elements.size(); i ++){
+                if (elements.get(i).equals(e)){
+                    elements.remove(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return elements.iterator();
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+            elements.forEach(action);
+        }
+    }
+
+    /**
+     * A bucket of many elements, in a red-black tree (a TreeMap) keyed by 
+     * mixed hash. Elements with equal mixed hashes (so equal hash codes) share
+     * a Group, which is kept sorted, and binary searched, while they are all 
+     * instances of one Comparable class, and is otherwise searched in order.
+     */
+    static final class TreeBucket<E> implements Bucket<E> {
+        private final TreeMap<Integer, Group<E>> groups = new TreeMap<>();
+        private int size;
+
+        private static final class Group<E> {
+            final ArrayList<E> elements = new ArrayList<E>(1);
+            boolean sorted = true;
+
+            /**
+             * @return whether e can be binary searched for in elements
+             */
+            boolean searchable(E e) {
+                return sorted && e instanceof Comparable && elements.get(0).getClass() == e.getClass();
+            }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            private int binarySearch(E e) {
+                return Collections.binarySearch((List) elements, e);
+            }
+
+            /**
+             * @return the index of the element equal to e, or -1 if there is
+             *         none
+             */
+            int indexOf(E e) {
+                if (searchable(e)) {
+                    int i = binarySearch(e);
+                    if (i < 0) {
+                        return -1;
+                    }
+                    // compareTo() may not be consistent with equals()
+                    if (elements.get(i).equals(e)) {
+                        return i;
+                    }
+                }
+                return elements.indexOf(e);
+            }
+
+            /**
+             * Add e, replacing any equal element.
+             * 
+             * @return true if there was no equal element
+             */
+            boolean add(E e) {
+                if (searchable(e)) {
+                    int i = binarySearch(e);
+                    if (i < 0) {
+                        elements.add(-1 - i, e);
+                        return true;
+                    }
+                    if (elements.get(i).equals(e)) {
+                        elements.set(i, e);
+                        return false;
+                    }
+                }
+                int i = elements.indexOf(e);
+                if (i >= 0) {
+                    elements.set(i, e);
+                    return false;
+                }
+                // e does not sort with the rest
+                sorted = false;
+                elements.add(e);
+                return true;
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public E get(E e, int hash) {
+            Group<E> group = groups.get(hash);
+            if (group == null) {
+                return null;
+            }
+            int i = group.indexOf(e);
+            return i < 0 ? null : group.elements.get(i);
+        }
+
+        @Override
+        public void add(E e, int hash) {
+            Group<E> group = groups.get(hash);
+            if (group == null) {
+                group = new Group<E>();
+                group.elements.add(e);
+                groups.put(hash, group);
+                size++;
+            }
+            else if (group.add(e)) {
+                size++;
+            }
+        }
+
+        @Override
+        public boolean remove(E e, int hash) {
+            Group<E> group = groups.get(hash);
+            if (group == null) {
+                return false;
+            }
+            int i = group.indexOf(e);
+            if (i < 0) {
+                return false;
+            }
+            group.elements.remove(i);
+            if (group.elements.isEmpty()) {
+                groups.remove(hash);
+            }
+            size--;
+            return true;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private final Iterator<Group<E>> inGroups = groups.values().iterator();
+                private Iterator<E> inGroup = Collections.emptyIterator();
+
+                @Override
+                public boolean hasNext() {
+                    while (!inGroup.hasNext() && inGroups.hasNext()) {
+                        inGroup = inGroups.next().elements.iterator();
+                    }
+                    return inGroup.hasNext();
+                }
+
+                @Override
+                public E next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return inGroup.next();
+                }
+            };
+        }
+
+        @Override
+        public void forEach(Consumer<? super E> action) {
+            for (Group<E> group : groups.values()) {
+                group.elements.forEach(action);
             }
-            return result;
         }
     }
 }
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An implementation of HashTable that any number of threads may use at once.
+ *
+ * Like ChainingHashTable, this implementation chains colliding elements
+ * together in buckets, maintains a capacity equal to 2^n - 1, and resizes by
+ * incrementing n when an add() finds the load factor above 0.75.
+ *
+ * Each bucket is a linked list of immutable nodes. Writers lock only a stripe
+ * of the buckets: bucket i belongs to stripe i mod the number of stripes, so
+ * threads writing to different stripes never wait for each other. An add
+ * pushes a new node onto its bucket's list, and a remove copies the nodes in
+ * front of the removed one; either way, the bucket is then replaced with a
+ * single volatile write. So readers (get, contains and iterators) take no
+ * lock at all, and always see some consistent version of each bucket.
+ *
+ * A resize locks every stripe, in order, and rehashes into a new array, which
+ * it then publishes; readers go on reading the old array until then. The size
+ * is kept in a LongAdder, so writers on different stripes do not contend on
+ * it either; size() and loadFactor() are therefore only exact while no add or
+ * remove is in progress.
+ *
+ * Iterators are weakly consistent: they never throw
+ * ConcurrentModificationException, return each element at most once, and
+ * return every element that was in the table when they were created and was
+ * not removed since, but may or may not return elements added since.
+ */
+public class ConcurrentHashTable<E> implements HashTable<E> {
+
+    private static final class Node<E> {
+        final E element;
+        final int hash;
+        final Node<E> next;
+
+        Node(E element, int hash, Node<E> next) {
+            this.element = element;
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    /** the most stripes a table has, however many are asked for */
+    static final int MAX_STRIPES = 1 << 16;
+
+    private volatile AtomicReferenceArray<Node<E>> table;
+    private final ReentrantLock[] locks;
+    private final LongAdder size = new LongAdder();
+
+    /**
+     * Instantiate a new hash table, with an initial capacity of 7 and 16
+     * stripes.
+     */
+    public ConcurrentHashTable() {
+        this(7, 16);
+    }
+
+    /**
+     * Instantiate a new hash table, with an initial capacity at least
+     * sufficient to hold n elements, and one less than a power of two; and
+     * 16 stripes.
+     */
+    public ConcurrentHashTable(int n) {
+        this(n, 16);
+    }
+
+    /**
+     * Instantiate a new hash table, with an initial capacity at least
+     * sufficient to hold n elements, and one less than a power of two.
+     *
+     * @param n
+     * @param stripes the number of locks; about the number of threads
+     *        expected to write at once. It is rounded up to a power of two,
+     *        and capped at MAX_STRIPES.
+     * @throws IllegalArgumentException if stripes is less than 1
+     */
+    public ConcurrentHashTable(int n, int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive");
+        }
+        table = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(n, 1)) * 2 - 1);
+        int count = 1;
+        while (count < Math.min(stripes, MAX_STRIPES)) {
+            count *= 2;
+        }
+        locks = new ReentrantLock[count];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public int capacity() {
+        return table.length();
+    }
+
+    @Override
+    public int size() {
+        return (int) size.sum();
+    }
+
+    @Override
+    public double loadFactor() {
+        return (double) size.sum() / table.length();
+    }
+
+    private static int index(int hash, int length) {
+        return (hash & 0x7fffffff) % length;
+    }
+
+    private ReentrantLock lock(int index) {
+        return locks[index & (locks.length - 1)];
+    }
+
+    @Override
+    public boolean add(E e) {
+        int hash = e.hashCode();
+        while (true) {
+            AtomicReferenceArray<Node<E>> tab = table;
+            if ((double) size.sum() / tab.length() > 0.75) {
+                resize(tab);
+                continue;
+            }
+            int i = index(hash, tab.length());
+            ReentrantLock lock = lock(i);
+            lock.lock();
+            try {
+                if (table != tab) {
+                    // resized while this thread waited for the lock
+                    continue;
+                }
+                Node<E> head = tab.get(i);
+                for (Node<E> p = head; p != null; p = p.next) {
+                    if (p.hash == hash && p.element.equals(e)) {
+                        tab.set(i, replace(head, p, new Node<>(e, hash, p.next)));
+                        return false;
+                    }
+                }
+                tab.set(i, new Node<>(e, hash, head));
+                size.increment();
+                return true;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the list from head, with target (one of its nodes)
+     * replaced by replacement: the nodes in front of target are copied, and
+     * the ones after it are shared.
+     */
+    private static <E> Node<E> replace(Node<E> head, Node<E> target, Node<E> replacement) {
+        // a loop rather than recursion, since a chain of colliding elements
+        // can be longer than the stack is deep
+        int n = 0;
+        for (Node<E> p = head; p != target; p = p.next) {
+            n++;
+        }
+        @SuppressWarnings("unchecked")
+        Node<E>[] prefix = (Node<E>[]) new Node<?>[n];
+        Node<E> p = head;
+        for (int i = 0; i < n; i++, p = p.next) {
+            prefix[i] = p;
+        }
+        Node<E> result = replacement;
+        for (int i = n - 1; i >= 0; i--) {
+            result = new Node<>(prefix[i].element, prefix[i].hash, result);
+        }
+        return result;
+    }
+
+    /**
+     * Grows the table to 2 * capacity + 1, unless another thread already has.
+     */
+    private void resize(AtomicReferenceArray<Node<E>> tab) {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            if (table != tab) {
+                return;
+            }
+            AtomicReferenceArray<Node<E>> grown = new AtomicReferenceArray<>(tab.length() * 2 + 1);
+            for (int i = 0; i < tab.length(); i++) {
+                for (Node<E> p = tab.get(i); p != null; p = p.next) {
+                    int j = index(p.hash, grown.length());
+                    grown.set(j, new Node<>(p.element, p.hash, grown.get(j)));
+                }
+            }
+            table = grown;
+        }
+        finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(E e) {
+        int hash = e.hashCode();
+        while (true) {
+            AtomicReferenceArray<Node<E>> tab = table;
+            int i = index(hash, tab.length());
+            ReentrantLock lock = lock(i);
+            lock.lock();
+            try {
+                if (table != tab) {
+                    continue;
+                }
+                Node<E> head = tab.get(i);
+                for (Node<E> p = head; p != null; p = p.next) {
+                    if (p.hash == hash && p.element.equals(e)) {
+                        tab.set(i, replace(head, p, p.next));
+                        size.decrement();
+                        return true;
+                    }
+                }
+                return false;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(E e) {
+        return get(e) != null;
+    }
+
+    @Override
+    public E get(E e) {
+        int hash = e.hashCode();
+        AtomicReferenceArray<Node<E>> tab = table;
+        for (Node<E> p = tab.get(index(hash, tab.length())); p != null; p = p.next) {
+            if (p.hash == hash && p.element.equals(e)) {
+                return p.element;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the elements. It reads the
+     * table as it is when each bucket is reached, without locking, and does
+     * not support remove().
+     */
+    @Override
+    public Iterator<E> iterator() {
+        AtomicReferenceArray<Node<E>> tab = table;
+        return new Iterator<E>() {
+            int bucket;
+            Node<E> next = advance();
+
+            private Node<E> advance() {
+                Node<E> p = null;
+                while (p == null && bucket < tab.length()) {
+                    p = tab.get(bucket++);
+                }
+                return p;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E result = next.element;
+                next = next.next != null ? next.next : advance();
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hash code mixing for the hash tables.
+ *
+ * Tables take an element's bucket from its hash code modulo the capacity, so
+ * hash codes whose differences lie in only a few bits (small integers,
+ * multiples of a power of two, short strings) cluster into a few buckets.
+ * mix() spreads every bit of a hash code over all 32 bits of the result, with
+ * the finalizer of MurmurHash3. A table that mixes with a seed of its own,
+ * chosen at random, also places elements differently from every other table,
+ * so an adversary who can only choose elements cannot predict which of them
+ * collide, short of choosing ones with equal hash codes.
+ *
+ * See:
+ * - <https://github.com/aappleby/smhasher/wiki/MurmurHash3>
+ */
+final class Hashing {
+
+    private Hashing() {
+    }
+
+    /**
+     * @return a random seed for a new table
+     */
+    static int newSeed() {
+        return ThreadLocalRandom.current().nextInt();
+    }
+
+    /**
+     * @return hash, seeded and mixed
+     */
+    static int mix(int hash, int seed) {
+        int h = hash ^ seed;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of ints, stored without boxing.
+ *
+ * This implementation uses open addressing with linear probing, like
+ * RobinHoodHashTable, but in a flat int array of keys, so that adding,
+ * finding or removing a key allocates nothing and never calls hashCode() or
+ * equals(). Which slots are occupied is kept in a separate bitmap (one bit per
+ * slot) rather than by reserving some key value to mean "empty", so every int,
+ * including 0, can be stored. Removal shifts the following keys of the run
+ * back (backward-shift deletion), so no tombstones are left behind.
+ *
+ * Keys are scattered with Fibonacci hashing: a key is multiplied by 2^32
+ * divided by the golden ratio, and its home slot is the top bits of the
+ * product. This mixes every bit of the key into the slot, so keys that differ
+ * only in their high bits, or that are all multiples of some power of two, do
+ * not collide the way they would modulo a power of two.
+ *
+ * The capacity is a power of two, and when an add() would push the load
+ * factor over 0.75, it first doubles the capacity, up to 2^30; an add() that
+ * would need more capacity than that throws IllegalStateException.
+ *
+ * See:
+ * - <https://probablydance.com/2018/06/16/fibonacci-hashing-the-optimization-that-the-world-forgot-or-a-better-alternative-to-integer-modulo/>
+ */
+public class IntHashSet {
+
+    static final int MAX_CAPACITY = 1 << 30;
+
+    private int[] keys;
+    private long[] occupied;
+    private int size;
+    private int shift;
+
+    /**
+     * Instantiate a new set, with an initial capacity of 8.
+     */
+    public IntHashSet() {
+        this(6);
+    }
+
+    /**
+     * Instantiate a new set, with an initial capacity sufficient to hold n
+     * keys without resizing.
+     *
+     * @throws IllegalArgumentException if n is more than a set can hold
+     */
+    public IntHashSet(int n) {
+        allocate(capacityFor(n));
+    }
+
+    /**
+     * @return the smallest power of two (at least 8) that holds n keys with a
+     *         load factor of at most 0.75
+     * @throws IllegalArgumentException if that is more than MAX_CAPACITY
+     */
+    static int capacityFor(int n) {
+        if (n > MAX_CAPACITY / 4 * 3) {
+            throw new IllegalArgumentException("too many keys: " + n);
+        }
+        int capacity = 8;
+        while (capacity * 3L / 4 < n) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        occupied = new long[(capacity + 63) / 64];
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public double loadFactor() {
+        return (double) size / keys.length;
+    }
+
+    private int home(int key) {
+        return (key * 0x9e3779b9) >>> shift;
+    }
+
+    private boolean isOccupied(int i) {
+        return (occupied[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return the slot holding key, or -1 - the empty slot where it would go
+     */
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (isOccupied(i)) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
+
+    public boolean contains(int key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Add a key to the set.
+     *
+     * @return true if the key was not already in the set
+     */
+    public boolean add(int key) {
+        int i = find(key);
+        if (i >= 0) {
+            return false;
+        }
+        if (size + 1 > keys.length * 3L / 4) {
+            resize();
+            i = find(key);
+        }
+        i = -1 - i;
+        keys[i] = key;
+        occupied[i >>> 6] |= 1L << i;
+        size++;
+        return true;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        long[] oldOccupied = occupied;
+        if (oldKeys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("too many keys: " + size);
+        }
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((oldOccupied[i >>> 6] & (1L << i)) != 0) {
+                int j = home(oldKeys[i]);
+                while (isOccupied(j)) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                occupied[j >>> 6] |= 1L << j;
+            }
+        }
+    }
+
+    /**
+     * Remove a key from the set.
+     *
+     * @return true if the key was in the set
+     */
+    public boolean remove(int key) {
+        int i = find(key);
+        if (i < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        // move back each following key of the run that may go in slot i:
+        // one whose home is not between i (exclusive) and its own slot
+        for (int j = (i + 1) & mask; isOccupied(j); j = (j + 1) & mask) {
+            if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        occupied[i >>> 6] &= ~(1L << i);
+        size--;
+        return true;
+    }
+
+    /**
+     * Remove every key from the set, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(occupied, 0);
+        size = 0;
+    }
+
+    /**
+     * Perform an action on each key in the set, in no particular order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int w = 0; w < occupied.length; w++) {
+            for (long bits = occupied[w]; bits != 0; bits &= bits - 1) {
+                action.accept(keys[w * 64 + Long.numberOfTrailingZeros(bits)]);
+            }
+        }
+    }
+
+    /**
+     * @return a new array of the keys in the set, in no particular order
+     */
+    public int[] toArray() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (isOccupied(i)) {
+                result[count++] = keys[i];
+            }
+        }
+        return result;
+    }
+}
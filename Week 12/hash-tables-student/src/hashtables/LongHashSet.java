@@ -0,0 +1,199 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of longs, stored without boxing.
+ *
+ * This implementation uses open addressing with linear probing in a flat long
+ * array of keys, so that adding, finding or removing a key allocates nothing
+ * and never boxes it. Which slots are occupied is kept in a separate bitmap
+ * (one bit per slot) rather than by reserving some key value to mean "empty",
+ * so every long, including 0, can be stored. Removal shifts the following keys of the run
+ * back (backward-shift deletion), so no tombstones are left behind.
+ *
+ * Keys are scattered with Fibonacci hashing: a key is multiplied by 2^64
+ * divided by the golden ratio, and its home slot is the top bits of the
+ * product. This mixes every bit of the key into the slot, so keys that differ
+ * only in their high bits, or that are all multiples of some power of two, do
+ * not collide the way they would modulo a power of two.
+ *
+ * The capacity is a power of two, and when an add() would push the load
+ * factor over 0.75, it first doubles the capacity, up to 2^30; an add() that
+ * would need more capacity than that throws IllegalStateException.
+ *
+ * See:
+ * - <https://probablydance.com/2018/06/16/fibonacci-hashing-the-optimization-that-the-world-forgot-or-a-better-alternative-to-integer-modulo/>
+ */
+public class LongHashSet {
+
+    private long[] keys;
+    private long[] occupied;
+    private int size;
+    private int shift;
+
+    /**
+     * Instantiate a new set, with an initial capacity of 8.
+     */
+    public LongHashSet() {
+        this(6);
+    }
+
+    /**
+     * Instantiate a new set, with an initial capacity sufficient to hold n
+     * keys without resizing.
+     *
+     * @throws IllegalArgumentException if n is more than a set can hold
+     */
+    public LongHashSet(int n) {
+        allocate(IntHashSet.capacityFor(n));
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        occupied = new long[(capacity + 63) / 64];
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return keys.length;
+    }
+
+    public double loadFactor() {
+        return (double) size / keys.length;
+    }
+
+    private int home(long key) {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> shift);
+    }
+
+    private boolean isOccupied(int i) {
+        return (occupied[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @return the slot holding key, or -1 - the empty slot where it would go
+     */
+    private int find(long key) {
+        int mask = keys.length - 1;
+        int i = home(key);
+        while (isOccupied(i)) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1 - i;
+    }
+
+    public boolean contains(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Add a key to the set.
+     *
+     * @return true if the key was not already in the set
+     */
+    public boolean add(long key) {
+        int i = find(key);
+        if (i >= 0) {
+            return false;
+        }
+        if (size + 1 > keys.length * 3L / 4) {
+            resize();
+            i = find(key);
+        }
+        i = -1 - i;
+        keys[i] = key;
+        occupied[i >>> 6] |= 1L << i;
+        size++;
+        return true;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        long[] oldOccupied = occupied;
+        if (oldKeys.length == IntHashSet.MAX_CAPACITY) {
+            throw new IllegalStateException("too many keys: " + size);
+        }
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if ((oldOccupied[i >>> 6] & (1L << i)) != 0) {
+                int j = home(oldKeys[i]);
+                while (isOccupied(j)) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                occupied[j >>> 6] |= 1L << j;
+            }
+        }
+    }
+
+    /**
+     * Remove a key from the set.
+     *
+     * @return true if the key was in the set
+     */
+    public boolean remove(long key) {
+        int i = find(key);
+        if (i < 0) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        // move back each following key of the run that may go in slot i:
+        // one whose home is not between i (exclusive) and its own slot
+        for (int j = (i + 1) & mask; isOccupied(j); j = (j + 1) & mask) {
+            if (((j - home(keys[j])) & mask) >= ((j - i) & mask)) {
+                keys[i] = keys[j];
+                i = j;
+            }
+        }
+        occupied[i >>> 6] &= ~(1L << i);
+        size--;
+        return true;
+    }
+
+    /**
+     * Remove every key from the set, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(occupied, 0);
+        size = 0;
+    }
+
+    /**
+     * Perform an action on each key in the set, in no particular order.
+     */
+    public void forEach(LongConsumer action) {
+        for (int w = 0; w < occupied.length; w++) {
+            for (long bits = occupied[w]; bits != 0; bits &= bits - 1) {
+                action.accept(keys[w * 64 + Long.numberOfTrailingZeros(bits)]);
+            }
+        }
+    }
+
+    /**
+     * @return a new array of the keys in the set, in no particular order
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (isOccupied(i)) {
+                result[count++] = keys[i];
+            }
+        }
+        return result;
+    }
+}
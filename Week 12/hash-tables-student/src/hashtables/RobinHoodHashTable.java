@@ -0,0 +1,242 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An implementation of HashTable.
+ *
+ * This implementation uses open addressing with linear probing to resolve
+ * collisions: every element is stored directly in the underlying array, in
+ * the first free slot at or after its home slot (its hash code modulo the
+ * capacity). Each slot's hash code is kept in a parallel int array, so a probe
+ * only calls equals() on elements whose hash codes match, and never follows a
+ * pointer into a per-bucket list.
+ *
+ * Collisions are resolved Robin Hood style: an element's probe distance is
+ * how far its slot is past its home slot, and an element being inserted takes
+ * the slot of any element closer to its own home, which then moves on in its
+ * place. This keeps probe distances short and even, and lets a lookup stop as
+ * soon as it reaches an element closer to home than the one it is looking for
+ * would be. Removal shifts the following elements of the run back by one slot
+ * (backward-shift deletion), so no tombstones are left behind.
+ *
+ * Like ChainingHashTable, this implementation maintains a capacity equal to
+ * 2^n - 1 for some positive integer n, and when the load factor exceeds 0.75,
+ * the next add() triggers a resize by incrementing n (by one).
+ *
+ * See:
+ * - <https://en.wikipedia.org/wiki/Hash_table#Robin_Hood_hashing>
+ * - <https://codecapsule.com/2013/11/17/robin-hood-hashing-backward-shift-deletion/>
+ */
+public class RobinHoodHashTable<E> implements HashTable<E> {
+
+    private int capacity;
+    private int size;
+    private Object[] elements;
+    private int[] hashes;
+
+    /**
+     * Instantiate a new hash table. The initial capacity is 7.
+     */
+    public RobinHoodHashTable() {
+        this(7);
+    }
+
+    /**
+     * Instantiate a new hash table. The initial capacity is at least
+     * sufficient to hold n elements, and one less than a power of two.
+     */
+    public RobinHoodHashTable(int n) {
+        capacity = Integer.highestOneBit(Math.max(n, 1)) * 2 - 1;
+        elements = new Object[capacity];
+        hashes = new int[capacity];
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public double loadFactor() {
+        return (double) size / capacity;
+    }
+
+    private int home(int hash) {
+        return (hash & 0x7fffffff) % capacity;
+    }
+
+    /**
+     * @return how far the element in slot i is past its home slot
+     */
+    private int distance(int i) {
+        int d = i - home(hashes[i]);
+        return d < 0 ? d + capacity : d;
+    }
+
+    private int next(int i) {
+        return i + 1 == capacity ? 0 : i + 1;
+    }
+
+    /**
+     * An empty slot's hash is 0, so this only reads elements (a second cache
+     * line) for the few elements whose hash code is 0.
+     */
+    private boolean isEmpty(int i) {
+        return hashes[i] == 0 && elements[i] == null;
+    }
+
+    /**
+     * @return the slot holding an element equal to e, or -1 if there is none
+     */
+    private int find(Object e) {
+        int hash = e.hashCode();
+        int i = home(hash);
+        for (int d = 0; !isEmpty(i); d++) {
+            // an element with the same hash has the same home, so it is d
+            // slots past it too
+            if (hashes[i] == hash && elements[i].equals(e)) {
+                return i;
+            }
+            if (distance(i) < d) {
+                return -1;
+            }
+            i = next(i);
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean add(E e) {
+        int hash = e.hashCode();
+        if (loadFactor() > 0.75) {
+            resize();
+        }
+        int i = home(hash);
+        int d = 0;
+        while (!isEmpty(i)) {
+            if (hashes[i] == hash && elements[i].equals(e)) {
+                elements[i] = e;
+                return false;
+            }
+            if (distance(i) < d) {
+                // no element equal to e can be further along; e takes this slot
+                break;
+            }
+            i = next(i);
+            d++;
+        }
+        insert(i, e, hash, d);
+        size++;
+        return true;
+    }
+
+    /**
+     * Places an element in slot i, displacing the elements from slot i on that
+     * are closer to their home slots, until one lands in an empty slot.
+     */
+    private void insert(int i, Object e, int hash, int d) {
+        while (!isEmpty(i)) {
+            int resident = distance(i);
+            if (resident < d) {
+                Object displaced = elements[i];
+                int displacedHash = hashes[i];
+                elements[i] = e;
+                hashes[i] = hash;
+                e = displaced;
+                hash = displacedHash;
+                d = resident;
+            }
+            i = next(i);
+            d++;
+        }
+        elements[i] = e;
+        hashes[i] = hash;
+    }
+
+    private void resize() {
+        Object[] oldElements = elements;
+        int[] oldHashes = hashes;
+        capacity = capacity * 2 + 1;
+        elements = new Object[capacity];
+        hashes = new int[capacity];
+        for (int i = 0; i < oldElements.length; i++) {
+            if (oldElements[i] != null) {
+                insert(home(oldHashes[i]), oldElements[i], oldHashes[i], 0);
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(E e) {
+        int i = find(e);
+        if (i < 0) {
+            return false;
+        }
+        // shift the rest of the run back by one, until an empty slot or an
+        // element already in its home slot
+        int j = next(i);
+        while (!isEmpty(j) && distance(j) > 0) {
+            elements[i] = elements[j];
+            hashes[i] = hashes[j];
+            i = j;
+            j = next(j);
+        }
+        elements[i] = null;
+        hashes[i] = 0;
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean contains(E e) {
+        return find(e) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public E get(E e) {
+        int i = find(e);
+        return i < 0 ? null : (E) elements[i];
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+            int current = advance(0);
+
+            private int advance(int i) {
+                while (i < elements.length && elements[i] == null) {
+                    i++;
+                }
+                return i;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current < elements.length;
+            }
+
+            @SuppressWarnings("unchecked")
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                E result = (E) elements[current];
+                current = advance(current + 1);
+                return result;
+            }
+        };
+    }
+}
@@ -4,6 +4,15 @@
 
 package hashtables;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * An interface specifying a hash table, that is, an array-based 
  * constant-time data structure to track the membership of 
@@ -83,4 +92,99 @@ public interface HashTable<E> extends Iterable<E> {
      * @return true iff the element e is stored in the hash table
      */
     boolean contains(E e);
-}
\ No newline at end of file
+
+    /**
+     * Add every element of c to the hash table, as add() would.
+     * 
+     * The elements must be non-null.
+     * 
+     * Implementations may grow the table once, to the capacity it needs, 
+     * rather than as they go.
+     * 
+     * @param c the elements
+     * @return true iff any element was newly inserted
+     */
+    default boolean addAll(Collection<? extends E> c) {
+        boolean changed = false;
+        for (E e : c) {
+            changed |= add(e);
+        }
+        return changed;
+    }
+
+    /**
+     * Remove every element of c from the hash table, as remove() would.
+     * 
+     * The elements must be non-null. Elements that are not Es are never 
+     * `equals()` to one in the hash table, so are not found.
+     * 
+     * @param c the elements
+     * @return true iff any element was present and removed
+     */
+    @SuppressWarnings("unchecked")
+    default boolean removeAll(Collection<?> c) {
+        boolean changed = false;
+        for (Object o : c) {
+            // remove() only calls hashCode() and equals() on its argument
+            changed |= remove((E) o);
+        }
+        return changed;
+    }
+
+    /**
+     * Remove every element of the hash table that is not `equals()` to some 
+     * element of c.
+     * 
+     * @param c the elements to keep
+     * @return true iff any element was removed
+     */
+    default boolean retainAll(Collection<?> c) {
+        Set<?> keep = c instanceof Set ? (Set<?>) c : new HashSet<Object>(c);
+        List<E> removed = new ArrayList<>();
+        for (E e : this) {
+            if (!keep.contains(e)) {
+                removed.add(e);
+            }
+        }
+        for (E e : removed) {
+            remove(e);
+        }
+        return !removed.isEmpty();
+    }
+
+    /**
+     * Return which of some elements are stored in the hash table.
+     * 
+     * The elements must be non-null.
+     * 
+     * @param elements the elements
+     * @return a set whose bit i is set iff elements.get(i) is stored in the 
+     *         hash table
+     */
+    default BitSet containsAll(List<? extends E> elements) {
+        BitSet result = new BitSet(elements.size());
+        for (int i = 0; i < elements.size(); i++) {
+            if (contains(elements.get(i))) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a sequential Stream of the elements of the hash table
+     */
+    default Stream<E> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Return a parallel Stream of the elements of the hash table. It runs in 
+     * parallel only as well as the table's spliterator() splits.
+     * 
+     * @return a parallel Stream of the elements of the hash table
+     */
+    default Stream<E> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntIntMapTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        IntIntMap m = new IntIntMap();
+        assertEquals(0, m.size());
+        assertFalse(m.containsKey(0));
+        assertEquals(-1, m.getOrDefault(0, -1));
+        assertEquals(0, m.keys().size());
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        IntIntMap m = new IntIntMap();
+        m.put(1, 10);
+        m.put(0, 0);
+        assertEquals(2, m.size());
+        assertEquals(10, m.getOrDefault(1, -1));
+        assertEquals(0, m.getOrDefault(0, -1));
+        assertTrue(m.containsKey(0));
+        m.put(1, 11);
+        assertEquals(2, m.size());
+        assertEquals(11, m.getOrDefault(1, -1));
+        assertEquals(11, m.remove(1, -1));
+        assertEquals(-1, m.remove(1, -1));
+        assertEquals(1, m.size());
+    }
+
+    @Test
+    public void testKeysDoNotShareStructure() throws Exception {
+        IntIntMap m = new IntIntMap();
+        m.put(Integer.MIN_VALUE, 1);
+        m.put(-1, 2);
+        assertTrue(m.keys().contains(Integer.MIN_VALUE));
+        assertTrue(m.keys().contains(-1));
+        m.keys().remove(-1);
+        assertTrue(m.containsKey(-1));
+        m.clear();
+        assertEquals(0, m.size());
+        assertFalse(m.containsKey(-1));
+    }
+
+    @Test
+    public void testRandomPutRemove() throws Exception {
+        Random random = new Random(0);
+        IntIntMap m = new IntIntMap();
+        Map<Integer, Integer> h = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            final int k = (random.nextInt(2000) - 1000) << 12;
+            final int v = random.nextInt();
+            if (random.nextDouble() < 0.6) {
+                h.put(k, v);
+                m.put(k, v);
+            } else if (random.nextBoolean()) {
+                assertEquals((int) h.getOrDefault(k, -1), m.remove(k, -1));
+                h.remove(k);
+            } else {
+                assertEquals((int) h.getOrDefault(k, -1), m.getOrDefault(k, -1));
+            }
+            assertEquals(h.size(), m.size());
+        }
+        Set<Integer> keys = new HashSet<>();
+        m.keys().forEach(keys::add);
+        assertEquals(h.keySet(), keys);
+        for (int k : keys) {
+            assertEquals((int) h.get(k), m.getOrDefault(k, -1));
+        }
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        // more than fit in a capacity of 2^30 at a load factor of 0.75
+        try {
+            new IntIntMap(Integer.MAX_VALUE);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
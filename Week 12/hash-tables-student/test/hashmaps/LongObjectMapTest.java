@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void testEmpty() throws Exception {
+        LongObjectMap<String> m = new LongObjectMap<>();
+        assertEquals(0, m.size());
+        assertNull(m.get(0));
+        assertEquals("x", m.getOrDefault(0, "x"));
+        assertEquals(0, m.keys().size());
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        LongObjectMap<String> m = new LongObjectMap<>();
+        m.put(1, "a");
+        m.put(Long.MIN_VALUE, "b");
+        assertEquals(2, m.size());
+        assertEquals("a", m.get(1));
+        assertEquals("b", m.get(Long.MIN_VALUE));
+        m.put(1, "c");
+        assertEquals(2, m.size());
+        assertEquals("c", m.remove(1));
+        assertNull(m.remove(1));
+        assertEquals(1, m.size());
+    }
+
+    @Test
+    public void testNullValue() throws Exception {
+        LongObjectMap<String> m = new LongObjectMap<>();
+        m.put(7, null);
+        assertTrue(m.containsKey(7));
+        assertNull(m.get(7));
+        assertNull(m.getOrDefault(7, "x"));
+        assertEquals(1, m.size());
+    }
+
+    @Test
+    public void testKeysDoNotShareStructure() throws Exception {
+        LongObjectMap<String> m = new LongObjectMap<>();
+        m.put(-1, "a");
+        m.put(1L << 32, "b");
+        assertTrue(m.keys().contains(-1));
+        assertTrue(m.keys().contains(1L << 32));
+        m.keys().remove(-1);
+        assertTrue(m.containsKey(-1));
+        m.clear();
+        assertEquals(0, m.size());
+        assertNull(m.get(-1));
+    }
+
+    @Test
+    public void testRandomPutRemove() throws Exception {
+        Random random = new Random(0);
+        LongObjectMap<Integer> m = new LongObjectMap<>();
+        Map<Long, Integer> h = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            // keys that differ only in their high halves
+            final long k = (long) (random.nextInt(2000) - 1000) << 32;
+            final Integer v = random.nextInt();
+            if (random.nextDouble() < 0.6) {
+                h.put(k, v);
+                m.put(k, v);
+            } else if (random.nextBoolean()) {
+                assertEquals(h.remove(k), m.remove(k));
+            } else {
+                assertEquals(h.get(k), m.get(k));
+            }
+            assertEquals(h.size(), m.size());
+        }
+        Set<Long> keys = new HashSet<>();
+        m.keys().forEach(keys::add);
+        assertEquals(h.keySet(), keys);
+        for (long k : keys) {
+            assertEquals(h.get(k), m.get(k));
+        }
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        // more than fit in a capacity of 2^30 at a load factor of 0.75
+        try {
+            new LongObjectMap<String>(Integer.MAX_VALUE);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
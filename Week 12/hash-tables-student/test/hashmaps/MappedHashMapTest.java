@@ -0,0 +1,187 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashmaps;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedHashMapTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("map");
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        try (MappedHashMap<Integer, Long> m = new MappedHashMap<>(file(), Codec.INTEGER, Codec.LONG)) {
+            assertEquals(0, m.size());
+            assertEquals(null, m.get(1));
+            assertEquals(Long.valueOf(7), m.getOrDefault(1, 7L));
+            assertEquals(new HashSet<>(), m.keys());
+        }
+        assertTrue(Files.exists(file()));
+    }
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        try (MappedHashMap<Integer, Long> m = new MappedHashMap<>(file(), Codec.INTEGER, Codec.LONG)) {
+            m.put(1, 10L);
+            m.put(0, 0L);
+            assertEquals(2, m.size());
+            assertEquals(Long.valueOf(10), m.get(1));
+            assertEquals(Long.valueOf(0), m.get(0));
+            m.put(1, 20L);
+            assertEquals(2, m.size());
+            assertEquals(Long.valueOf(20), m.get(1));
+            assertEquals(Long.valueOf(20), m.remove(1));
+            assertEquals(null, m.remove(1));
+            assertEquals(1, m.size());
+            assertEquals(new HashSet<>(Arrays.asList(0)), m.keys());
+        }
+    }
+
+    @Test
+    public void testStringKeys() throws Exception {
+        try (MappedHashMap<String, Double> m = new MappedHashMap<>(file(), Codec.string(12), Codec.DOUBLE)) {
+            m.put("pi", 3.14);
+            m.put("e", 2.72);
+            m.put("héllo", 1.0);
+            assertEquals(Double.valueOf(3.14), m.get("pi"));
+            assertEquals(Double.valueOf(1.0), m.get("héllo"));
+            assertEquals(null, m.get("p"));
+            assertEquals(new HashSet<>(Arrays.asList("pi", "e", "héllo")), m.keys());
+            try {
+                m.put("much too long a key", 0.0);
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        try (MappedHashMap<Integer, Integer> m = new MappedHashMap<>(file(), Codec.INTEGER, Codec.INTEGER)) {
+            for (int i = 0; i < 10000; i++) {
+                m.put(i, -i);
+            }
+            m.remove(5);
+        }
+        try (MappedHashMap<Integer, Integer> m = new MappedHashMap<>(file(), Codec.INTEGER, Codec.INTEGER)) {
+            assertEquals(9999, m.size());
+            for (int i = 0; i < 10000; i++) {
+                assertEquals(i == 5 ? null : Integer.valueOf(-i), m.get(i));
+            }
+            m.put(10000, 1);
+            assertEquals(10000, m.size());
+        }
+        assertFalse(Files.exists(file().resolveSibling("map.resize")));
+    }
+
+    @Test
+    public void testFailedResize() throws Exception {
+        // a non-empty directory where resize() creates its new file
+        Path blocker = Files.createDirectories(file().resolveSibling("map.resize").resolve("blocker"));
+        try (MappedHashMap<Integer, Integer> m = new MappedHashMap<>(file(), Codec.INTEGER, Codec.INTEGER)) {
+            for (int i = 0; i < 6; i++) {
+                m.put(i, -i);
+            }
+            try {
+                m.put(6, -6);
+                fail();
+            } catch (UncheckedIOException e) {
+            }
+            assertEquals(6, m.size());
+            for (int i = 0; i < 6; i++) {
+                assertEquals(Integer.valueOf(-i), m.get(i));
+            }
+            Files.delete(blocker);
+            Files.delete(blocker.getParent());
+            m.put(6, -6);
+            assertEquals(7, m.size());
+            assertEquals(Integer.valueOf(-6), m.get(6));
+        }
+        try (MappedHashMap<Integer, Integer> m = new MappedHashMap<>(file(), Codec.INTEGER, Codec.INTEGER)) {
+            assertEquals(7, m.size());
+        }
+    }
+
+    @Test
+    public void testNaNKeys() throws Exception {
+        double otherNaN = Double.longBitsToDouble(0x7ff8000000000001L);
+        try (MappedHashMap<Double, Integer> m = new MappedHashMap<>(file(), Codec.DOUBLE, Codec.INTEGER)) {
+            m.put(Double.NaN, 1);
+            m.put(otherNaN, 2);
+            assertEquals(1, m.size());
+            assertEquals(Integer.valueOf(2), m.get(Double.NaN));
+            m.put(0.0, 3);
+            m.put(-0.0, 4);
+            assertEquals(3, m.size());
+            assertEquals(Integer.valueOf(3), m.get(0.0));
+        }
+    }
+
+    @Test
+    public void testReopenWithOtherCodecs() throws Exception {
+        new MappedHashMap<>(file(), Codec.INTEGER, Codec.INTEGER).close();
+        try {
+            new MappedHashMap<>(file(), Codec.LONG, Codec.INTEGER);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testNotAMap() throws Exception {
+        Files.write(file(), "not a map, but long enough to have a header".getBytes());
+        try {
+            new MappedHashMap<>(file(), Codec.INTEGER, Codec.INTEGER);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testRandomPutRemove() throws Exception {
+        Random random = new Random(0);
+        Map<Long, Integer> h = new HashMap<>();
+        try (MappedHashMap<Long, Integer> m = new MappedHashMap<>(file(), Codec.LONG, Codec.INTEGER)) {
+            for (int i = 0; i < 100000; i++) {
+                // keys that differ only in their high halves
+                final long k = (long) (random.nextInt(4000) - 2000) << 32;
+                final int v = random.nextInt();
+                if (random.nextDouble() < 0.6) {
+                    h.put(k, v);
+                    m.put(k, v);
+                } else if (random.nextBoolean()) {
+                    assertEquals(h.remove(k), m.remove(k));
+                } else {
+                    assertEquals(h.get(k), m.get(k));
+                }
+                assertEquals(h.size(), m.size());
+            }
+            assertEquals(h.keySet(), m.keys());
+        }
+        try (MappedHashMap<Long, Integer> m = new MappedHashMap<>(file(), Codec.LONG, Codec.INTEGER)) {
+            for (Map.Entry<Long, Integer> e : h.entrySet()) {
+                assertEquals(e.getValue(), m.get(e.getKey()));
+            }
+        }
+    }
+}
@@ -6,9 +6,11 @@ package hashmaps;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -168,4 +170,53 @@ public class SimpleHashMapTest {
         }
     }
 
+    @Test
+    public void testKeys() throws Exception {
+        SimpleMap<Integer, Integer> m = new SimpleHashMap<>();
+        m.put(1, 10);
+        m.put(2, 20);
+        m.put(3, 30);
+        m.remove(2);
+        assertEquals(new HashSet<>(Arrays.asList(1, 3)), m.keys());
+    }
+
+    @Test
+    public void testKeysIsASnapshot() throws Exception {
+        SimpleMap<Integer, Integer> m = new SimpleHashMap<>();
+        m.put(1, 10);
+        Set<Integer> keys = m.keys();
+        m.put(2, 20);
+        keys.remove(1);
+        assertEquals(new HashSet<>(), keys);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), m.keys());
+    }
+
+    @Test
+    public void testNullValue() throws Exception {
+        SimpleMap<Integer, Integer> m = new SimpleHashMap<>();
+        m.put(1, null);
+        assertEquals(1, m.size());
+        assertEquals(null, m.getOrDefault(1, 20));
+        assertEquals(null, m.remove(1));
+        assertEquals(0, m.size());
+    }
+
+    @Test
+    public void testManyKeys() throws Exception {
+        SimpleMap<Integer, Integer> m = new SimpleHashMap<>();
+        for (int i = -50000; i < 50000; i++) {
+            m.put(i, i * 2);
+        }
+        assertEquals(100000, m.size());
+        for (int i = -50000; i < 50000; i++) {
+            assertEquals(Integer.valueOf(i * 2), m.get(i));
+        }
+        assertEquals(100000, m.keys().size());
+        for (int i = -50000; i < 50000; i += 2) {
+            assertEquals(Integer.valueOf(i * 2), m.remove(i));
+        }
+        assertEquals(50000, m.size());
+        assertEquals(null, m.get(-50000));
+        assertEquals(Integer.valueOf(-99998), m.get(-49999));
+    }
 }
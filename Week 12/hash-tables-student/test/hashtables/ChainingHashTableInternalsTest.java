@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+
+import org.junit.Test;
+
+/**
+ * Tests of ChainingHashTable's own structure and methods, which the other
+ * HashTable implementations do not share, and so are not in
+ * ChainingHashTableTest, whose tests they all run.
+ */
+public class ChainingHashTableInternalsTest {
+
+    @Test
+    public void testBucketsBecomeTrees() throws Exception {
+        ChainingHashTable<String> t = new ChainingHashTable<>();
+        List<String> strings = ChainingHashTableTest.equalHashCodes(6);
+        for (String s : strings) {
+            t.add(s);
+        }
+        int trees = 0;
+        for (ChainingHashTable.Bucket<String> bucket : t.array) {
+            if (bucket instanceof ChainingHashTable.TreeBucket) {
+                trees++;
+                assertEquals(strings.size(), bucket.size());
+            }
+        }
+        assertEquals(1, trees);
+        for (String s : strings) {
+            assertTrue(t.contains(s));
+        }
+    }
+
+    @Test
+    public void testOf() throws Exception {
+        List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 90000; i++) {
+            elements.add(i);
+        }
+        ChainingHashTable<Integer> t = ChainingHashTable.of(elements);
+        assertEquals(90000, t.size());
+        assertEquals(131071, t.capacity());
+        assertNull(t.old);
+        for (int i = 0; i < 90000; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    @Test
+    public void testSpliteratorSplits() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        for (int i = 0; i < 10000; i++) {
+            t.add(i);
+        }
+        Spliterator<Integer> whole = t.spliterator();
+        assertEquals(10000, whole.getExactSizeIfKnown());
+        assertTrue(whole.hasCharacteristics(Spliterator.DISTINCT));
+        assertTrue(whole.hasCharacteristics(Spliterator.NONNULL));
+
+        // split into many ranges, which together hold every element once
+        List<Spliterator<Integer>> parts = new ArrayList<>();
+        parts.add(whole);
+        for (int round = 0; round < 5; round++) {
+            List<Spliterator<Integer>> split = new ArrayList<>();
+            for (Spliterator<Integer> part : parts) {
+                Spliterator<Integer> prefix = part.trySplit();
+                if (prefix != null) {
+                    assertFalse(prefix.hasCharacteristics(Spliterator.SIZED));
+                    split.add(prefix);
+                }
+                split.add(part);
+            }
+            parts = split;
+        }
+        assertEquals(32, parts.size());
+        Set<Integer> seen = new HashSet<>();
+        for (Spliterator<Integer> part : parts) {
+            // mix tryAdvance() and forEachRemaining()
+            part.tryAdvance(i -> assertTrue(seen.add(i)));
+            part.forEachRemaining(i -> assertTrue(seen.add(i)));
+            assertFalse(part.tryAdvance(i -> fail()));
+        }
+        assertEquals(10000, seen.size());
+    }
+}
@@ -8,6 +8,7 @@ import static org.junit.Assert.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
@@ -25,43 +26,59 @@ public class ChainingHashTableTest {
     public void setup() {
     }
 
+    /**
+     * Creates an empty table of the implementation under test. Tests of other
+     * HashTable implementations extend this class and override both factory
+     * methods, so that every test here runs against them too.
+     */
+    protected <E> HashTable<E> newTable() {
+        return new ChainingHashTable<>();
+    }
+
+    /**
+     * Creates an empty table able to hold at least n elements.
+     */
+    protected <E> HashTable<E> newTable(int n) {
+        return new ChainingHashTable<>(n);
+    }
+
     @Test
     public void testNewTable() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(0, t.size());
         assertEquals(7, t.capacity());
     }
 
     @Test
     public void testNewTableCapacity5() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>(5);
+        HashTable<Integer> t = newTable(5);
         assertEquals(7, t.capacity());
     }
 
     @Test
     public void testNewTableCapacity15() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>(15);
+        HashTable<Integer> t = newTable(15);
         assertEquals(15, t.capacity());
     }
 
     @Test
     public void testNewTableCapacityMultiple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>(2);
+        HashTable<Integer> t = newTable(2);
         assertEquals(3, t.capacity());
 
-        t = new ChainingHashTable<>(7);
+        t = newTable(7);
         assertEquals(7, t.capacity());
 
-        t = new ChainingHashTable<>(20);
+        t = newTable(20);
         assertEquals(31, t.capacity());
 
-        t = new ChainingHashTable<>(65000);
+        t = newTable(65000);
         assertEquals(65535, t.capacity());
     }
 
     @Test
     public void testSizeSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(0, t.size());
 
         t.add(0);
@@ -76,7 +93,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testSizeCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(0, t.size());
 
         t.add(0);
@@ -91,7 +108,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testCapacitySimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(7, t.capacity());
 
         t.add(0);
@@ -106,7 +123,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testCapacityCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(7, t.capacity());
 
         t.add(0);
@@ -121,7 +138,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testLoadFactorSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(0, t.loadFactor(), 0);
 
         t.add(0);
@@ -136,7 +153,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testLoadFactorCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(0, t.loadFactor(), 0);
 
         t.add(0);
@@ -151,7 +168,7 @@ public class ChainingHashTableTest {
     
     @Test
     public void testContainsSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertFalse(t.contains(0));
         assertFalse(t.contains(7));
 
@@ -162,7 +179,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testContainsCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertFalse(t.contains(0));
         assertFalse(t.contains(7));
 
@@ -177,7 +194,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testGetSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(null, t.get(0));
         assertEquals(null, t.get(7));
 
@@ -189,7 +206,7 @@ public class ChainingHashTableTest {
     
     @Test
     public void testGetCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(null, t.get(0));
         assertEquals(null, t.get(7));
 
@@ -208,7 +225,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testRemoveSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertFalse(t.contains(0));
         assertFalse(t.contains(7));
 
@@ -228,7 +245,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testRemoveCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertFalse(t.contains(0));
         assertFalse(t.contains(7));
 
@@ -256,7 +273,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testRemoveCollisionOffset() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertFalse(t.contains(0));
         assertFalse(t.contains(7));
 
@@ -278,7 +295,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testRemoveCollisionOffsetReadd() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertFalse(t.contains(0));
         assertFalse(t.contains(7));
 
@@ -304,14 +321,14 @@ public class ChainingHashTableTest {
 
     @Test
     public void testAddMultiple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertTrue(t.add(0));
         assertFalse(t.add(0));
     }
 
     @Test
     public void testIteratorEmpty() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         for (Integer i : t) {
             fail();
         }
@@ -319,7 +336,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testIteratorSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         for (int i = 0; i < 6; i++) {
             t.add(i);
         }
@@ -338,7 +355,7 @@ public class ChainingHashTableTest {
     @Test
     public void testIteratorCollisions() throws Exception {
         List<Integer> values = Arrays.asList(0, 7, 14, 2, 9);
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         for (Integer i : values) {
             t.add(i);
         }
@@ -356,7 +373,7 @@ public class ChainingHashTableTest {
     
     @Test
     public void testEnlargeSimple() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(7, t.capacity());
         for (int i = 0; i < 6; i++) {
             t.add(i);
@@ -368,7 +385,7 @@ public class ChainingHashTableTest {
 
     @Test
     public void testEnlargeCollision() throws Exception {
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         assertEquals(7, t.capacity());
         for (int i = 1; i < 7; i++) {
             t.add(i * 7);
@@ -381,7 +398,7 @@ public class ChainingHashTableTest {
     @Test
     public void test100Random() throws Exception {
         Random random = new Random(0);
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         Set<Integer> h = new HashSet<Integer>();
         int n = 3;
         int cap = 7;
@@ -409,7 +426,7 @@ public class ChainingHashTableTest {
     @Test
     public void test1000RandomAddRemove() throws Exception {
         Random random = new Random(0);
-        ChainingHashTable<Integer> t = new ChainingHashTable<>();
+        HashTable<Integer> t = newTable();
         Set<Integer> h = new HashSet<Integer>();
         int n = 3;
         int cap = 7;
@@ -449,7 +466,7 @@ public class ChainingHashTableTest {
     public void test1000x1000RandomAddRemove() throws Exception {
         Random random = new Random(0);
         for (int round = 0; round < 1000; round++) {
-            ChainingHashTable<Integer> t = new ChainingHashTable<>();
+            HashTable<Integer> t = newTable();
             Set<Integer> h = new HashSet<Integer>();
             int n = 3;
             int cap = 7;
@@ -486,6 +503,246 @@ public class ChainingHashTableTest {
         }
     }
 
+    /**
+     * @return 2^k distinct strings, all with the same hash code: every string
+     *         of k blocks, each "Aa" or "BB", which have equal hash codes
+     */
+    static List<String> equalHashCodes(int k) {
+        List<String> strings = new ArrayList<>();
+        strings.add("");
+        for (int i = 0; i < k; i++) {
+            List<String> longer = new ArrayList<>();
+            for (String s : strings) {
+                longer.add(s + "Aa");
+                longer.add(s + "BB");
+            }
+            strings = longer;
+        }
+        return strings;
+    }
+
+    /**
+     * An element whose hash code is always the same, and which is not
+     * Comparable.
+     */
+    static final class Colliding {
+        final int id;
+
+        Colliding(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Colliding && ((Colliding) obj).id == id;
+        }
+    }
+
+    @Test
+    public void testEqualHashCodes() throws Exception {
+        HashTable<String> t = newTable();
+        List<String> strings = equalHashCodes(12);
+        for (String s : strings) {
+            assertTrue(t.add(s));
+        }
+        assertEquals(strings.size(), t.size());
+        for (String s : strings) {
+            assertTrue(t.contains(new String(s)));
+            assertFalse(t.contains(s + "x"));
+        }
+        for (int i = 0; i < strings.size(); i += 2) {
+            assertTrue(t.remove(strings.get(i)));
+        }
+        Set<String> seen = new HashSet<>();
+        for (String s : t) {
+            assertTrue(seen.add(s));
+        }
+        assertEquals(strings.size() / 2, seen.size());
+        for (int i = 0; i < strings.size(); i++) {
+            assertEquals(i % 2 == 1, t.contains(strings.get(i)));
+        }
+    }
+
+    @Test
+    public void testEqualHashCodesNotComparable() throws Exception {
+        HashTable<Colliding> t = newTable();
+        for (int i = 0; i < 200; i++) {
+            assertTrue(t.add(new Colliding(i)));
+        }
+        assertFalse(t.add(new Colliding(7)));
+        assertEquals(200, t.size());
+        for (int i = 0; i < 200; i += 2) {
+            assertTrue(t.remove(new Colliding(i)));
+        }
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i % 2 == 1, t.contains(new Colliding(i)));
+        }
+    }
+
+    @Test
+    public void testEqualHashCodesMixedClasses() throws Exception {
+        // an Integer and a Long with the same hash code as the strings, which
+        // are Comparable, but not with the strings or each other
+        List<String> strings = equalHashCodes(6);
+        int hash = strings.get(0).hashCode();
+        List<Object> elements = new ArrayList<>(strings.subList(0, 32));
+        elements.add(hash);
+        elements.add(hash & 0xffffffffL);
+        elements.addAll(strings.subList(32, 64));
+        HashTable<Object> t = newTable();
+        for (Object o : elements) {
+            assertEquals(hash, o.hashCode());
+            assertTrue(t.add(o));
+        }
+        assertEquals(66, t.size());
+        for (Object o : elements) {
+            assertTrue(t.contains(o));
+            assertFalse(t.add(o));
+        }
+        assertTrue(t.remove(hash));
+        assertTrue(t.remove(strings.get(40)));
+        assertFalse(t.contains(hash));
+        assertTrue(t.contains(hash & 0xffffffffL));
+        assertEquals(64, t.size());
+    }
+
+    @Test
+    public void testAddAll() throws Exception {
+        HashTable<Integer> t = newTable();
+        HashTable<Integer> one = newTable();
+        List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            elements.add(i * 7 - 5000);
+            one.add(i * 7 - 5000);
+        }
+        assertTrue(t.addAll(elements));
+        assertEquals(10000, t.size());
+        // the same capacity as adding them one at a time
+        assertEquals(one.capacity(), t.capacity());
+        for (Integer i : elements) {
+            assertTrue(t.contains(i));
+        }
+        assertFalse(t.addAll(elements.subList(0, 100)));
+        assertFalse(t.addAll(new ArrayList<Integer>()));
+        assertEquals(10000, t.size());
+    }
+
+    @Test
+    public void testAddAllToNonEmpty() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 100; i++) {
+            t.add(i);
+        }
+        assertTrue(t.addAll(Arrays.asList(50, 150, 150, 250)));
+        assertEquals(102, t.size());
+        assertTrue(t.loadFactor() <= 0.75);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(t.contains(i));
+        }
+        assertTrue(t.contains(150));
+        assertTrue(t.contains(250));
+    }
+
+    @Test
+    public void testRemoveAll() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 100; i++) {
+            t.add(i);
+        }
+        assertTrue(t.removeAll(Arrays.asList(1, 3, 5, 500)));
+        assertFalse(t.removeAll(Arrays.asList(1, 500)));
+        assertTrue(t.removeAll(Arrays.asList("7", 7L, 9)));
+        assertEquals(96, t.size());
+        assertTrue(t.contains(7));
+        assertFalse(t.contains(3));
+        assertTrue(t.contains(4));
+    }
+
+    @Test
+    public void testRetainAll() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 100; i++) {
+            t.add(i);
+        }
+        assertTrue(t.retainAll(Arrays.asList(1, 3, 5, 500)));
+        assertEquals(3, t.size());
+        Set<Integer> seen = new HashSet<>();
+        for (Integer i : t) {
+            seen.add(i);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(1, 3, 5)), seen);
+        assertFalse(t.retainAll(new HashSet<>(Arrays.asList(1, 3, 5))));
+        assertTrue(t.retainAll(Arrays.asList("1", 3L, 5)));
+        assertEquals(1, t.size());
+        assertTrue(t.contains(5));
+    }
+
+    @Test
+    public void testContainsAll() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 1000; i += 2) {
+            t.add(i);
+        }
+        List<Integer> queries = new ArrayList<>();
+        for (int i = -10; i < 1010; i++) {
+            queries.add(i);
+        }
+        BitSet found = t.containsAll(queries);
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(t.contains(queries.get(i)), found.get(i));
+        }
+        assertEquals(500, found.cardinality());
+        assertTrue(t.containsAll(new ArrayList<Integer>()).isEmpty());
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        // with strings of equal hash codes, which share a bucket
+        HashTable<Object> t = newTable();
+        for (int i = 0; i < 1000; i++) {
+            t.add(i);
+        }
+        for (String s : equalHashCodes(5)) {
+            t.add(s);
+        }
+        Set<Object> iterated = new HashSet<>();
+        for (Object o : t) {
+            iterated.add(o);
+        }
+        Set<Object> seen = new HashSet<>();
+        t.forEach(o -> assertTrue(seen.add(o)));
+        assertEquals(iterated, seen);
+        assertEquals(1032, seen.size());
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 10000; i++) {
+            t.add(i);
+        }
+        t.remove(5000);
+        assertEquals(9999, t.stream().count());
+        assertEquals(49995000L - 5000, t.stream().mapToLong(i -> i).sum());
+        assertEquals(0, newTable().stream().count());
+    }
+
+    @Test
+    public void testParallelStream() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 100000; i++) {
+            t.add(i * 3);
+        }
+        assertEquals(100000, t.parallelStream().distinct().count());
+        assertEquals(t.stream().mapToLong(i -> i).sum(), t.parallelStream().mapToLong(i -> i).sum());
+        assertEquals(50000, t.parallelStream().filter(i -> i % 2 == 0).count());
+    }
+
     @Test
     public void testChainingHashTableAll() throws Exception {
         testNewTable();
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Runs every ChainingHashTableTest against ConcurrentHashTable, plus tests of
+ * its use by several threads at once.
+ */
+public class ConcurrentHashTableTest extends ChainingHashTableTest {
+
+    @Override
+    protected <E> HashTable<E> newTable() {
+        return new ConcurrentHashTable<>();
+    }
+
+    @Override
+    protected <E> HashTable<E> newTable(int n) {
+        return new ConcurrentHashTable<>(n);
+    }
+
+    private interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    /**
+     * Runs a task on some threads, all started at once, and rethrows the first
+     * failure of any of them.
+     */
+    private static void inParallel(int threads, Task task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Throwable> failures = new ArrayList<>();
+        List<Thread> running = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run(thread);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            t.start();
+            running.add(t);
+        }
+        start.countDown();
+        for (Thread t : running) {
+            t.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.get(0));
+        }
+    }
+
+    @Test
+    public void testStripesRequired() throws Exception {
+        try {
+            new ConcurrentHashTable<Integer>(7, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        HashTable<Integer> t = new ConcurrentHashTable<>(7, 3);
+        assertTrue(t.add(1));
+        assertTrue(t.contains(1));
+    }
+
+    @Test
+    public void testStripesCapped() throws Exception {
+        HashTable<Integer> t = new ConcurrentHashTable<>(7, Integer.MAX_VALUE);
+        assertTrue(t.add(1));
+        assertTrue(t.contains(1));
+    }
+
+    @Test
+    public void testLongCollidingChain() throws Exception {
+        // long enough that copying the nodes in front of one by recursion
+        // would overflow the stack
+        HashTable<Colliding> t = new ConcurrentHashTable<>(60000);
+        for (int i = 0; i < 30000; i++) {
+            t.add(new Colliding(i));
+        }
+        // new nodes go at the head, so the first added is at the far end
+        assertFalse(t.add(new Colliding(0)));
+        assertEquals(30000, t.size());
+        assertTrue(t.remove(new Colliding(0)));
+        assertFalse(t.contains(new Colliding(0)));
+        assertTrue(t.contains(new Colliding(1)));
+        assertEquals(29999, t.size());
+    }
+
+    @Test
+    public void testParallelAddsGrowTable() throws Exception {
+        HashTable<Integer> t = newTable();
+        inParallel(8, thread -> {
+            for (int i = 0; i < 20000; i++) {
+                assertTrue(t.add(i * 8 + thread));
+            }
+        });
+        assertEquals(160000, t.size());
+        assertTrue(t.loadFactor() <= 0.75);
+        for (int i = 0; i < 160000; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    @Test
+    public void testParallelAddsOfSameElements() throws Exception {
+        HashTable<Integer> t = newTable();
+        int[] added = new int[4];
+        inParallel(4, thread -> {
+            for (int i = 0; i < 20000; i++) {
+                if (t.add(i)) {
+                    added[thread]++;
+                }
+            }
+        });
+        // each element was added by exactly one thread
+        assertEquals(20000, added[0] + added[1] + added[2] + added[3]);
+        assertEquals(20000, t.size());
+    }
+
+    @Test
+    public void testParallelAddRemove() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 10000; i++) {
+            t.add(-i - 1);
+        }
+        inParallel(4, thread -> {
+            for (int round = 0; round < 10; round++) {
+                for (int i = thread; i < 10000; i += 4) {
+                    assertTrue(t.add(i));
+                }
+                for (int i = thread; i < 10000; i += 4) {
+                    assertTrue(t.remove(i));
+                }
+            }
+        });
+        // the elements no thread touched are all still there
+        assertEquals(10000, t.size());
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(t.contains(-i - 1));
+            assertFalse(t.contains(i));
+        }
+    }
+
+    @Test
+    public void testReadersSeeStableElements() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 1000; i++) {
+            t.add(i);
+        }
+        inParallel(4, thread -> {
+            if (thread == 0) {
+                // grow and shrink the rest of the table, forcing resizes
+                for (int i = 1000; i < 50000; i++) {
+                    t.add(i);
+                }
+                for (int i = 1000; i < 50000; i++) {
+                    t.remove(i);
+                }
+            } else {
+                for (int round = 0; round < 50; round++) {
+                    for (int i = 0; i < 1000; i++) {
+                        assertEquals(Integer.valueOf(i), t.get(i));
+                    }
+                }
+            }
+        });
+        assertEquals(1000, t.size());
+    }
+
+    @Test
+    public void testIteratorIsWeaklyConsistent() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 1000; i++) {
+            t.add(i);
+        }
+        inParallel(2, thread -> {
+            if (thread == 0) {
+                for (int i = 1000; i < 20000; i++) {
+                    t.add(i);
+                }
+            } else {
+                for (int round = 0; round < 20; round++) {
+                    Set<Integer> seen = new HashSet<>();
+                    for (Integer i : t) {
+                        assertTrue(seen.add(i));
+                    }
+                    // every element present before iterating is returned
+                    for (int i = 0; i < 1000; i++) {
+                        assertTrue(seen.contains(i));
+                    }
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testIteratorDoesNotFailFast() throws Exception {
+        HashTable<Integer> t = newTable();
+        for (int i = 0; i < 10; i++) {
+            t.add(i);
+        }
+        int count = 0;
+        for (Integer i : t) {
+            t.remove(i);
+            t.add(i + 100);
+            count++;
+            if (count > 1000) {
+                break;
+            }
+        }
+        assertEquals(10, t.size());
+    }
+}
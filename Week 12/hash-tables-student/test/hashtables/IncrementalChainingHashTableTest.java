@@ -0,0 +1,146 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Runs every ChainingHashTableTest against a ChainingHashTable that resizes
+ * incrementally, plus tests of operations in the middle of a resize.
+ */
+public class IncrementalChainingHashTableTest extends ChainingHashTableTest {
+
+    @Override
+    protected <E> HashTable<E> newTable() {
+        return new ChainingHashTable<>(7, true);
+    }
+
+    @Override
+    protected <E> HashTable<E> newTable(int n) {
+        return new ChainingHashTable<>(n, true);
+    }
+
+    @Test
+    public void testDuringResize() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1000, true);
+        for (int i = 0; i < 768; i++) {
+            t.add(i);
+        }
+        assertEquals(1023, t.capacity());
+        t.add(768);
+        assertEquals(2047, t.capacity());
+        // only a few buckets have moved, so most elements are still in the old array
+        assertNotNull(t.old);
+        for (int i = 0; i <= 768; i++) {
+            assertTrue(t.contains(i));
+        }
+        assertNull(t.old);
+    }
+
+    @Test
+    public void testOperationsDuringResize() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1000, true);
+        for (int i = 0; i < 769; i++) {
+            t.add(i);
+        }
+        assertNotNull(t.old);
+        // overwrite and remove elements still in old buckets, and add new ones
+        assertFalse(t.add(700));
+        assertTrue(t.remove(701));
+        assertFalse(t.remove(701));
+        assertTrue(t.add(5000));
+        assertEquals(Integer.valueOf(700), t.get(700));
+        assertEquals(769, t.size());
+        assertNotNull(t.old);
+
+        Set<Integer> seen = new HashSet<>();
+        for (Integer i : t) {
+            assertTrue(seen.add(i));
+        }
+        assertEquals(769, seen.size());
+        assertTrue(seen.contains(5000));
+        assertFalse(seen.contains(701));
+    }
+
+    @Test
+    public void testEveryResizeFinishes() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(7, true);
+        for (int i = 0; i < 100000; i++) {
+            int capacity = t.capacity();
+            t.add(i);
+            if (t.capacity() != capacity) {
+                // a resize only starts once the previous one has finished
+                assertEquals(capacity, t.old.length);
+                assertEquals(0, t.migrated);
+            }
+        }
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    @Test
+    public void testRandomAddRemoveMatchesStopTheWorld() throws Exception {
+        Random random = new Random(0);
+        ChainingHashTable<Integer> incremental = new ChainingHashTable<>(7, true);
+        ChainingHashTable<Integer> stopTheWorld = new ChainingHashTable<>();
+        for (int i = 0; i < 100000; i++) {
+            final int r = random.nextInt(20000) - 10000;
+            if (random.nextDouble() < 0.67) {
+                assertEquals(stopTheWorld.add(r), incremental.add(r));
+            } else if (random.nextBoolean()) {
+                assertEquals(stopTheWorld.remove(r), incremental.remove(r));
+            } else {
+                assertEquals(stopTheWorld.contains(r), incremental.contains(r));
+            }
+            assertEquals(stopTheWorld.size(), incremental.size());
+            assertEquals(stopTheWorld.capacity(), incremental.capacity());
+        }
+    }
+
+    @Test
+    public void testAddAllDuringResize() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1000, true);
+        for (int i = 0; i < 769; i++) {
+            t.add(i);
+        }
+        assertNotNull(t.old);
+        List<Integer> more = new ArrayList<>();
+        for (int i = 700; i < 5000; i++) {
+            more.add(i);
+        }
+        assertTrue(t.addAll(more));
+        // a bulk add finishes the resize, and needs no other
+        assertNull(t.old);
+        assertEquals(5000, t.size());
+        assertEquals(8191, t.capacity());
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(t.contains(i));
+        }
+    }
+
+    @Test
+    public void testStreamsDuringResize() throws Exception {
+        ChainingHashTable<Integer> t = new ChainingHashTable<>(1000, true);
+        for (int i = 0; i < 769; i++) {
+            t.add(i);
+        }
+        assertNotNull(t.old);
+        Set<Integer> seen = new HashSet<>();
+        t.forEach(i -> assertTrue(seen.add(i)));
+        assertEquals(769, seen.size());
+        assertEquals(769, t.parallelStream().distinct().count());
+        assertEquals(768 * 769 / 2, t.stream().mapToInt(i -> i).sum());
+        assertNotNull(t.old);
+    }
+}
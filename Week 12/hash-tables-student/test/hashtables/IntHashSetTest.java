@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntHashSetTest {
+
+    @Test
+    public void testNewSet() throws Exception {
+        IntHashSet s = new IntHashSet();
+        assertEquals(0, s.size());
+        assertEquals(8, s.capacity());
+        assertFalse(s.contains(0));
+        assertEquals(0, s.toArray().length);
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        assertEquals(8, new IntHashSet(6).capacity());
+        assertEquals(16, new IntHashSet(7).capacity());
+        assertEquals(1 << 17, new IntHashSet(65536 + 1).capacity());
+    }
+
+    @Test
+    public void testAddContainsRemove() throws Exception {
+        IntHashSet s = new IntHashSet();
+        assertTrue(s.add(5));
+        assertFalse(s.add(5));
+        assertTrue(s.contains(5));
+        assertFalse(s.contains(6));
+        assertEquals(1, s.size());
+        assertTrue(s.remove(5));
+        assertFalse(s.remove(5));
+        assertFalse(s.contains(5));
+        assertEquals(0, s.size());
+    }
+
+    @Test
+    public void testAnyInt() throws Exception {
+        // there is no reserved "empty" key
+        IntHashSet s = new IntHashSet();
+        int[] values = {0, -1, Integer.MIN_VALUE, Integer.MAX_VALUE, 1};
+        for (int v : values) {
+            assertTrue(s.add(v));
+        }
+        for (int v : values) {
+            assertTrue(s.contains(v));
+        }
+        int[] keys = s.toArray();
+        Arrays.sort(keys);
+        int[] expected = values.clone();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, keys);
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        IntHashSet s = new IntHashSet();
+        for (int i = 0; i < 100000; i++) {
+            // multiples of a power of two, which would all collide modulo one
+            assertTrue(s.add(i << 14));
+            assertTrue(s.loadFactor() <= 0.75);
+        }
+        assertEquals(100000, s.size());
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(s.contains(i << 14));
+            assertFalse(s.contains((i << 14) + 1));
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        IntHashSet s = new IntHashSet();
+        for (int i = 0; i < 100; i++) {
+            s.add(i);
+        }
+        int capacity = s.capacity();
+        s.clear();
+        assertEquals(0, s.size());
+        assertEquals(capacity, s.capacity());
+        assertFalse(s.contains(1));
+        assertTrue(s.add(1));
+    }
+
+    @Test
+    public void testRandomAddRemove() throws Exception {
+        Random random = new Random(0);
+        IntHashSet s = new IntHashSet();
+        Set<Integer> h = new HashSet<>();
+        for (int i = 0; i < 200000; i++) {
+            final int r = random.nextInt(2000) - 1000;
+            if (random.nextDouble() < 0.6) {
+                assertEquals(h.add(r), s.add(r));
+            } else if (random.nextBoolean()) {
+                assertEquals(h.remove(r), s.remove(r));
+            } else {
+                assertEquals(h.contains(r), s.contains(r));
+            }
+            assertEquals(h.size(), s.size());
+        }
+        Set<Integer> l = new HashSet<>();
+        s.forEach(k -> assertTrue(l.add(k)));
+        assertEquals(h, l);
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        // more than fit in a capacity of 2^30 at a load factor of 0.75
+        try {
+            new IntHashSet(Integer.MAX_VALUE);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testNewSet() throws Exception {
+        LongHashSet s = new LongHashSet();
+        assertEquals(0, s.size());
+        assertEquals(8, s.capacity());
+        assertFalse(s.contains(0));
+        assertEquals(0, s.toArray().length);
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        assertEquals(8, new LongHashSet(6).capacity());
+        assertEquals(16, new LongHashSet(7).capacity());
+        assertEquals(1 << 17, new LongHashSet(65536 + 1).capacity());
+    }
+
+    @Test
+    public void testAddContainsRemove() throws Exception {
+        LongHashSet s = new LongHashSet();
+        assertTrue(s.add(5));
+        assertFalse(s.add(5));
+        assertTrue(s.contains(5));
+        assertFalse(s.contains(6));
+        assertEquals(1, s.size());
+        assertTrue(s.remove(5));
+        assertFalse(s.remove(5));
+        assertFalse(s.contains(5));
+        assertEquals(0, s.size());
+    }
+
+    @Test
+    public void testAnyInt() throws Exception {
+        // there is no reserved "empty" key
+        LongHashSet s = new LongHashSet();
+        long[] values = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1, 1L << 32};
+        for (long v : values) {
+            assertTrue(s.add(v));
+        }
+        for (long v : values) {
+            assertTrue(s.contains(v));
+        }
+        long[] keys = s.toArray();
+        Arrays.sort(keys);
+        long[] expected = values.clone();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, keys);
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        LongHashSet s = new LongHashSet();
+        for (int i = 0; i < 100000; i++) {
+            // multiples of 2^40, which differ only in their high halves
+            assertTrue(s.add((long) i << 40));
+            assertTrue(s.loadFactor() <= 0.75);
+        }
+        assertEquals(100000, s.size());
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(s.contains((long) i << 40));
+            assertFalse(s.contains(((long) i << 40) + 1));
+        }
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        LongHashSet s = new LongHashSet();
+        for (int i = 0; i < 100; i++) {
+            s.add(i);
+        }
+        int capacity = s.capacity();
+        s.clear();
+        assertEquals(0, s.size());
+        assertEquals(capacity, s.capacity());
+        assertFalse(s.contains(1));
+        assertTrue(s.add(1));
+    }
+
+    @Test
+    public void testRandomAddRemove() throws Exception {
+        Random random = new Random(0);
+        LongHashSet s = new LongHashSet();
+        Set<Long> h = new HashSet<>();
+        for (int i = 0; i < 200000; i++) {
+            final long r = (random.nextInt(2000) - 1000) * 0x100000001L;
+            if (random.nextDouble() < 0.6) {
+                assertEquals(h.add(r), s.add(r));
+            } else if (random.nextBoolean()) {
+                assertEquals(h.remove(r), s.remove(r));
+            } else {
+                assertEquals(h.contains(r), s.contains(r));
+            }
+            assertEquals(h.size(), s.size());
+        }
+        Set<Long> l = new HashSet<>();
+        s.forEach(k -> assertTrue(l.add(k)));
+        assertEquals(h, l);
+    }
+
+    @Test
+    public void testTooLarge() throws Exception {
+        // more than fit in a capacity of 2^30 at a load factor of 0.75
+        try {
+            new LongHashSet(Integer.MAX_VALUE);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
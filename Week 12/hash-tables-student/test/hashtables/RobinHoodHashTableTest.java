@@ -0,0 +1,110 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package hashtables;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Runs every ChainingHashTableTest against RobinHoodHashTable, plus tests of
+ * its probing and backward-shift deletion.
+ */
+public class RobinHoodHashTableTest extends ChainingHashTableTest {
+
+    @Override
+    protected <E> HashTable<E> newTable() {
+        return new RobinHoodHashTable<>();
+    }
+
+    @Override
+    protected <E> HashTable<E> newTable(int n) {
+        return new RobinHoodHashTable<>(n);
+    }
+
+    @Test
+    public void testLongRunRemoveMiddle() throws Exception {
+        HashTable<Integer> t = newTable(100);
+        // all in the same home slot (capacity 127)
+        for (int i = 0; i < 10; i++) {
+            t.add(i * 127);
+        }
+        assertTrue(t.remove(5 * 127));
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i != 5, t.contains(i * 127));
+        }
+        assertEquals(9, t.size());
+    }
+
+    @Test
+    public void testInterleavedRuns() throws Exception {
+        HashTable<Integer> t = newTable(100);
+        // two runs whose home slots are next to each other, so they collide
+        for (int i = 0; i < 5; i++) {
+            t.add(i * 127);
+            t.add(1 + i * 127);
+        }
+        for (int i = 0; i < 5; i++) {
+            assertTrue(t.remove(i * 127));
+            for (int j = 0; j < 5; j++) {
+                assertEquals(j > i, t.contains(j * 127));
+                assertTrue(t.contains(1 + j * 127));
+            }
+        }
+    }
+
+    @Test
+    public void testNegativeHashCodes() throws Exception {
+        HashTable<Integer> t = newTable();
+        int[] values = {-1, Integer.MIN_VALUE, -7, Integer.MAX_VALUE, 0};
+        for (int v : values) {
+            assertTrue(t.add(v));
+        }
+        for (int v : values) {
+            assertTrue(t.contains(v));
+        }
+        for (int v : values) {
+            assertTrue(t.remove(v));
+        }
+        assertEquals(0, t.size());
+    }
+
+    @Test
+    public void testAddOverwritesEqualElement() throws Exception {
+        HashTable<String> t = newTable();
+        String first = new String("a");
+        String second = new String("a");
+        assertTrue(t.add(first));
+        assertFalse(t.add(second));
+        assertSame(second, t.get("a"));
+        assertEquals(1, t.size());
+    }
+
+    @Test
+    public void testRandomCollidingAddRemove() throws Exception {
+        Random random = new Random(0);
+        HashTable<Integer> t = newTable();
+        Set<Integer> h = new HashSet<Integer>();
+        for (int i = 0; i < 100000; i++) {
+            // multiples of 7 and 8 collide heavily at every capacity
+            final int r = random.nextInt(200) * (random.nextBoolean() ? 7 : 8) - 500;
+            if (random.nextDouble() < 0.6) {
+                assertEquals(h.add(r), t.add(r));
+            } else {
+                assertEquals(h.remove(r), t.remove(r));
+            }
+            assertEquals(h.size(), t.size());
+        }
+        Set<Integer> l = new HashSet<Integer>();
+        for (Integer i : t) {
+            assertTrue(l.add(i));
+        }
+        assertEquals(h, l);
+    }
+}
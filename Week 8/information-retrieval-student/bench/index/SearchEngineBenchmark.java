@@ -0,0 +1,232 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import comparators.TfIdfComparator;
+import documents.DocumentId;
+
+/**
+ * Benchmarks a SearchEngine over a synthetic Zipf corpus, and prints the results as JSON.
+ *
+ * Measured are: addDocument throughput; the latency of indexLookup and relevanceLookup (top 10
+ * and all), for a common and a rare term, and of sorting the rare term's documents by 
+ * TfIdfComparator; the latency of a top-10
+ * OR query, with the fraction of postings MaxScore skipped; and the heap used per document,
+ * measured and as estimated by SearchEngine.metrics().
+ * Each measurement is repeated for some warmup iterations, whose results are discarded, and
+ * then for some measured iterations. The result cache is off, so every lookup reads the index.
+ * Every result timed is folded into a checksum, printed with the config, so that the JIT cannot 
+ * drop the work as dead code.
+ *
+ * Run it from the project directory, after compiling src, support and bench:
+ *
+ *     java -cp bin index.SearchEngineBenchmark --documents=100000 --out=results.json
+ *
+ * Options (with their defaults) are --documents=100000, --vocabulary=50000, --exponent=1.0,
+ * --length=100, --seed=42, --warmup=3, --iterations=5 and --out (standard output if absent).
+ */
+public final class SearchEngineBenchmark {
+	private final Map<String, String> options = new LinkedHashMap<>();
+	private final List<String> results = new ArrayList<>();
+	private long checksum;
+
+	private SearchEngineBenchmark(String[] args) {
+		options.put("documents", "100000");
+		options.put("vocabulary", "50000");
+		options.put("exponent", "1.0");
+		options.put("length", "100");
+		options.put("seed", "42");
+		options.put("warmup", "3");
+		options.put("iterations", "5");
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				throw new IllegalArgumentException("expected --option=value, not " + arg);
+			}
+			options.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+	}
+
+	private int option(String name) {
+		return Integer.parseInt(options.get(name));
+	}
+
+	public static void main(String[] args) throws IOException {
+		SearchEngineBenchmark benchmark = new SearchEngineBenchmark(args);
+		String json = benchmark.run();
+		String out = benchmark.options.get("out");
+		if (out == null) {
+			System.out.println(json);
+		}
+		else {
+			Files.write(Paths.get(out), json.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	private String run() throws IOException {
+		int documents = option("documents");
+		int warmup = option("warmup");
+		int iterations = option("iterations");
+		ZipfCorpus corpus = new ZipfCorpus(option("vocabulary"), Double.parseDouble(options.get("exponent")),
+				option("length"), Long.parseLong(options.get("seed")));
+		String[] texts = new String[documents];
+		for (int i = 0; i < documents; i++) {
+			texts[i] = corpus.document(i);
+		}
+
+		SearchEngine engine = null;
+		long[] indexing = new long[iterations];
+		for (int i = -warmup; i < iterations; i++) {
+			engine = null;
+			long start = System.nanoTime();
+			engine = build(texts);
+			if (i >= 0) {
+				indexing[i] = System.nanoTime() - start;
+			}
+		}
+		Arrays.sort(indexing);
+		result("addDocument", "documents/s", documents * 1e9 / indexing[iterations / 2], documents * iterations);
+
+		texts = null;
+		engine = null;
+		long before = usedHeap();
+		engine = build(corpus, documents);
+		result("heapPerDocument", "bytes", (double) (usedHeap() - before) / documents, documents);
+		result("estimatedHeapPerDocument", "bytes", (double) engine.metrics().heapBytes() / documents, documents);
+
+		String common = ZipfCorpus.term(0);
+		String rare = rareTerm(corpus, documents);
+		for (String[] term : new String[][] {{"common", common}, {"rare", rare}}) {
+			SearchEngine e = engine;
+			String t = term[1];
+			latency("indexLookup." + term[0], warmup, iterations, () -> e.indexLookup(t));
+			latency("relevanceLookupTop10." + term[0], warmup, iterations, () -> e.relevanceLookup(t, 10));
+			latency("relevanceLookup." + term[0], warmup, iterations, () -> e.relevanceLookup(t));
+		}
+		// a comparator sort of the common term's documents takes seconds, so only the rare one is sorted
+		SearchEngine sorted = engine;
+		latency("tfIdfComparatorSort.rare", warmup, iterations, () -> {
+			List<DocumentId> ids = new ArrayList<>(sorted.indexLookup(rare));
+			ids.sort(new TfIdfComparator(sorted, rare));
+			return ids;
+		});
+
+		SearchEngine e = engine;
+		Query or = Query.parse(common + " OR " + ZipfCorpus.term(10) + " OR " + rare);
+		SearchEngineMetrics metrics = engine.metrics();
+		latency("queryLookupOrTop10", warmup, iterations, () -> e.queryLookup(or, 10));
+		long ranked = engine.metrics().rankedPostings() - metrics.rankedPostings();
+		long skipped = engine.metrics().skippedPostings() - metrics.skippedPostings();
+		result("maxScoreSkippedFraction", "fraction", ranked == 0 ? 0 : (double) skipped / ranked, ranked);
+
+		StringBuilder json = new StringBuilder("{\n  \"config\": {");
+		String separator = "";
+		for (Map.Entry<String, String> option : options.entrySet()) {
+			json.append(separator).append("\"").append(option.getKey()).append("\": \"").append(option.getValue()).append("\"");
+			separator = ", ";
+		}
+		json.append(", \"rareTerm\": \"").append(rare).append("\", \"commonTerm\": \"").append(common).append("\"");
+		json.append(", \"java\": \"").append(System.getProperty("java.version")).append("\"");
+		json.append(", \"processors\": ").append(Runtime.getRuntime().availableProcessors());
+		json.append(", \"checksum\": ").append(checksum).append("},\n");
+		json.append("  \"results\": [\n    ").append(String.join(",\n    ", results)).append("\n  ]\n}");
+		return json.toString();
+	}
+
+	private static SearchEngine build(String[] texts) throws IOException {
+		SearchEngine engine = new SearchEngine();
+		engine.setQueryCacheSize(0);
+		for (int i = 0; i < texts.length; i++) {
+			engine.addDocument(new DocumentId("D" + i), new StringReader(texts[i]));
+		}
+		return engine;
+	}
+
+	/**
+	 * Builds an engine without holding the texts, so that only the index is on the heap.
+	 */
+	private static SearchEngine build(ZipfCorpus corpus, int documents) throws IOException {
+		SearchEngine engine = new SearchEngine();
+		engine.setQueryCacheSize(0);
+		for (int i = 0; i < documents; i++) {
+			engine.addDocument(new DocumentId("D" + i), new StringReader(corpus.document(i)));
+		}
+		return engine;
+	}
+
+	/**
+	 * @return the least frequent term expected to appear in at least 10 documents
+	 */
+	private static String rareTerm(ZipfCorpus corpus, int documents) {
+		int rank = 0;
+		while (rank + 1 < corpus.vocabulary() && corpus.probability(rank + 1) * documents * corpus.length() >= 10) {
+			rank++;
+		}
+		return ZipfCorpus.term(rank);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Runs an operation repeatedly for about 100 milliseconds per iteration, and records the
+	 * mean and percentiles of its latency over the measured iterations. Each result (its size, 
+	 * if it is a collection) goes into the checksum.
+	 */
+	private void latency(String name, int warmup, int iterations, Supplier<?> operation) {
+		long[] samples = new long[1024];
+		int count = 0;
+		for (int i = -warmup; i < iterations; i++) {
+			long end = System.nanoTime() + 100_000_000L;
+			long now;
+			do {
+				long start = System.nanoTime();
+				Object result = operation.get();
+				now = System.nanoTime();
+				checksum = 31 * checksum + (result instanceof Collection ? ((Collection<?>) result).size() : Objects.hashCode(result));
+				if (i >= 0) {
+					if (count == samples.length) {
+						samples = Arrays.copyOf(samples, count * 2);
+					}
+					samples[count++] = now - start;
+				}
+			} while (now < end);
+		}
+		long[] sorted = Arrays.copyOf(samples, count);
+		Arrays.sort(sorted);
+		double total = 0;
+		for (long sample : sorted) {
+			total += sample;
+		}
+		results.add(String.format(Locale.ROOT,
+				"{\"name\": \"%s\", \"unit\": \"ns\", \"mean\": %.1f, \"p50\": %d, \"p99\": %d, \"operations\": %d}",
+				name, total / count, sorted[count / 2], sorted[(int) Math.min(count - 1, (long) Math.ceil(count * 0.99) - 1)], count));
+	}
+
+	private void result(String name, String unit, double value, long operations) {
+		results.add(String.format(Locale.ROOT, "{\"name\": \"%s\", \"unit\": \"%s\", \"value\": %.4f, \"operations\": %d}",
+				name, unit, value, operations));
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic documents whose terms follow a Zipf distribution: the term of rank r
+ * (from 1) appears with probability proportional to 1 / r^exponent, as words do in natural
+ * language. Term r is spelled "t" + (r - 1).
+ *
+ * The same seed always generates the same documents.
+ *
+ * See:
+ * - <https://en.wikipedia.org/wiki/Zipf%27s_law>
+ */
+final class ZipfCorpus {
+	private final double[] cumulative;
+	private final int length;
+	private final long seed;
+
+	/**
+	 * @param vocabulary the number of distinct terms
+	 * @param exponent the Zipf exponent; 1 is typical of English text
+	 * @param length the number of terms in each document
+	 * @param seed
+	 * @throws IllegalArgumentException if vocabulary or length is less than 1, or exponent is negative
+	 */
+	ZipfCorpus(int vocabulary, double exponent, int length, long seed) {
+		if (vocabulary < 1 || length < 1 || exponent < 0) {
+			throw new IllegalArgumentException("vocabulary and length must be positive, and exponent non-negative");
+		}
+		cumulative = new double[vocabulary];
+		double sum = 0;
+		for (int r = 0; r < vocabulary; r++) {
+			sum += 1 / Math.pow(r + 1, exponent);
+			cumulative[r] = sum;
+		}
+		for (int r = 0; r < vocabulary; r++) {
+			cumulative[r] /= sum;
+		}
+		this.length = length;
+		this.seed = seed;
+	}
+
+	/**
+	 * @param rank the rank of a term, from 0
+	 * @return the probability that a given term of a document is that term
+	 */
+	double probability(int rank) {
+		return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+	}
+
+	/**
+	 * @return the number of distinct terms
+	 */
+	int vocabulary() {
+		return cumulative.length;
+	}
+
+	/**
+	 * @return the number of terms in each document
+	 */
+	int length() {
+		return length;
+	}
+
+	/**
+	 * Returns the text of the i-th document.
+	 *
+	 * @param i
+	 * @return the document's terms, separated by spaces
+	 */
+	String document(int i) {
+		Random random = new Random(seed * 31 + i);
+		StringBuilder sb = new StringBuilder(length * 7);
+		for (int j = 0; j < length; j++) {
+			sb.append(term(sample(random))).append(' ');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param rank the rank of a term, from 0
+	 * @return the term
+	 */
+	static String term(int rank) {
+		return "t" + rank;
+	}
+
+	private int sample(Random random) {
+		int i = Arrays.binarySearch(cumulative, random.nextDouble());
+		return Math.min(i >= 0 ? i : -i - 1, cumulative.length - 1);
+	}
+}
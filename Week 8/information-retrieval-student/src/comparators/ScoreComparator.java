@@ -0,0 +1,38 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package comparators;
+
+import documents.DocumentId;
+import index.SearchEngine;
+
+import java.util.Comparator;
+
+/**
+ * Compare two documents in a search engine by their score for a given term, under the engine's 
+ * similarity (see SearchEngine.setSimilarity). With the default similarity, this orders 
+ * documents exactly as TfIdfComparator does.
+ * 
+ * The *larger* score comes first, and ties are broken by the lexicographic ordering of the 
+ * document IDs. Scores are compared with > and <, as TfIdfComparator compares them, so -0.0 and 
+ * 0.0 tie too.
+ */
+public class ScoreComparator implements Comparator<DocumentId> {
+	private final SearchEngine searchEngine;
+	private final String term;
+	
+	public ScoreComparator(SearchEngine searchEngine, String term) {
+		this.searchEngine = searchEngine;
+		this.term = term;
+	}
+	
+	@Override
+	public int compare(DocumentId o1, DocumentId o2) {
+		double s1 = searchEngine.score(o1, term);
+		double s2 = searchEngine.score(o2, term);
+		if (s1 > s2) return -1;
+		else if (s1 < s2) return 1;
+		else return o1.id.compareTo(o2.id);
+	}
+}
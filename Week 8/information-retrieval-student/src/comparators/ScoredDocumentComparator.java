@@ -0,0 +1,26 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package comparators;
+
+import java.util.Comparator;
+
+import index.ScoredDocument;
+
+/**
+ * Compare two scored documents by their precomputed scores.
+ * 
+ * This is the same ordering as TfIdfComparator, but it reads the score stored in each
+ * ScoredDocument instead of recomputing tf-idf on every comparison. The *larger* score
+ * "comes before" a smaller one, and ties are broken by the lexicographic ordering of the
+ * document IDs.
+ */
+public class ScoredDocumentComparator implements Comparator<ScoredDocument> {
+	@Override
+	public int compare(ScoredDocument o1, ScoredDocument o2) {
+		if (o1.score > o2.score) return -1;
+		else if (o1.score < o2.score) return 1;
+		else return o1.documentId.id.compareTo(o2.documentId.id);
+	}
+}
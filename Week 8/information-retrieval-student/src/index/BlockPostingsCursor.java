@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A cursor over postings in the block format written by PostingList: variable-byte encoded
+ * (ordinal gap, term frequency) pairs, with a skip entry every PostingList.SKIP_INTERVAL
+ * postings.
+ *
+ * The encoded bytes and skip entries are read through buffers, so the same cursor serves
+ * postings held in heap arrays and postings memory-mapped from a segment file. So are the 
+ * positions and the document norms and lengths of the segment, if there are any.
+ *
+ * Positions are decoded only when positions() is called; moving past a posting whose 
+ * positions were never asked for costs nothing, and the blocks of such postings are skipped by
+ * their lengths the next time positions are needed.
+ */
+final class BlockPostingsCursor extends PostingsCursor {
+	private final ByteBuffer bytes;
+	private final int size;
+	private final int maxFrequency;
+	private final IntBuffer skipOrdinals;
+	private final IntBuffer skipOffsets;
+	private final int skips;
+	private final ByteBuffer positions;
+	private final IntBuffer skipPositionOffsets;
+	private final FloatBuffer norms;
+	private final IntBuffer lengths;
+
+	private int offset;
+	private int index;
+	private int ordinal = -1;
+	private int frequency;
+
+	// the position block of posting positionIndex starts at positionOffset
+	private int positionIndex;
+	private int positionOffset;
+	private int readOffset;
+
+	/**
+	 * @param maxFrequency the largest frequency of any of the postings
+	 * @param positions the position blocks, or null if there are none
+	 * @param skipPositionOffsets where each block of postings starts in positions
+	 * @param norms the norm of each document, indexed by ordinal; or null if every norm is 1
+	 * @param lengths the length of each document, indexed by ordinal; or null if they are unknown
+	 */
+	BlockPostingsCursor(ByteBuffer bytes, int size, int maxFrequency, IntBuffer skipOrdinals, IntBuffer skipOffsets, int skips, 
+			ByteBuffer positions, IntBuffer skipPositionOffsets, FloatBuffer norms, IntBuffer lengths) {
+		this.bytes = bytes;
+		this.size = size;
+		this.maxFrequency = maxFrequency;
+		this.skipOrdinals = skipOrdinals;
+		this.skipOffsets = skipOffsets;
+		this.skips = skips;
+		this.positions = positions;
+		this.skipPositionOffsets = skipPositionOffsets;
+		this.norms = norms;
+		this.lengths = lengths;
+	}
+
+	@Override
+	int ordinal() {
+		return ordinal;
+	}
+
+	@Override
+	int frequency() {
+		return frequency;
+	}
+
+	@Override
+	int maxFrequency() {
+		return maxFrequency;
+	}
+
+	@Override
+	int[] positions() {
+		if (positions == null || ordinal < 0 || ordinal == NO_MORE_DOCS) {
+			return EMPTY;
+		}
+		while (positionIndex < index - 1) {
+			readOffset = positionOffset;
+			int blockLength = readVInt(positions);
+			positionOffset = readOffset + blockLength;
+			positionIndex++;
+		}
+		readOffset = positionOffset;
+		if (readVInt(positions) == 0) {
+			return EMPTY;
+		}
+		int[] result = new int[frequency];
+		for (int i = 0, last = 0; i < frequency; i++) {
+			last += readVInt(positions);
+			result[i] = last;
+		}
+		return result;
+	}
+
+	@Override
+	float norm() {
+		return norms == null ? 1f : norms.get(ordinal);
+	}
+
+	@Override
+	int length() {
+		return lengths == null ? 0 : lengths.get(ordinal);
+	}
+
+	@Override
+	long cost() {
+		return size;
+	}
+
+	@Override
+	int next() {
+		if (index == size) {
+			ordinal = NO_MORE_DOCS;
+			frequency = 0;
+			return ordinal;
+		}
+		ordinal += readVInt();
+		frequency = readVInt();
+		index++;
+		return ordinal;
+	}
+
+	/**
+	 * Moves to the first posting whose ordinal is at least target, using the skip entries to
+	 * avoid decoding whole blocks that lie before it.
+	 */
+	@Override
+	int advance(int target) {
+		if (ordinal >= target) {
+			return ordinal;
+		}
+		int block = index / PostingList.SKIP_INTERVAL;
+		int lo = block + 1;
+		int hi = skips - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (skipOrdinals.get(mid) < target) {
+				block = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (block * PostingList.SKIP_INTERVAL > index) {
+			offset = skipOffsets.get(block);
+			ordinal = skipOrdinals.get(block);
+			index = block * PostingList.SKIP_INTERVAL;
+			if (positions != null) {
+				positionIndex = index;
+				positionOffset = skipPositionOffsets.get(block);
+			}
+		}
+		while (next() < target) {
+		}
+		return ordinal;
+	}
+
+	private int readVInt() {
+		byte b = bytes.get(offset++);
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7) {
+			b = bytes.get(offset++);
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+
+	/**
+	 * Reads a variable-byte encoded value from buffer at readOffset, and moves readOffset past it.
+	 */
+	private int readVInt(ByteBuffer buffer) {
+		byte b = buffer.get(readOffset++);
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7) {
+			b = buffer.get(readOffset++);
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+
+/**
+ * A forward-only iterator over document ordinals, in increasing order.
+ *
+ * A new iterator is positioned before its first document; next() and advance(int) move it forward
+ * and return the current ordinal, or NO_MORE_DOCS once the iterator is exhausted. Boolean queries
+ * are evaluated by combining these iterators, so that, for example, a conjunction only visits
+ * the documents of its rarest term and skips through the others with advance(int).
+ */
+abstract class DocIterator {
+	static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+	/**
+	 * @return the current ordinal, -1 if the iterator has not been moved yet, or NO_MORE_DOCS
+	 */
+	abstract int ordinal();
+
+	/**
+	 * Moves to the next document.
+	 *
+	 * @return the next ordinal, or NO_MORE_DOCS if there is none
+	 */
+	abstract int next();
+
+	/**
+	 * Moves to the first document whose ordinal is at least target. Does nothing if the iterator
+	 * is already positioned at or beyond target.
+	 *
+	 * @param target the ordinal to advance to
+	 * @return the current ordinal, or NO_MORE_DOCS if there is none
+	 */
+	abstract int advance(int target);
+
+	/**
+	 * @return an upper bound on the number of documents this iterator can visit
+	 */
+	abstract long cost();
+
+	/**
+	 * @return an iterator that matches no documents
+	 */
+	static DocIterator empty() {
+		return new RangeIterator(0);
+	}
+
+	/**
+	 * Returns an iterator over all ordinals in [0, maxOrdinal).
+	 */
+	static DocIterator all(int maxOrdinal) {
+		return new RangeIterator(maxOrdinal);
+	}
+
+	/**
+	 * Returns an iterator over the set bits of a BitSet.
+	 */
+	static DocIterator of(BitSet bits) {
+		return new BitSetIterator(bits);
+	}
+
+	/**
+	 * Returns an iterator over the documents matched by every one of the given iterators.
+	 */
+	static DocIterator conjunction(DocIterator... iterators) {
+		if (iterators.length == 1) {
+			return iterators[0];
+		}
+		return new ConjunctionIterator(iterators);
+	}
+
+	/**
+	 * Returns an iterator over the documents matched by any of the given iterators.
+	 */
+	static DocIterator disjunction(DocIterator... iterators) {
+		if (iterators.length == 1) {
+			return iterators[0];
+		}
+		return new DisjunctionIterator(iterators);
+	}
+
+	/**
+	 * Returns an iterator over the documents matched by include but not by exclude.
+	 */
+	static DocIterator exclusion(DocIterator include, DocIterator exclude) {
+		return new ExclusionIterator(include, exclude);
+	}
+
+	private static final class RangeIterator extends DocIterator {
+		private final int maxOrdinal;
+		private int ordinal = -1;
+
+		RangeIterator(int maxOrdinal) {
+			this.maxOrdinal = maxOrdinal;
+		}
+
+		@Override
+		int ordinal() {
+			return ordinal;
+		}
+
+		@Override
+		int next() {
+			return advance(ordinal + 1);
+		}
+
+		@Override
+		int advance(int target) {
+			if (ordinal >= target) {
+				return ordinal;
+			}
+			ordinal = target < maxOrdinal ? target : NO_MORE_DOCS;
+			return ordinal;
+		}
+
+		@Override
+		long cost() {
+			return maxOrdinal;
+		}
+	}
+
+	private static final class BitSetIterator extends DocIterator {
+		private final BitSet bits;
+		private int ordinal = -1;
+
+		BitSetIterator(BitSet bits) {
+			this.bits = bits;
+		}
+
+		@Override
+		int ordinal() {
+			return ordinal;
+		}
+
+		@Override
+		int next() {
+			return advance(ordinal + 1);
+		}
+
+		@Override
+		int advance(int target) {
+			if (ordinal >= target) {
+				return ordinal;
+			}
+			int next = bits.nextSetBit(target);
+			return ordinal = next < 0 ? NO_MORE_DOCS : next;
+		}
+
+		@Override
+		long cost() {
+			return bits.cardinality();
+		}
+	}
+
+	/**
+	 * Leap-frog intersection: the cheapest iterator leads, and every other iterator is advanced 
+	 * to its candidate. Whenever one of them overshoots, the lead is advanced past it instead.
+	 */
+	private static final class ConjunctionIterator extends DocIterator {
+		private final DocIterator lead;
+		private final DocIterator[] others;
+		private int ordinal = -1;
+
+		ConjunctionIterator(DocIterator[] iterators) {
+			DocIterator[] sorted = iterators.clone();
+			Arrays.sort(sorted, Comparator.comparingLong(DocIterator::cost));
+			this.lead = sorted[0];
+			this.others = Arrays.copyOfRange(sorted, 1, sorted.length);
+		}
+
+		@Override
+		int ordinal() {
+			return ordinal;
+		}
+
+		@Override
+		int next() {
+			return ordinal = align(lead.next());
+		}
+
+		@Override
+		int advance(int target) {
+			if (ordinal >= target) {
+				return ordinal;
+			}
+			return ordinal = align(lead.advance(target));
+		}
+
+		private int align(int target) {
+			outer:
+			while (target != NO_MORE_DOCS) {
+				for (DocIterator other : others) {
+					int next = other.advance(target);
+					if (next > target) {
+						target = lead.advance(next);
+						continue outer;
+					}
+				}
+				return target;
+			}
+			return NO_MORE_DOCS;
+		}
+
+		@Override
+		long cost() {
+			return lead.cost();
+		}
+	}
+
+	private static final class DisjunctionIterator extends DocIterator {
+		private final DocIterator[] iterators;
+		private int ordinal = -1;
+
+		DisjunctionIterator(DocIterator[] iterators) {
+			this.iterators = iterators.clone();
+		}
+
+		@Override
+		int ordinal() {
+			return ordinal;
+		}
+
+		@Override
+		int next() {
+			int min = NO_MORE_DOCS;
+			for (DocIterator iterator : iterators) {
+				int current = iterator.ordinal();
+				if (current == ordinal) {
+					current = iterator.next();
+				}
+				min = Math.min(min, current);
+			}
+			return ordinal = min;
+		}
+
+		@Override
+		int advance(int target) {
+			if (ordinal >= target) {
+				return ordinal;
+			}
+			int min = NO_MORE_DOCS;
+			for (DocIterator iterator : iterators) {
+				min = Math.min(min, iterator.advance(target));
+			}
+			return ordinal = min;
+		}
+
+		@Override
+		long cost() {
+			long cost = 0;
+			for (DocIterator iterator : iterators) {
+				cost += iterator.cost();
+			}
+			return cost;
+		}
+	}
+
+	private static final class ExclusionIterator extends DocIterator {
+		private final DocIterator include;
+		private final DocIterator exclude;
+
+		ExclusionIterator(DocIterator include, DocIterator exclude) {
+			this.include = include;
+			this.exclude = exclude;
+		}
+
+		@Override
+		int ordinal() {
+			return include.ordinal();
+		}
+
+		@Override
+		int next() {
+			return skipExcluded(include.next());
+		}
+
+		@Override
+		int advance(int target) {
+			if (include.ordinal() >= target) {
+				return include.ordinal();
+			}
+			return skipExcluded(include.advance(target));
+		}
+
+		private int skipExcluded(int ordinal) {
+			while (ordinal != NO_MORE_DOCS && exclude.advance(ordinal) == ordinal) {
+				ordinal = include.next();
+			}
+			return ordinal;
+		}
+
+		@Override
+		long cost() {
+			return include.cost();
+		}
+	}
+}
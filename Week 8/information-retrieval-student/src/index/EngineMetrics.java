@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and latency histograms a SearchEngine records into as it adds documents and
+ * answers lookups.
+ *
+ * Recording is a few LongAdder and histogram increments, without a lock, so it is always on;
+ * summing them into a SearchEngineMetrics is the only part that costs anything.
+ */
+final class EngineMetrics {
+	final LongAdder documentsAdded = new LongAdder();
+	final LongAdder tokensIndexed = new LongAdder();
+	final LongAdder indexingNanos = new LongAdder();
+	final LatencyHistogram addDocument = new LatencyHistogram();
+	final LatencyHistogram addDocuments = new LatencyHistogram();
+	final LongAdder merges = new LongAdder();
+	final LongAdder mergeNanos = new LongAdder();
+	final LatencyHistogram relevanceLookup = new LatencyHistogram();
+	final LatencyHistogram queryLookup = new LatencyHistogram();
+	final LongAdder rankedPostings = new LongAdder();
+	final LongAdder skippedPostings = new LongAdder();
+
+	/**
+	 * Records documents added (or replaced) by one call.
+	 *
+	 * @param documents the number of documents
+	 * @param tokens the sum of their lengths
+	 * @param nanos how long the call took
+	 */
+	void indexed(int documents, long tokens, long nanos) {
+		documentsAdded.add(documents);
+		tokensIndexed.add(tokens);
+		indexingNanos.add(nanos);
+	}
+
+	/**
+	 * @param nanos how long a merge took, not counting the time it waited for the lock to commit
+	 */
+	void merged(long nanos) {
+		merges.increment();
+		mergeNanos.add(nanos);
+	}
+
+	/**
+	 * @param size the size of the index, as of some snapshot
+	 * @param cache the statistics of the result cache
+	 * @return the metrics, as of now
+	 */
+	SearchEngineMetrics snapshot(IndexSize size, QueryCacheStats cache) {
+		return new SearchEngineMetrics(size, documentsAdded.sum(), tokensIndexed.sum(), indexingNanos.sum(),
+				addDocument.counts(), addDocuments.counts(), merges.sum(), mergeNanos.sum(), relevanceLookup.counts(), queryLookup.counts(),
+				rankedPostings.sum(), skippedPostings.sum(), cache);
+	}
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import documents.DocumentId;
+
+/**
+ * A segment held in the heap, to which documents can still be added.
+ *
+ * The SearchEngine adds every new document to its in-memory segment, and (if it has a
+ * directory) flushes it to disk as a MappedSegment. Without a directory, full in-memory 
+ * segments are sealed as they are, and merged into new in-memory segments.
+ *
+ * Only one thread at a time may add to a segment, or call its Segment methods. Other threads
+ * read it through the immutable views that publish() returns.
+ */
+final class InMemorySegment implements Segment, SegmentMerger.Sink {
+	// every ordinal each document has had, in increasing order; replaced, never changed
+	private final Map<DocumentId, int[]> ordinals = new ConcurrentHashMap<>();
+	private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+	private final List<PostingList> changed = new ArrayList<>();
+	private DocumentId[] documents = new DocumentId[16];
+	private float[] norms = new float[16];
+	private int[] lengths = new int[16];
+	private int count;
+	private long totalLength;
+
+	/**
+	 * Returns the norm of a document: 1 / sqrt(the sum of the squares of its term frequencies),
+	 * that is, one over the Euclidean length of its term frequency vector. Multiplying a term 
+	 * frequency by it gives the cosine-normalized term frequency. An empty document's norm is 1.
+	 *
+	 * @param counts the number of occurrences of each term in the document
+	 * @return the document's norm
+	 */
+	static float norm(Map<String, int[]> counts) {
+		long sum = 0;
+		for (int[] count : counts.values()) {
+			sum += (long) count[0] * count[0];
+		}
+		return sum == 0 ? 1f : (float) (1 / Math.sqrt(sum));
+	}
+
+	/**
+	 * @param counts the number of occurrences of each term in a document
+	 * @return the document's length: its number of terms, counting repeats
+	 */
+	static int length(Map<String, int[]> counts) {
+		int length = 0;
+		for (int[] count : counts.values()) {
+			length += count[0];
+		}
+		return length;
+	}
+
+	/**
+	 * Adds a document to this segment.
+	 *
+	 * @param documentId the document, which must not already be in this segment
+	 * @param counts for each term in the document, the number of occurrences, followed by their
+	 *        positions if positions are to be indexed
+	 */
+	void add(DocumentId documentId, Map<String, int[]> counts) {
+		int ordinal = register(documentId, norm(counts), length(counts));
+		for (Map.Entry<String, int[]> e : counts.entrySet()) {
+			PostingList list = postings.get(e.getKey());
+			if (list == null) {
+				list = new PostingList();
+				postings.put(e.getKey(), list);
+			}
+			int[] count = e.getValue();
+			list.add(ordinal, count[0], count.length > 1 ? count : null, 1);
+			changed(list);
+		}
+	}
+
+	private void changed(PostingList list) {
+		if (list.markChanged()) {
+			changed.add(list);
+		}
+	}
+
+	/**
+	 * Assigns the next ordinal to a document, without adding any postings for it.
+	 *
+	 * @param documentId the document, which must not already be in this segment
+	 * @param norm the document's norm
+	 * @param length the document's length
+	 * @return the document's ordinal
+	 */
+	int register(DocumentId documentId, float norm, int length) {
+		int ordinal = count;
+		if (ordinal == norms.length) {
+			// copies, so that published views keep seeing the arrays they captured
+			norms = Arrays.copyOf(norms, ordinal * 2);
+			lengths = Arrays.copyOf(lengths, ordinal * 2);
+			documents = Arrays.copyOf(documents, ordinal * 2);
+		}
+		norms[ordinal] = norm;
+		lengths[ordinal] = length;
+		totalLength += length;
+		documents[ordinal] = documentId;
+		int[] previous = ordinals.get(documentId);
+		if (previous == null) {
+			ordinals.put(documentId, new int[] { ordinal });
+		}
+		else {
+			int[] all = Arrays.copyOf(previous, previous.length + 1);
+			all[previous.length] = ordinal;
+			ordinals.put(documentId, all);
+		}
+		count++;
+		return ordinal;
+	}
+
+	/**
+	 * @param term
+	 * @return the term's posting list, or null if there is none
+	 */
+	PostingList postingList(String term) {
+		return postings.get(term);
+	}
+
+	/**
+	 * Records that postings were appended to the given lists, and adds those for terms that 
+	 * have none yet.
+	 *
+	 * @param lists
+	 */
+	void putPostingLists(Map<String, PostingList> lists) {
+		for (Map.Entry<String, PostingList> e : lists.entrySet()) {
+			addTerm(e.getKey(), e.getValue());
+		}
+	}
+
+	@Override
+	public void addDocument(DocumentId documentId, float norm, int length) {
+		register(documentId, norm, length);
+	}
+
+	@Override
+	public void addTerm(String term, PostingList list) {
+		postings.put(term, list);
+		changed(list);
+	}
+
+	/**
+	 * Publishes everything added to this segment so far, and returns an immutable view of it. 
+	 * Any thread may read the view, while this segment's thread goes on adding documents.
+	 *
+	 * @return a view of the documents added so far
+	 */
+	Segment publish() {
+		for (PostingList list : changed) {
+			list.publish();
+		}
+		changed.clear();
+		return new View(documents, norms, lengths, count, totalLength, ordinals, postings);
+	}
+
+	@Override
+	public int documentCount() {
+		return count;
+	}
+
+	@Override
+	public DocumentId documentId(int ordinal) {
+		if (ordinal < 0 || ordinal >= count) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		return documents[ordinal];
+	}
+
+	@Override
+	public float norm(int ordinal) {
+		if (ordinal < 0 || ordinal >= count) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		return norms[ordinal];
+	}
+
+	@Override
+	public int length(int ordinal) {
+		if (ordinal < 0 || ordinal >= count) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		return lengths[ordinal];
+	}
+
+	@Override
+	public long totalLength() {
+		return totalLength;
+	}
+
+	@Override
+	public int ordinal(DocumentId documentId) {
+		int[] all = ordinals.get(documentId);
+		return all == null ? -1 : all[all.length - 1];
+	}
+
+	@Override
+	public int documentFrequency(String term) {
+		PostingList list = postings.get(term);
+		return list == null ? 0 : list.size();
+	}
+
+	@Override
+	public PostingsCursor cursor(String term) {
+		PostingList list = postings.get(term);
+		return list == null ? null : list.cursor(FloatBuffer.wrap(norms, 0, count).slice(), IntBuffer.wrap(lengths, 0, count).slice());
+	}
+
+	@Override
+	public Iterator<String> terms() {
+		return postings.keySet().iterator();
+	}
+
+	/**
+	 * Measures the postings as of the last publish().
+	 */
+	@Override
+	public void measure(IndexSize size) {
+		new View(documents, norms, lengths, count, totalLength, ordinals, postings).measure(size);
+	}
+
+	/**
+	 * The first count documents of a segment, and their postings. Documents and postings added 
+	 * to the segment after the view was published are invisible to it.
+	 */
+	private static final class View implements Segment {
+		private final DocumentId[] documents;
+		private final float[] norms;
+		private final int[] lengths;
+		private final int count;
+		private final long totalLength;
+		private final Map<DocumentId, int[]> ordinals;
+		private final Map<String, PostingList> postings;
+
+		View(DocumentId[] documents, float[] norms, int[] lengths, int count, long totalLength,
+				Map<DocumentId, int[]> ordinals, Map<String, PostingList> postings) {
+			this.documents = documents;
+			this.norms = norms;
+			this.lengths = lengths;
+			this.count = count;
+			this.totalLength = totalLength;
+			this.ordinals = ordinals;
+			this.postings = postings;
+		}
+
+		private PostingList.View view(String term) {
+			PostingList list = postings.get(term);
+			return list == null ? null : list.published();
+		}
+
+		@Override
+		public int documentCount() {
+			return count;
+		}
+
+		@Override
+		public DocumentId documentId(int ordinal) {
+			if (ordinal < 0 || ordinal >= count) {
+				throw new IndexOutOfBoundsException(ordinal);
+			}
+			return documents[ordinal];
+		}
+
+		@Override
+		public float norm(int ordinal) {
+			if (ordinal < 0 || ordinal >= count) {
+				throw new IndexOutOfBoundsException(ordinal);
+			}
+			return norms[ordinal];
+		}
+
+		@Override
+		public int length(int ordinal) {
+			if (ordinal < 0 || ordinal >= count) {
+				throw new IndexOutOfBoundsException(ordinal);
+			}
+			return lengths[ordinal];
+		}
+
+		@Override
+		public long totalLength() {
+			return totalLength;
+		}
+
+		@Override
+		public int ordinal(DocumentId documentId) {
+			int[] all = ordinals.get(documentId);
+			if (all != null) {
+				for (int i = all.length - 1; i >= 0; i--) {
+					if (all[i] < count) {
+						return all[i];
+					}
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public int documentFrequency(String term) {
+			PostingList.View view = view(term);
+			return view == null ? 0 : view.countBelow(count);
+		}
+
+		@Override
+		public PostingsCursor cursor(String term) {
+			PostingList.View view = view(term);
+			int size = view == null ? 0 : view.countBelow(count);
+			return size == 0 ? null : view.cursor(size, FloatBuffer.wrap(norms, 0, count).slice(),
+					IntBuffer.wrap(lengths, 0, count).slice());
+		}
+
+		@Override
+		public Iterator<String> terms() {
+			List<String> terms = new ArrayList<>();
+			for (String term : postings.keySet()) {
+				if (documentFrequency(term) > 0) {
+					terms.add(term);
+				}
+			}
+			return terms.iterator();
+		}
+
+		/**
+		 * Heap used by documents and postings added after this view was published is counted 
+		 * too, since they share its structures.
+		 */
+		@Override
+		public void measure(IndexSize size) {
+			for (Map.Entry<String, PostingList> e : postings.entrySet()) {
+				PostingList.View view = e.getValue().published();
+				if (view != null) {
+					int documentFrequency = view.countBelow(count);
+					if (documentFrequency > 0) {
+						size.term(documentFrequency);
+					}
+					size.postingsHeap += view.heapBytes();
+				}
+				size.dictionaryHeap += IndexSize.MAP_ENTRY + IndexSize.string(e.getKey());
+			}
+			size.documentsHeap += IndexSize.array(documents.length, IndexSize.REFERENCE)
+					+ IndexSize.array(norms.length, 4) + IndexSize.array(lengths.length, 4);
+			for (Map.Entry<DocumentId, int[]> e : ordinals.entrySet()) {
+				size.documentsHeap += IndexSize.MAP_ENTRY + IndexSize.array(e.getValue().length, 4)
+						+ IndexSize.object(IndexSize.REFERENCE) + IndexSize.string(e.getKey().id);
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+/**
+ * A tally of the size of an index: its segments, documents, dictionary entries (one per term
+ * per segment) and postings, and estimates of the memory its structures use, in bytes.
+ *
+ * Heap sizes are estimates for monitoring, not exact: they assume a 64-bit JVM with compressed
+ * references (12-byte object headers, 4-byte references, objects padded to 8 bytes) and
+ * Latin-1 strings.
+ */
+final class IndexSize {
+	static final int REFERENCE = 4;
+	/** a ConcurrentHashMap node (hash, key, value, next), plus its slot in the table */
+	static final long MAP_ENTRY = object(16) + REFERENCE;
+
+	int segments;
+	long documents;
+	long deletedDocuments;
+	long terms;
+	long postings;
+	/** the number of dictionary entries by document frequency, bucketed as by LatencyHistogram */
+	final long[] postingsPerTerm = new long[LatencyHistogram.BUCKETS];
+	long postingsHeap;
+	long dictionaryHeap;
+	long documentsHeap;
+	long mapped;
+
+	/**
+	 * Counts one dictionary entry.
+	 *
+	 * @param documentFrequency the number of postings of the term
+	 */
+	void term(int documentFrequency) {
+		terms++;
+		postings += documentFrequency;
+		postingsPerTerm[LatencyHistogram.bucket(documentFrequency)]++;
+	}
+
+	/**
+	 * @param fields the size of an object's fields, in bytes
+	 * @return the size of the object
+	 */
+	static long object(long fields) {
+		return (12 + fields + 7) & ~7L;
+	}
+
+	/**
+	 * @param length
+	 * @param elementBytes
+	 * @return the size of an array
+	 */
+	static long array(long length, int elementBytes) {
+		return (16 + length * elementBytes + 7) & ~7L;
+	}
+
+	/**
+	 * @param s
+	 * @return the size of a string and its bytes
+	 */
+	static long string(String s) {
+		return object(12) + array(s.length(), 1);
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import documents.DocumentId;
+
+/**
+ * A consistent view of the segments of a SearchEngine, against which lookups and queries run.
+ *
+ * Documents are numbered by engine-wide ordinals: the ordinal of a document is its segment's
+ * base (the number of documents in the segments before it) plus its ordinal within the segment.
+ * Deleted documents keep their ordinals until a merge rewrites their segment, but are skipped
+ * by every cursor and lookup here. Like N and M in inverseDocumentFrequency, documentFrequency
+ * and maxOrdinal still count them until then.
+ *
+ * The SearchEngine never changes a deletion set once a snapshot holds it; it copies the set
+ * the next time it needs to record a deletion.
+ *
+ * Since N and every document frequency are fixed for the life of a snapshot, each term's 
+ * document frequency and idf are computed at most once per snapshot and then cached; a new 
+ * snapshot (after any change to the index) starts with an empty cache.
+ */
+final class IndexSnapshot {
+	private final Segment[] segments;
+	private final BitSet[] deleted;
+	private final int[] bases;
+	private final int maxOrdinal;
+	private final long totalLength;
+	private final Map<String, TermStatistics> statistics = new ConcurrentHashMap<>();
+
+	/**
+	 * @param segments the segments, in ordinal order
+	 * @param deleted the deleted ordinals of each segment, or null where there are none
+	 */
+	IndexSnapshot(Segment[] segments, BitSet[] deleted) {
+		this.segments = segments;
+		this.deleted = deleted;
+		this.bases = new int[segments.length];
+		int base = 0;
+		long length = 0;
+		for (int i = 0; i < segments.length; i++) {
+			bases[i] = base;
+			base += segments[i].documentCount();
+			length += segments[i].totalLength();
+		}
+		this.maxOrdinal = base;
+		this.totalLength = length;
+	}
+
+	/**
+	 * @return the average length of the documents in this snapshot, counting deleted documents
+	 *         (like maxOrdinal()); 0 if there are none
+	 */
+	double averageLength() {
+		return maxOrdinal == 0 ? 0 : (double) totalLength / maxOrdinal;
+	}
+
+	/**
+	 * @return the number of ordinals in this snapshot, including those of deleted documents
+	 */
+	int maxOrdinal() {
+		return maxOrdinal;
+	}
+
+	/**
+	 * Returns a cursor over the postings of a (lowercased) term, skipping deleted documents.
+	 */
+	PostingsCursor cursor(String term) {
+		List<PostingsCursor> cursors = new ArrayList<>();
+		List<Integer> cursorBases = new ArrayList<>();
+		for (int i = 0; i < segments.length; i++) {
+			PostingsCursor cursor = segments[i].cursor(term);
+			if (cursor != null) {
+				if (deleted[i] != null) {
+					cursor = new LiveCursor(cursor, deleted[i]);
+				}
+				cursors.add(cursor);
+				cursorBases.add(bases[i]);
+			}
+		}
+		if (cursors.isEmpty()) {
+			return PostingsCursor.empty();
+		}
+		if (cursors.size() == 1 && cursorBases.get(0) == 0) {
+			return cursors.get(0);
+		}
+		int[] b = new int[cursorBases.size()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = cursorBases.get(i);
+		}
+		return new MultiPostingsCursor(cursors.toArray(new PostingsCursor[0]), b);
+	}
+
+	/**
+	 * Returns the number of documents containing a (lowercased) term, including deleted 
+	 * documents that have not yet been merged away.
+	 */
+	int documentFrequency(String term) {
+		return statistics(term).documentFrequency;
+	}
+
+	/**
+	 * Returns the inverse document frequency of a (lowercased) term, log((1 + N) / (1 + M)),
+	 * where N is maxOrdinal() and M is documentFrequency(term).
+	 */
+	double idf(String term) {
+		return statistics(term).idf;
+	}
+
+	private TermStatistics statistics(String term) {
+		TermStatistics cached = statistics.get(term);
+		if (cached == null) {
+			int df = 0;
+			for (Segment segment : segments) {
+				df += segment.documentFrequency(term);
+			}
+			cached = new TermStatistics(df, Math.log((1.0 + maxOrdinal) / (1.0 + df)));
+			statistics.put(term, cached);
+		}
+		return cached;
+	}
+
+	/**
+	 * Tallies the segments, documents, terms, postings and memory of this snapshot. Takes time
+	 * linear in the number of terms and documents.
+	 *
+	 * @return the tally
+	 */
+	IndexSize measure() {
+		IndexSize size = new IndexSize();
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].documentCount() > 0) {
+				size.segments++;
+				size.documents += segments[i].documentCount();
+				if (deleted[i] != null) {
+					size.deletedDocuments += deleted[i].cardinality();
+				}
+				segments[i].measure(size);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return an iterator over the ordinals of every document that is not deleted
+	 */
+	DocIterator allDocuments() {
+		BitSet all = new BitSet();
+		for (int i = 0; i < segments.length; i++) {
+			if (deleted[i] != null) {
+				for (int d = deleted[i].nextSetBit(0); d >= 0; d = deleted[i].nextSetBit(d + 1)) {
+					all.set(bases[i] + d);
+				}
+			}
+		}
+		DocIterator range = DocIterator.all(maxOrdinal);
+		return all.isEmpty() ? range : DocIterator.exclusion(range, DocIterator.of(all));
+	}
+
+	/**
+	 * @return the ordinal of a document, or -1 if it is not in this snapshot (or is deleted)
+	 */
+	int ordinal(DocumentId documentId) {
+		for (int i = segments.length - 1; i >= 0; i--) {
+			int ordinal = segments[i].ordinal(documentId);
+			if (ordinal >= 0 && (deleted[i] == null || !deleted[i].get(ordinal))) {
+				return bases[i] + ordinal;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the id of the document with the given ordinal
+	 */
+	DocumentId documentId(int ordinal) {
+		int i = segment(ordinal);
+		return segments[i].documentId(ordinal - bases[i]);
+	}
+
+	/**
+	 * @return the norm of the document with the given ordinal
+	 */
+	float norm(int ordinal) {
+		int i = segment(ordinal);
+		return segments[i].norm(ordinal - bases[i]);
+	}
+
+	/**
+	 * @return the length of the document with the given ordinal
+	 */
+	int length(int ordinal) {
+		int i = segment(ordinal);
+		return segments[i].length(ordinal - bases[i]);
+	}
+
+	/**
+	 * @return the index of the segment holding the given ordinal
+	 */
+	private int segment(int ordinal) {
+		int i = Arrays.binarySearch(bases, ordinal);
+		if (i < 0) {
+			i = -i - 2;
+		}
+		// skip past empty segments that share a base with the one holding the ordinal
+		while (i + 1 < segments.length && bases[i + 1] <= ordinal) {
+			i++;
+		}
+		return i;
+	}
+
+	private static final class TermStatistics {
+		final int documentFrequency;
+		final double idf;
+
+		TermStatistics(int documentFrequency, double idf) {
+			this.documentFrequency = documentFrequency;
+			this.idf = idf;
+		}
+	}
+
+	/**
+	 * A cursor that skips the postings of deleted documents.
+	 */
+	private static final class LiveCursor extends PostingsCursor {
+		private final PostingsCursor in;
+		private final BitSet deleted;
+
+		LiveCursor(PostingsCursor in, BitSet deleted) {
+			this.in = in;
+			this.deleted = deleted;
+		}
+
+		@Override
+		int ordinal() {
+			return in.ordinal();
+		}
+
+		@Override
+		int frequency() {
+			return in.frequency();
+		}
+
+		@Override
+		int maxFrequency() {
+			return in.maxFrequency();
+		}
+
+		@Override
+		int[] positions() {
+			return in.positions();
+		}
+
+		@Override
+		float norm() {
+			return in.norm();
+		}
+
+		@Override
+		int length() {
+			return in.length();
+		}
+
+		@Override
+		int next() {
+			return skipDeleted(in.next());
+		}
+
+		@Override
+		int advance(int target) {
+			return skipDeleted(in.advance(target));
+		}
+
+		private int skipDeleted(int ordinal) {
+			while (ordinal != NO_MORE_DOCS && deleted.get(ordinal)) {
+				ordinal = in.next();
+			}
+			return ordinal;
+		}
+
+		@Override
+		long cost() {
+			return in.cost();
+		}
+	}
+}
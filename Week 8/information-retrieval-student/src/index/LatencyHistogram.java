@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies, in nanoseconds, that any number of threads can record into.
+ *
+ * Each power of two is split into 8 buckets, so a percentile is accurate to within 12.5%,
+ * and recording a latency is one increment, without a lock.
+ */
+final class LatencyHistogram {
+	private static final int SUB_BUCKETS = 8;
+	static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	/**
+	 * @param nanos a latency; negative latencies count as 0
+	 */
+	void record(long nanos) {
+		counts.incrementAndGet(bucket(Math.max(nanos, 0)));
+	}
+
+	/**
+	 * @return the counts of each bucket, at one moment
+	 */
+	long[] counts() {
+		long[] result = new long[counts.length()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * @param nanos a non-negative value
+	 * @return the index of the value's bucket
+	 */
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) nanos;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int mantissa = (int) (nanos >>> (exponent - 3)) & (SUB_BUCKETS - 1);
+		return (exponent - 2) * SUB_BUCKETS + mantissa;
+	}
+
+	/**
+	 * @param bucket
+	 * @return the largest latency that falls in the bucket
+	 */
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + 2;
+		long mantissa = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + mantissa + 1) << (exponent - 3)) - 1;
+	}
+
+	/**
+	 * @param counts the counts of each bucket, as returned by counts()
+	 * @return the number of recorded latencies
+	 */
+	static long total(long[] counts) {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns a percentile of recorded latencies.
+	 *
+	 * @param counts the counts of each bucket, as returned by counts()
+	 * @param percentile between 0 and 100
+	 * @return the upper bound of the bucket holding the percentile, or 0 if counts are all 0
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	static long percentile(long[] counts, double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("percentile must be between 0 and 100");
+		}
+		long total = total(counts);
+		if (total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return upperBound(i);
+			}
+		}
+		return upperBound(counts.length - 1);
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import documents.DocumentId;
+
+/**
+ * An immutable segment read directly from the memory-mapped files written by SegmentWriter.
+ *
+ * Nothing is loaded into the heap when a segment is opened, and every lookup reads the mapped
+ * files: terms and document ids are found by binary search over the fixed-size entries of the
+ * term dictionary and document table, and posting lists are read in place by a
+ * BlockPostingsCursor. Opening is therefore near-instant, and the heap used does not depend on
+ * the size of the segment.
+ */
+final class MappedSegment implements Segment {
+	private final String name;
+	private final ByteBuffer terms;
+	private final ByteBuffer postings;
+	private final ByteBuffer documents;
+	private final FloatBuffer norms;
+	private final IntBuffer lengths;
+	private final long totalLength;
+	private final long mappedBytes;
+	private final int termCount;
+	private final int documentCount;
+
+	/**
+	 * Opens a segment written by SegmentWriter.
+	 *
+	 * @param directory
+	 * @param name the segment's name
+	 * @throws IOException iff the files cannot be read, or are not segment files
+	 */
+	MappedSegment(Path directory, String name) throws IOException {
+		this.name = name;
+		this.terms = map(directory.resolve(name + ".tdict"), SegmentWriter.TERMS_MAGIC);
+		this.postings = map(directory.resolve(name + ".post"), SegmentWriter.POSTINGS_MAGIC);
+		this.documents = map(directory.resolve(name + ".docs"), SegmentWriter.DOCUMENTS_MAGIC);
+		this.termCount = terms.getInt(4);
+		this.documentCount = documents.getInt(4);
+		ByteBuffer file = map(directory.resolve(name + ".norms"), SegmentWriter.NORMS_MAGIC);
+		this.norms = file.slice(8, 4 * documentCount).asFloatBuffer();
+		this.lengths = file.slice(8 + 4 * documentCount, 4 * documentCount).asIntBuffer();
+		this.totalLength = file.getLong(8 + 8 * documentCount);
+		this.mappedBytes = (long) terms.capacity() + postings.capacity() + documents.capacity() + file.capacity();
+	}
+
+	private static ByteBuffer map(Path path, int magic) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < 8 || buffer.getInt(0) != magic) {
+			throw new IOException(path + " is not a segment file");
+		}
+		return buffer;
+	}
+
+	/**
+	 * @return the name of this segment
+	 */
+	String name() {
+		return name;
+	}
+
+	@Override
+	public int documentCount() {
+		return documentCount;
+	}
+
+	@Override
+	public DocumentId documentId(int ordinal) {
+		if (ordinal < 0 || ordinal >= documentCount) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		int entry = 8 + 8 * ordinal;
+		byte[] id = new byte[documents.getInt(entry + 4)];
+		documents.get(documents.getInt(entry), id);
+		return new DocumentId(new String(id, StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public float norm(int ordinal) {
+		if (ordinal < 0 || ordinal >= documentCount) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		return norms.get(ordinal);
+	}
+
+	@Override
+	public int length(int ordinal) {
+		if (ordinal < 0 || ordinal >= documentCount) {
+			throw new IndexOutOfBoundsException(ordinal);
+		}
+		return lengths.get(ordinal);
+	}
+
+	@Override
+	public long totalLength() {
+		return totalLength;
+	}
+
+	@Override
+	public int ordinal(DocumentId documentId) {
+		byte[] key = documentId.id.getBytes(StandardCharsets.UTF_8);
+		int byId = 8 + 8 * documentCount;
+		int lo = 0;
+		int hi = documentCount - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int ordinal = documents.getInt(byId + 4 * mid);
+			int entry = 8 + 8 * ordinal;
+			int c = compare(documents, documents.getInt(entry), documents.getInt(entry + 4), key);
+			if (c < 0) {
+				lo = mid + 1;
+			}
+			else if (c > 0) {
+				hi = mid - 1;
+			}
+			else {
+				return ordinal;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int documentFrequency(String term) {
+		int index = find(term);
+		return index < 0 ? 0 : postings.getInt(postingsOffset(index));
+	}
+
+	@Override
+	public PostingsCursor cursor(String term) {
+		int index = find(term);
+		if (index < 0) {
+			return null;
+		}
+		int offset = postingsOffset(index);
+		int size = postings.getInt(offset);
+		int maxFrequency = postings.getInt(offset + 4);
+		int skips = postings.getInt(offset + 8);
+		int skipOrdinals = offset + 12;
+		int skipOffsets = skipOrdinals + 4 * skips;
+		int length = postings.getInt(skipOffsets + 4 * skips);
+		int bytes = skipOffsets + 4 * skips + 4;
+		int positionsLength = postings.getInt(bytes + length);
+		int skipPositionOffsets = bytes + length + 4;
+		int positions = skipPositionOffsets + 4 * skips;
+		return new BlockPostingsCursor(postings.slice(bytes, length), size, maxFrequency,
+				postings.slice(skipOrdinals, 4 * skips).asIntBuffer(),
+				postings.slice(skipOffsets, 4 * skips).asIntBuffer(), skips,
+				positionsLength == 0 ? null : postings.slice(positions, positionsLength),
+				positionsLength == 0 ? null : postings.slice(skipPositionOffsets, 4 * skips).asIntBuffer(), norms, lengths);
+	}
+
+	/**
+	 * Returns every term in this segment, in increasing order of their UTF-8 bytes.
+	 */
+	@Override
+	public Iterator<String> terms() {
+		return new Iterator<String>() {
+			private int index;
+
+			@Override
+			public boolean hasNext() {
+				return index < termCount;
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return term(index++);
+			}
+		};
+	}
+
+	/**
+	 * Everything but a few objects is in the mapped files, which the operating system pages in 
+	 * and out as they are read, outside the heap.
+	 */
+	@Override
+	public void measure(IndexSize size) {
+		for (int i = 0; i < termCount; i++) {
+			size.term(postings.getInt(postingsOffset(i)));
+		}
+		size.mapped += mappedBytes;
+	}
+
+	private String term(int index) {
+		int entry = 8 + 12 * index;
+		byte[] term = new byte[terms.getInt(entry + 4)];
+		terms.get(terms.getInt(entry), term);
+		return new String(term, StandardCharsets.UTF_8);
+	}
+
+	private int postingsOffset(int index) {
+		return terms.getInt(8 + 12 * index + 8);
+	}
+
+	/**
+	 * @return the index of the term in the dictionary, or -1 if it is not there
+	 */
+	private int find(String term) {
+		byte[] key = term.getBytes(StandardCharsets.UTF_8);
+		int lo = 0;
+		int hi = termCount - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int entry = 8 + 12 * mid;
+			int c = compare(terms, terms.getInt(entry), terms.getInt(entry + 4), key);
+			if (c < 0) {
+				lo = mid + 1;
+			}
+			else if (c > 0) {
+				hi = mid - 1;
+			}
+			else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares length bytes of buffer, starting at offset, to key, as unsigned bytes.
+	 */
+	private static int compare(ByteBuffer buffer, int offset, int length, byte[] key) {
+		int n = Math.min(length, key.length);
+		for (int i = 0; i < n; i++) {
+			int c = Integer.compare(buffer.get(offset + i) & 0xFF, key[i] & 0xFF);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return Integer.compare(length, key.length);
+	}
+}
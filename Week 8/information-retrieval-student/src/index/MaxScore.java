@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Top-k retrieval for a disjunction of terms with MaxScore dynamic pruning.
+ *
+ * Each term's contribution to a score can be no larger than its scorer's maxScore for the 
+ * term's maximum frequency (for tf-idf, that frequency times the idf): the term's upper bound. Once the collector holds k
+ * documents, any document whose possible score is below the collector's threshold can be 
+ * skipped. Terms are sorted by upper bound, and the longest prefix of them whose bounds sum to 
+ * less than the threshold is "non-essential": a document containing only those terms cannot 
+ * make the top k, so candidates come only from the essential terms, and the non-essential 
+ * cursors are advanced (with their skip entries) just to the candidates that might qualify.
+ *
+ * A candidate that is not pruned is scored exactly as in an exhaustive scan, summing the terms 
+ * in their original order, so the results are identical. Bounds are compared with a small 
+ * margin so that floating-point rounding can never prune a document that would have qualified.
+ *
+ * See:
+ * - Turtle and Flood, "Query evaluation: strategies and optimizations", 1995
+ * - <https://www.elastic.co/blog/faster-retrieval-of-top-hits-in-elasticsearch-with-block-max-wand>
+ */
+final class MaxScore {
+	private MaxScore() {
+	}
+
+	/**
+	 * Collects the documents containing any of the terms, scored by the sum of their scorers.
+	 *
+	 * @param cursors a new cursor for each term
+	 * @param scorers the scorer of each term
+	 * @param collector
+	 * @return the number of postings that were read, out of the total cost of the cursors
+	 */
+	static long collect(PostingsCursor[] cursors, Similarity.Scorer[] scorers, TopKCollector collector) {
+		int n = cursors.length;
+		double[] bounds = new double[n];
+		Integer[] byBound = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			bounds[i] = scorers[i].maxScore(cursors[i].maxFrequency());
+			byBound[i] = i;
+			cursors[i].next();
+		}
+		Arrays.sort(byBound, Comparator.comparingDouble(i -> bounds[i]));
+		// cumulative[j] is the sum of the j smallest bounds
+		double[] cumulative = new double[n + 1];
+		for (int j = 0; j < n; j++) {
+			cumulative[j + 1] = cumulative[j] + bounds[byBound[j]];
+		}
+
+		long read = 0;
+		int essential = 0;
+		while (true) {
+			double threshold = collector.threshold();
+			while (essential < n && cannotReach(cumulative[essential + 1], threshold)) {
+				essential++;
+			}
+			if (essential == n) {
+				break;
+			}
+			int candidate = DocIterator.NO_MORE_DOCS;
+			for (int j = essential; j < n; j++) {
+				candidate = Math.min(candidate, cursors[byBound[j]].ordinal());
+			}
+			if (candidate == DocIterator.NO_MORE_DOCS) {
+				break;
+			}
+
+			double bound = cumulative[essential];
+			for (int j = essential; j < n; j++) {
+				PostingsCursor cursor = cursors[byBound[j]];
+				if (cursor.ordinal() == candidate) {
+					bound += scorers[byBound[j]].score(cursor.frequency(), cursor.length(), cursor.norm());
+					read++;
+				}
+			}
+			// tighten the bound with the non-essential terms, largest first
+			int checked = essential;
+			while (checked > 0 && !cannotReach(bound, threshold)) {
+				checked--;
+				PostingsCursor cursor = cursors[byBound[checked]];
+				bound -= bounds[byBound[checked]];
+				if (cursor.advance(candidate) == candidate) {
+					bound += scorers[byBound[checked]].score(cursor.frequency(), cursor.length(), cursor.norm());
+					read++;
+				}
+			}
+
+			if (!cannotReach(bound, threshold)) {
+				for (int j = 0; j < checked; j++) {
+					if (cursors[byBound[j]].advance(candidate) == candidate) {
+						read++;
+					}
+				}
+				double score = 0;
+				for (int i = 0; i < n; i++) {
+					if (cursors[i].ordinal() == candidate) {
+						score += scorers[i].score(cursors[i].frequency(), cursors[i].length(), cursors[i].norm());
+					}
+				}
+				collector.collect(candidate, score);
+			}
+
+			for (int j = essential; j < n; j++) {
+				PostingsCursor cursor = cursors[byBound[j]];
+				if (cursor.ordinal() == candidate) {
+					cursor.next();
+				}
+			}
+		}
+		return read;
+	}
+
+	/**
+	 * @return true iff a document whose score is at most bound certainly cannot be collected
+	 */
+	private static boolean cannotReach(double bound, double threshold) {
+		return bound + 1e-9 * Math.abs(bound) + 1e-12 < threshold;
+	}
+}
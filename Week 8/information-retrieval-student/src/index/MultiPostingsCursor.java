@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+/**
+ * Concatenates the cursors for one term from several segments into a single cursor over
+ * engine-wide ordinals.
+ *
+ * Each segment numbers its documents from 0; the engine-wide ordinal of a document is its
+ * segment's base (the number of documents in the segments before it) plus its ordinal in the
+ * segment.
+ */
+final class MultiPostingsCursor extends PostingsCursor {
+	private final PostingsCursor[] cursors;
+	private final int[] bases;
+	private int current;
+	private int ordinal = -1;
+
+	/**
+	 * @param cursors the cursors, in segment order
+	 * @param bases the base of each cursor's segment, in increasing order
+	 */
+	MultiPostingsCursor(PostingsCursor[] cursors, int[] bases) {
+		this.cursors = cursors;
+		this.bases = bases;
+	}
+
+	@Override
+	int ordinal() {
+		return ordinal;
+	}
+
+	@Override
+	int frequency() {
+		return cursors[current].frequency();
+	}
+
+	@Override
+	int maxFrequency() {
+		int max = 0;
+		for (PostingsCursor cursor : cursors) {
+			max = Math.max(max, cursor.maxFrequency());
+		}
+		return max;
+	}
+
+	@Override
+	int[] positions() {
+		return cursors[current].positions();
+	}
+
+	@Override
+	float norm() {
+		return cursors[current].norm();
+	}
+
+	@Override
+	int length() {
+		return cursors[current].length();
+	}
+
+	@Override
+	int next() {
+		while (current < cursors.length) {
+			int next = cursors[current].next();
+			if (next != NO_MORE_DOCS) {
+				return ordinal = bases[current] + next;
+			}
+			current++;
+		}
+		return ordinal = NO_MORE_DOCS;
+	}
+
+	@Override
+	int advance(int target) {
+		if (ordinal >= target) {
+			return ordinal;
+		}
+		while (current + 1 < cursors.length && bases[current + 1] <= target) {
+			current++;
+		}
+		while (current < cursors.length) {
+			int next = cursors[current].advance(target - bases[current]);
+			if (next != NO_MORE_DOCS) {
+				return ordinal = bases[current] + next;
+			}
+			current++;
+		}
+		return ordinal = NO_MORE_DOCS;
+	}
+
+	@Override
+	long cost() {
+		long cost = 0;
+		for (PostingsCursor cursor : cursors) {
+			cost += cursor.cost();
+		}
+		return cost;
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.Arrays;
+
+/**
+ * Matches the documents in which the terms of a phrase occur together.
+ *
+ * Candidates come from the intersection of the terms' posting lists, so only documents that
+ * contain every term are looked at; the positions of each candidate are then decoded and
+ * checked. With a slop of 0 the terms must occur consecutively and in order. With a slop of s,
+ * they must all occur, in any order, within a window of (number of terms + s) positions.
+ */
+final class PhraseIterator extends DocIterator {
+	private final DocIterator approximation;
+	private final PostingsCursor[] cursors;
+	private final int[] terms;
+	private final int[] needed;
+	private final int slop;
+	private int ordinal = -1;
+
+	/**
+	 * @param cursors a cursor for each distinct term of the phrase
+	 * @param terms for each word of the phrase, the index of its term's cursor
+	 * @param slop
+	 */
+	PhraseIterator(PostingsCursor[] cursors, int[] terms, int slop) {
+		this.approximation = DocIterator.conjunction(cursors);
+		this.cursors = cursors;
+		this.terms = terms;
+		this.needed = new int[cursors.length];
+		for (int term : terms) {
+			needed[term]++;
+		}
+		this.slop = slop;
+	}
+
+	@Override
+	int ordinal() {
+		return ordinal;
+	}
+
+	@Override
+	int next() {
+		return ordinal = verify(approximation.next());
+	}
+
+	@Override
+	int advance(int target) {
+		if (ordinal >= target) {
+			return ordinal;
+		}
+		return ordinal = verify(approximation.advance(target));
+	}
+
+	@Override
+	long cost() {
+		return approximation.cost();
+	}
+
+	private int verify(int candidate) {
+		while (candidate != NO_MORE_DOCS && !matches()) {
+			candidate = approximation.next();
+		}
+		return candidate;
+	}
+
+	private boolean matches() {
+		int[][] positions = new int[cursors.length][];
+		for (int i = 0; i < cursors.length; i++) {
+			positions[i] = cursors[i].positions();
+		}
+		return slop == 0 ? exact(positions) : near(positions);
+	}
+
+	/**
+	 * @return true iff some position p of the first word has word i at p + i, for every i
+	 */
+	private boolean exact(int[][] positions) {
+		int[] next = new int[terms.length];
+		outer:
+		for (int start : positions[terms[0]]) {
+			for (int i = 1; i < terms.length; i++) {
+				int[] p = positions[terms[i]];
+				while (next[i] < p.length && p[next[i]] < start + i) {
+					next[i]++;
+				}
+				if (next[i] == p.length) {
+					return false;
+				}
+				if (p[next[i]] != start + i) {
+					continue outer;
+				}
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Slides a window over every occurrence of every term, in position order, looking for the 
+	 * narrowest window holding enough occurrences of each term.
+	 */
+	private boolean near(int[][] positions) {
+		int total = 0;
+		for (int[] p : positions) {
+			total += p.length;
+		}
+		// each occurrence is packed as (position << 32 | term), so sorting orders by position
+		long[] occurrences = new long[total];
+		int n = 0;
+		for (int term = 0; term < positions.length; term++) {
+			for (int position : positions[term]) {
+				occurrences[n++] = ((long) position << 32) | term;
+			}
+		}
+		Arrays.sort(occurrences);
+
+		int[] have = new int[cursors.length];
+		int satisfied = 0;
+		int maxSpan = terms.length - 1 + slop;
+		for (int left = 0, right = 0; right < total; right++) {
+			int term = (int) occurrences[right];
+			if (++have[term] == needed[term]) {
+				satisfied++;
+			}
+			while (satisfied == cursors.length) {
+				if ((occurrences[right] >> 32) - (occurrences[left] >> 32) <= maxSpan) {
+					return true;
+				}
+				int leaving = (int) occurrences[left++];
+				if (have[leaving]-- == needed[leaving]) {
+					satisfied--;
+				}
+			}
+		}
+		return false;
+	}
+}
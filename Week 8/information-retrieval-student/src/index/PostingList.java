@@ -0,0 +1,377 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * A compressed posting list for a single term.
+ *
+ * Each posting is a (document ordinal, term frequency) pair. Postings are appended in strictly
+ * increasing ordinal order, and each is stored as the variable-byte encoded gap from the previous
+ * ordinal followed by the variable-byte encoded term frequency. A typical posting therefore takes
+ * two or three bytes, instead of a boxed set entry plus a boxed map entry.
+ *
+ * Every SKIP_INTERVAL postings, a skip entry records the ordinal just before the block and the
+ * byte offset where the block starts, so that a cursor can jump near a target ordinal without
+ * decoding everything before it.
+ *
+ * A list may also hold the positions of the term within each document, in a separate byte 
+ * stream so that cursors which only need frequencies never decode them. Each posting's 
+ * positions are stored as the variable-byte encoded length of the block, then the first 
+ * position, then the gaps between successive positions; a posting added without positions gets
+ * an empty block. Skip entries also record where each block of postings starts in this stream.
+ *
+ * See:
+ * - <https://nlp.stanford.edu/IR-book/html/htmledition/variable-byte-codes-1.html>
+ * - <https://nlp.stanford.edu/IR-book/html/htmledition/faster-postings-list-intersection-via-skip-pointers-1.html>
+ */
+final class PostingList {
+	static final int SKIP_INTERVAL = 64;
+
+	private byte[] bytes = new byte[8];
+	private int length;
+	private int size;
+	private int maxFrequency;
+	private int lastOrdinal = -1;
+
+	private int[] skipOrdinals = new int[1];
+	private int[] skipOffsets = new int[1];
+	private int[] skipPositionOffsets = new int[1];
+	private int skips;
+
+	private byte[] positions;
+	private int positionsLength;
+
+	private boolean changed;
+	private volatile View published;
+
+	/**
+	 * Appends a posting to the end of this list.
+	 *
+	 * @param ordinal the document ordinal; must be larger than any ordinal already in the list
+	 * @param frequency the number of times the term appears in the document
+	 * @throws IllegalArgumentException if the ordinal is not larger than the last one added
+	 */
+	void add(int ordinal, int frequency) {
+		add(ordinal, frequency, null, 0);
+	}
+
+	/**
+	 * Appends a posting, with the positions of the term in the document, to the end of this list.
+	 *
+	 * @param ordinal the document ordinal; must be larger than any ordinal already in the list
+	 * @param frequency the number of times the term appears in the document
+	 * @param positions holds the frequency positions of the term, in increasing order, starting
+	 *        at index from; or null if positions were not recorded for this document
+	 * @param from the index of the first position
+	 * @throws IllegalArgumentException if the ordinal is not larger than the last one added
+	 */
+	void add(int ordinal, int frequency, int[] positions, int from) {
+		if (ordinal <= lastOrdinal) {
+			throw new IllegalArgumentException("postings must be added in increasing ordinal order");
+		}
+		if (positions != null && this.positions == null) {
+			// earlier postings get empty blocks, of one byte each
+			this.positions = new byte[Math.max(8, size * 2)];
+			positionsLength = size;
+			for (int i = 0; i < skips; i++) {
+				skipPositionOffsets[i] = i * SKIP_INTERVAL;
+			}
+		}
+		if (size % SKIP_INTERVAL == 0) {
+			if (skips == skipOrdinals.length) {
+				skipOrdinals = Arrays.copyOf(skipOrdinals, skips * 2);
+				skipOffsets = Arrays.copyOf(skipOffsets, skips * 2);
+				skipPositionOffsets = Arrays.copyOf(skipPositionOffsets, skips * 2);
+			}
+			skipOrdinals[skips] = lastOrdinal;
+			skipOffsets[skips] = length;
+			skipPositionOffsets[skips] = positionsLength;
+			skips++;
+		}
+		writeVInt(ordinal - lastOrdinal);
+		writeVInt(frequency);
+		if (this.positions != null) {
+			writePositions(positions == null ? 0 : frequency, positions, from);
+		}
+		lastOrdinal = ordinal;
+		maxFrequency = Math.max(maxFrequency, frequency);
+		size++;
+	}
+
+	private void writePositions(int count, int[] positions, int from) {
+		int blockLength = 0;
+		for (int i = 0, last = 0; i < count; i++) {
+			blockLength += vIntLength(positions[from + i] - last);
+			last = positions[from + i];
+		}
+		if (positionsLength + 5 + blockLength > this.positions.length) {
+			this.positions = Arrays.copyOf(this.positions, Math.max(this.positions.length * 2, positionsLength + 5 + blockLength));
+		}
+		positionsLength = writeVInt(this.positions, positionsLength, blockLength);
+		for (int i = 0, last = 0; i < count; i++) {
+			positionsLength = writeVInt(this.positions, positionsLength, positions[from + i] - last);
+			last = positions[from + i];
+		}
+	}
+
+	/**
+	 * Appends all of another list's postings to the end of this list.
+	 *
+	 * @param other a list whose first ordinal is larger than any ordinal in this list
+	 * @throws IllegalArgumentException if the ordinals would be out of order
+	 */
+	void addAll(PostingList other) {
+		PostingsCursor cursor = other.cursor();
+		while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+			int[] p = cursor.positions();
+			add(cursor.ordinal(), cursor.frequency(), p.length == 0 ? null : p, 0);
+		}
+	}
+
+	/**
+	 * @return the number of postings (that is, the document frequency of the term)
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return the largest term frequency in this list, or 0 if it is empty
+	 */
+	int maxFrequency() {
+		return maxFrequency;
+	}
+
+	/**
+	 * Returns a cursor over the postings currently in this list. Postings appended after the
+	 * cursor is created are not visible to it.
+	 *
+	 * @return a new cursor positioned before the first posting
+	 */
+	PostingsCursor cursor() {
+		return cursor(null, null);
+	}
+
+	/**
+	 * Returns a cursor over the postings currently in this list, whose norm() and length() read
+	 * from the given norms and lengths.
+	 *
+	 * @param norms the norm of each document, indexed by ordinal; or null if every norm is 1
+	 * @param lengths the length of each document, indexed by ordinal; or null if they are unknown
+	 * @return a new cursor positioned before the first posting
+	 */
+	PostingsCursor cursor(FloatBuffer norms, IntBuffer lengths) {
+		return new BlockPostingsCursor(ByteBuffer.wrap(bytes, 0, length).slice(), size, maxFrequency,
+				IntBuffer.wrap(skipOrdinals, 0, skips).slice(), IntBuffer.wrap(skipOffsets, 0, skips).slice(), skips,
+				positions == null ? null : ByteBuffer.wrap(positions, 0, positionsLength).slice(),
+				IntBuffer.wrap(skipPositionOffsets, 0, skips).slice(), norms, lengths);
+	}
+
+	/**
+	 * Marks this list as changed since it was last published.
+	 *
+	 * @return true iff it was not already marked
+	 */
+	boolean markChanged() {
+		if (changed) {
+			return false;
+		}
+		changed = true;
+		return true;
+	}
+
+	/**
+	 * Publishes the postings currently in this list, so that published() returns them. Only 
+	 * the thread adding to this list may call this; other threads may then call published().
+	 */
+	void publish() {
+		changed = false;
+		published = new View(this);
+	}
+
+	/**
+	 * @return the postings as of the last call to publish(), or null if it was never called
+	 */
+	View published() {
+		return published;
+	}
+
+	/**
+	 * An immutable view of a list's postings at one moment. Appending to a list only ever 
+	 * writes past the end of its arrays, or into new copies of them, so a view can share the 
+	 * list's arrays while the list keeps growing.
+	 */
+	static final class View {
+		private final byte[] bytes;
+		private final int length;
+		private final int size;
+		private final int maxFrequency;
+		private final int lastOrdinal;
+		private final int[] skipOrdinals;
+		private final int[] skipOffsets;
+		private final int[] skipPositionOffsets;
+		private final int skips;
+		private final byte[] positions;
+		private final int positionsLength;
+
+		private View(PostingList list) {
+			bytes = list.bytes;
+			length = list.length;
+			size = list.size;
+			maxFrequency = list.maxFrequency;
+			lastOrdinal = list.lastOrdinal;
+			skipOrdinals = list.skipOrdinals;
+			skipOffsets = list.skipOffsets;
+			skipPositionOffsets = list.skipPositionOffsets;
+			skips = list.skips;
+			positions = list.positions;
+			positionsLength = list.positionsLength;
+		}
+
+		/**
+		 * @return an estimate of the heap used by the list, as of this view, in bytes
+		 */
+		long heapBytes() {
+			// the PostingList and this view, then their arrays
+			return IndexSize.object(49) + IndexSize.object(44) + IndexSize.array(bytes.length, 1)
+					+ 3 * IndexSize.array(skipOrdinals.length, 4)
+					+ (positions == null ? 0 : IndexSize.array(positions.length, 1));
+		}
+
+		/**
+		 * @param limit
+		 * @return the number of postings whose ordinal is less than limit
+		 */
+		int countBelow(int limit) {
+			if (lastOrdinal < limit) {
+				return size;
+			}
+			// the last block that may hold an ordinal less than limit
+			int low = 0;
+			int high = skips - 1;
+			while (low < high) {
+				int mid = (low + high + 1) >>> 1;
+				if (skipOrdinals[mid] < limit) {
+					low = mid;
+				}
+				else {
+					high = mid - 1;
+				}
+			}
+			int index = low * SKIP_INTERVAL;
+			int offset = skipOffsets[low];
+			int ordinal = skipOrdinals[low];
+			while (index < size) {
+				int gap = 0;
+				for (int shift = 0;; shift += 7) {
+					byte b = bytes[offset++];
+					gap |= (b & 0x7F) << shift;
+					if (b >= 0) {
+						break;
+					}
+				}
+				ordinal += gap;
+				if (ordinal >= limit) {
+					break;
+				}
+				while (bytes[offset++] < 0) {
+					// skip the frequency
+				}
+				index++;
+			}
+			return index;
+		}
+
+		/**
+		 * Returns a cursor over the first count postings of this view.
+		 *
+		 * @param count the number of postings to visit, at most the view's size
+		 * @param norms the norm of each document, indexed by ordinal; or null if every norm is 1
+		 * @param lengths the length of each document, indexed by ordinal; or null if they are unknown
+		 * @return a new cursor positioned before the first posting
+		 */
+		PostingsCursor cursor(int count, FloatBuffer norms, IntBuffer lengths) {
+			int n = Math.min(skips, (count + SKIP_INTERVAL - 1) / SKIP_INTERVAL);
+			return new BlockPostingsCursor(ByteBuffer.wrap(bytes, 0, length).slice(), count, maxFrequency,
+					IntBuffer.wrap(skipOrdinals, 0, n).slice(), IntBuffer.wrap(skipOffsets, 0, n).slice(), n,
+					positions == null ? null : ByteBuffer.wrap(positions, 0, positionsLength).slice(),
+					IntBuffer.wrap(skipPositionOffsets, 0, n).slice(), norms, lengths);
+		}
+	}
+
+	/**
+	 * Writes this list in the layout that MappedSegment reads: the number of postings, the 
+	 * largest term frequency, the number of skip entries, the skip ordinals, the skip offsets, the number of encoded bytes, 
+	 * and the encoded bytes themselves; then the number of position bytes (0 if there are no 
+	 * positions) and, if there are any, the skip position offsets and the position bytes.
+	 *
+	 * @param out
+	 * @throws IOException iff out throws an exception
+	 */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeInt(size);
+		out.writeInt(maxFrequency);
+		out.writeInt(skips);
+		for (int i = 0; i < skips; i++) {
+			out.writeInt(skipOrdinals[i]);
+		}
+		for (int i = 0; i < skips; i++) {
+			out.writeInt(skipOffsets[i]);
+		}
+		out.writeInt(length);
+		out.write(bytes, 0, length);
+		out.writeInt(positions == null ? 0 : positionsLength);
+		if (positions != null) {
+			for (int i = 0; i < skips; i++) {
+				out.writeInt(skipPositionOffsets[i]);
+			}
+			out.write(positions, 0, positionsLength);
+		}
+	}
+
+	/**
+	 * @return the number of bytes writeTo(DataOutput) will write
+	 */
+	int encodedLength() {
+		return 20 + 8 * skips + length + (positions == null ? 0 : 4 * skips + positionsLength);
+	}
+
+	private void writeVInt(int value) {
+		if (length + 5 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+		}
+		length = writeVInt(bytes, length, value);
+	}
+
+	/**
+	 * Writes a variable-byte encoded value at offset, which must have room for 5 bytes.
+	 *
+	 * @return the offset just past the value
+	 */
+	private static int writeVInt(byte[] bytes, int offset, int value) {
+		while ((value & ~0x7F) != 0) {
+			bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		bytes[offset++] = (byte) value;
+		return offset;
+	}
+
+	private static int vIntLength(int value) {
+		int length = 1;
+		while ((value & ~0x7F) != 0) {
+			value >>>= 7;
+			length++;
+		}
+		return length;
+	}
+}
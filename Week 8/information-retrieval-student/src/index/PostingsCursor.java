@@ -0,0 +1,49 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+/**
+ * A DocIterator over the postings of a single term, which also exposes the term frequency of
+ * the current posting.
+ */
+abstract class PostingsCursor extends DocIterator {
+	static final int[] EMPTY = new int[0];
+
+	/**
+	 * @return the term frequency of the current posting
+	 */
+	abstract int frequency();
+
+	/**
+	 * @return an upper bound on the term frequency of any posting this cursor can visit
+	 */
+	abstract int maxFrequency();
+
+	/**
+	 * @return the positions of the term in the current posting's document, in increasing order;
+	 *         empty if positions were not indexed for the document. The caller must not
+	 *         modify the array.
+	 */
+	abstract int[] positions();
+
+	/**
+	 * @return the norm of the current posting's document (see InMemorySegment.norm(Map)), or 1
+	 *         if the postings were not read from a segment
+	 */
+	abstract float norm();
+
+	/**
+	 * @return the length (the number of terms) of the current posting's document, or 0 if the 
+	 *         postings were not read from a segment
+	 */
+	abstract int length();
+
+	/**
+	 * @return a cursor with no postings
+	 */
+	static PostingsCursor empty() {
+		return new PostingList().cursor();
+	}
+}
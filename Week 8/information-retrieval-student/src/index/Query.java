@@ -0,0 +1,460 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A boolean query over the terms of a SearchEngine.
+ *
+ * Queries are built from terms with and(), or() and not(), or parsed from a string such as
+ * "tomato AND (sauce OR paste) NOT pizza". In the string form, AND, OR and NOT must be
+ * uppercase; adjacent terms with no operator between them are ANDed; and NOT binds tighter
+ * than AND, which binds tighter than OR. Terms are case-insensitive, like everywhere else in
+ * the engine.
+ *
+ * A NOT on its own matches every document that does not match its operand; inside an AND it
+ * removes documents from the conjunction of the other operands.
+ *
+ * Words in double quotes form a phrase, which matches documents containing the words 
+ * consecutively and in order; "tomato sauce"~3 is a proximity query, which matches documents 
+ * containing all the words, in any order, within a window of 3 more positions than there are 
+ * words. Both need positions (see SearchEngine.setIndexPositions), and their words count 
+ * towards a document's score like any other terms.
+ */
+public abstract class Query {
+
+	Query() {
+	}
+
+	/**
+	 * @param term
+	 * @return a query matching the documents that contain the term
+	 */
+	public static Query term(String term) {
+		return new Term(term.toLowerCase());
+	}
+
+	/**
+	 * @param queries
+	 * @return a query matching the documents matched by all of the queries
+	 */
+	public static Query and(Query... queries) {
+		if (queries.length == 0) {
+			throw new IllegalArgumentException("and() needs at least one query");
+		}
+		return queries.length == 1 ? queries[0] : new And(queries);
+	}
+
+	/**
+	 * @param queries
+	 * @return a query matching the documents matched by any of the queries
+	 */
+	public static Query or(Query... queries) {
+		if (queries.length == 0) {
+			throw new IllegalArgumentException("or() needs at least one query");
+		}
+		return queries.length == 1 ? queries[0] : new Or(queries);
+	}
+
+	/**
+	 * @param terms
+	 * @return a query matching the documents that contain the terms consecutively and in order
+	 * @throws IllegalArgumentException if there are no terms
+	 */
+	public static Query phrase(String... terms) {
+		return near(0, terms);
+	}
+
+	/**
+	 * @param slop how many positions, beyond the number of terms, the window may span
+	 * @param terms
+	 * @return a query matching the documents that contain every term, in any order, within a 
+	 *         window of terms.length + slop positions; or, if slop is 0, the phrase
+	 * @throws IllegalArgumentException if there are no terms, or slop is negative
+	 */
+	public static Query near(int slop, String... terms) {
+		if (terms.length == 0) {
+			throw new IllegalArgumentException("a phrase needs at least one term");
+		}
+		if (slop < 0) {
+			throw new IllegalArgumentException("slop must be non-negative");
+		}
+		if (terms.length == 1) {
+			return term(terms[0]);
+		}
+		String[] lowercase = new String[terms.length];
+		for (int i = 0; i < terms.length; i++) {
+			lowercase[i] = terms[i].toLowerCase();
+		}
+		return new Phrase(lowercase, slop);
+	}
+
+	/**
+	 * @param query
+	 * @return a query matching the documents not matched by the query
+	 */
+	public static Query not(Query query) {
+		return new Not(query);
+	}
+
+	/**
+	 * Parses a query string.
+	 *
+	 * @param query
+	 * @return the parsed query
+	 * @throws IllegalArgumentException if the query is empty or malformed
+	 */
+	public static Query parse(String query) {
+		return new Parser(query).parse();
+	}
+
+	/**
+	 * Returns an iterator over the ordinals of the documents this query matches.
+	 */
+	abstract DocIterator iterator(IndexSnapshot index);
+
+	/**
+	 * Returns the terms that contribute to a matching document's score, that is, the terms that
+	 * are not under a NOT.
+	 */
+	Set<String> scoringTerms() {
+		Set<String> terms = new LinkedHashSet<>();
+		collectTerms(terms, false);
+		return terms;
+	}
+
+	abstract void collectTerms(Set<String> terms, boolean negated);
+
+	private static String join(Query[] queries, String operator) {
+		StringBuilder sb = new StringBuilder("(");
+		for (int i = 0; i < queries.length; i++) {
+			if (i > 0) {
+				sb.append(operator);
+			}
+			sb.append(queries[i]);
+		}
+		return sb.append(")").toString();
+	}
+
+	static final class Term extends Query {
+		final String term;
+
+		Term(String term) {
+			this.term = term;
+		}
+
+		@Override
+		DocIterator iterator(IndexSnapshot index) {
+			return index.cursor(term);
+		}
+
+		@Override
+		void collectTerms(Set<String> terms, boolean negated) {
+			if (!negated) {
+				terms.add(term);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return term;
+		}
+	}
+
+	static final class Phrase extends Query {
+		final String[] terms;
+		final int slop;
+
+		Phrase(String[] terms, int slop) {
+			this.terms = terms;
+			this.slop = slop;
+		}
+
+		@Override
+		DocIterator iterator(IndexSnapshot index) {
+			List<String> distinct = new ArrayList<>(new LinkedHashSet<>(Arrays.asList(terms)));
+			PostingsCursor[] cursors = new PostingsCursor[distinct.size()];
+			for (int i = 0; i < cursors.length; i++) {
+				cursors[i] = index.cursor(distinct.get(i));
+			}
+			int[] words = new int[terms.length];
+			for (int i = 0; i < terms.length; i++) {
+				words[i] = distinct.indexOf(terms[i]);
+			}
+			return new PhraseIterator(cursors, words, slop);
+		}
+
+		@Override
+		void collectTerms(Set<String> terms, boolean negated) {
+			if (!negated) {
+				terms.addAll(Arrays.asList(this.terms));
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "\"" + String.join(" ", terms) + "\"" + (slop == 0 ? "" : "~" + slop);
+		}
+	}
+
+	static final class And extends Query {
+		final Query[] queries;
+
+		And(Query[] queries) {
+			this.queries = queries.clone();
+		}
+
+		@Override
+		DocIterator iterator(IndexSnapshot index) {
+			List<DocIterator> include = new ArrayList<>();
+			List<DocIterator> exclude = new ArrayList<>();
+			for (Query q : queries) {
+				if (q instanceof Not) {
+					exclude.add(((Not) q).query.iterator(index));
+				}
+				else {
+					include.add(q.iterator(index));
+				}
+			}
+			if (include.isEmpty()) {
+				include.add(index.allDocuments());
+			}
+			DocIterator result = DocIterator.conjunction(include.toArray(new DocIterator[0]));
+			if (!exclude.isEmpty()) {
+				result = DocIterator.exclusion(result, DocIterator.disjunction(exclude.toArray(new DocIterator[0])));
+			}
+			return result;
+		}
+
+		@Override
+		void collectTerms(Set<String> terms, boolean negated) {
+			for (Query q : queries) {
+				q.collectTerms(terms, negated);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(queries, " AND ");
+		}
+	}
+
+	static final class Or extends Query {
+		final Query[] queries;
+
+		Or(Query[] queries) {
+			this.queries = queries.clone();
+		}
+
+		@Override
+		DocIterator iterator(IndexSnapshot index) {
+			DocIterator[] iterators = new DocIterator[queries.length];
+			for (int i = 0; i < queries.length; i++) {
+				iterators[i] = queries[i].iterator(index);
+			}
+			return DocIterator.disjunction(iterators);
+		}
+
+		@Override
+		void collectTerms(Set<String> terms, boolean negated) {
+			for (Query q : queries) {
+				q.collectTerms(terms, negated);
+			}
+		}
+
+		@Override
+		public String toString() {
+			return join(queries, " OR ");
+		}
+	}
+
+	static final class Not extends Query {
+		final Query query;
+
+		Not(Query query) {
+			this.query = query;
+		}
+
+		@Override
+		DocIterator iterator(IndexSnapshot index) {
+			return DocIterator.exclusion(index.allDocuments(), query.iterator(index));
+		}
+
+		@Override
+		void collectTerms(Set<String> terms, boolean negated) {
+			query.collectTerms(terms, !negated);
+		}
+
+		@Override
+		public String toString() {
+			return "NOT " + query;
+		}
+	}
+
+	/**
+	 * A recursive-descent parser for the grammar:
+	 *
+	 * or    := and ("OR" and)*
+	 * and   := unary ("AND"? unary)*
+	 * unary := "NOT" unary | "(" or ")" | phrase | word
+	 *
+	 * where words are runs of the same characters the engine indexes ([a-zA-Z0-9_]), and a 
+	 * phrase is a double-quoted string of words, optionally followed by ~ and a slop.
+	 */
+	private static final class Parser {
+		private final List<String> tokens = new ArrayList<>();
+		private int position;
+
+		Parser(String query) {
+			int i = 0;
+			while (i < query.length()) {
+				char c = query.charAt(i);
+				if (c == '(' || c == ')') {
+					tokens.add(String.valueOf(c));
+					i++;
+				}
+				else if (c == '"') {
+					int start = i;
+					int end = query.indexOf('"', i + 1);
+					if (end < 0) {
+						throw new IllegalArgumentException("missing '\"' in query");
+					}
+					i = end + 1;
+					if (i < query.length() && query.charAt(i) == '~') {
+						i++;
+						while (i < query.length() && query.charAt(i) >= '0' && query.charAt(i) <= '9') {
+							i++;
+						}
+					}
+					// phrase tokens keep their quote, so they cannot be mistaken for words
+					tokens.add(query.substring(start, i));
+				}
+				else if (isWordChar(c)) {
+					int start = i;
+					while (i < query.length() && isWordChar(query.charAt(i))) {
+						i++;
+					}
+					tokens.add(query.substring(start, i));
+				}
+				else {
+					i++;
+				}
+			}
+		}
+
+		private static boolean isWordChar(char c) {
+			return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+		}
+
+		Query parse() {
+			if (tokens.isEmpty()) {
+				throw new IllegalArgumentException("empty query");
+			}
+			Query result = parseOr();
+			if (position != tokens.size()) {
+				throw new IllegalArgumentException("unexpected '" + tokens.get(position) + "' in query");
+			}
+			return result;
+		}
+
+		private Query parseOr() {
+			List<Query> queries = new ArrayList<>();
+			queries.add(parseAnd());
+			while (accept("OR")) {
+				queries.add(parseAnd());
+			}
+			return or(queries.toArray(new Query[0]));
+		}
+
+		private Query parseAnd() {
+			List<Query> queries = new ArrayList<>();
+			queries.add(parseUnary());
+			while (position < tokens.size() && !peek("OR") && !peek(")")) {
+				accept("AND");
+				queries.add(parseUnary());
+			}
+			return and(queries.toArray(new Query[0]));
+		}
+
+		private Query parseUnary() {
+			if (position == tokens.size()) {
+				throw new IllegalArgumentException("unexpected end of query");
+			}
+			if (accept("NOT")) {
+				return not(parseUnary());
+			}
+			if (accept("(")) {
+				Query result = parseOr();
+				if (!accept(")")) {
+					throw new IllegalArgumentException("missing ')' in query");
+				}
+				return result;
+			}
+			String token = tokens.get(position);
+			if (Arrays.asList("AND", "OR", ")").contains(token)) {
+				throw new IllegalArgumentException("unexpected '" + token + "' in query");
+			}
+			position++;
+			if (token.startsWith("\"")) {
+				return parsePhrase(token);
+			}
+			return term(token);
+		}
+
+		/**
+		 * Parses a phrase token: "words" or "words"~slop.
+		 */
+		private static Query parsePhrase(String token) {
+			int end = token.lastIndexOf('"');
+			List<String> words = new ArrayList<>();
+			int i = 1;
+			while (i < end) {
+				if (isWordChar(token.charAt(i))) {
+					int start = i;
+					while (i < end && isWordChar(token.charAt(i))) {
+						i++;
+					}
+					words.add(token.substring(start, i));
+				}
+				else {
+					i++;
+				}
+			}
+			if (words.isEmpty()) {
+				throw new IllegalArgumentException("empty phrase in query");
+			}
+			int slop = 0;
+			if (end + 1 < token.length()) {
+				if (end + 2 == token.length()) {
+					throw new IllegalArgumentException("missing slop after '~' in query");
+				}
+				try {
+					slop = Integer.parseInt(token.substring(end + 2));
+				}
+				catch (NumberFormatException e) {
+					throw new IllegalArgumentException("slop is too large in query");
+				}
+			}
+			return near(slop, words.toArray(new String[0]));
+		}
+
+		private boolean peek(String token) {
+			return position < tokens.size() && tokens.get(position).equals(token);
+		}
+
+		private boolean accept(String token) {
+			if (peek(token)) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+	}
+}
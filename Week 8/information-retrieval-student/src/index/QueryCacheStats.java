@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+/**
+ * Statistics of a SearchEngine's relevanceLookup result cache, as of one moment.
+ *
+ * @see SearchEngine#setQueryCacheSize(int)
+ */
+public final class QueryCacheStats {
+	private final long hits;
+	private final long misses;
+	private final long evictions;
+	private final long invalidations;
+	private final int size;
+	private final long[] latencies;
+
+	QueryCacheStats(long hits, long misses, long evictions, long invalidations, int size, long[] latencies) {
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.invalidations = invalidations;
+		this.size = size;
+		this.latencies = latencies;
+	}
+
+	/**
+	 * @return the number of lookups answered from the cache
+	 */
+	public long hitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of lookups that had to read the index
+	 */
+	public long missCount() {
+		return misses;
+	}
+
+	/**
+	 * @return the fraction of lookups answered from the cache, or 0 if there were none
+	 */
+	public double hitRate() {
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	/**
+	 * @return the number of entries dropped because the cache was full
+	 */
+	public long evictionCount() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of entries dropped because documents were added or removed
+	 */
+	public long invalidationCount() {
+		return invalidations;
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a percentile of the latency of relevanceLookup, hits and misses together. It is
+	 * accurate to within 12.5%.
+	 *
+	 * @param percentile between 0 and 100; for example, 99 for the 99th percentile
+	 * @return the latency, in nanoseconds, or 0 if there were no lookups
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	public long latencyPercentile(double percentile) {
+		return LatencyHistogram.percentile(latencies, percentile);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d size=%d p50=%dns p99=%dns",
+				hits, misses, hitRate(), evictions, invalidations, size, latencyPercentile(50), latencyPercentile(99));
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+import comparators.ScoredDocumentComparator;
+import documents.DocumentId;
+
+/**
+ * Iterates over scored document ordinals, most relevant first, sorting them lazily.
+ *
+ * The ordinals are arranged into a binary max-heap by score in place, in O(n), and the heap is
+ * popped as documents are read, in O(log n) each; so the first k documents cost about 
+ * O(n + k log n), and the ones never read are never sorted. The order is that of 
+ * ScoredDocumentComparator: documents with equal scores are popped together, and only they are 
+ * sorted by id, so a document's id is only looked up when it (or one it ties with) is read. 
+ * (When every score is equal, as when a term's idf is 0, that is every document.)
+ */
+final class RankedIterator implements Iterator<ScoredDocument> {
+	private static final Comparator<ScoredDocument> ORDER = new ScoredDocumentComparator();
+
+	private final int[] ordinals;
+	private final double[] scores;
+	private final IntFunction<DocumentId> documents;
+	private int size;
+	private final List<ScoredDocument> ties = new ArrayList<>();
+	private int next;
+
+	/**
+	 * @param ordinals the ordinals to rank, which this iterator takes over
+	 * @param scores the score of each ordinal, which this iterator takes over
+	 * @param size the number of ordinals
+	 * @param documents maps ordinals to document ids
+	 */
+	RankedIterator(int[] ordinals, double[] scores, int size, IntFunction<DocumentId> documents) {
+		this.ordinals = ordinals;
+		this.scores = scores;
+		this.documents = documents;
+		this.size = size;
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(i);
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return next < ties.size() || size > 0;
+	}
+
+	@Override
+	public ScoredDocument next() {
+		if (next == ties.size()) {
+			if (size == 0) {
+				throw new NoSuchElementException();
+			}
+			ties.clear();
+			next = 0;
+			double score = scores[0];
+			while (size > 0 && scores[0] == score) {
+				ties.add(new ScoredDocument(documents.apply(ordinals[0]), score));
+				size--;
+				ordinals[0] = ordinals[size];
+				scores[0] = scores[size];
+				siftDown(0);
+			}
+			if (ties.size() > 1) {
+				ties.sort(ORDER);
+			}
+		}
+		return ties.get(next++);
+	}
+
+	private void siftDown(int i) {
+		int ordinal = ordinals[i];
+		double score = scores[i];
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && scores[child + 1] > scores[child]) {
+				child++;
+			}
+			if (scores[child] <= score) {
+				break;
+			}
+			ordinals[i] = ordinals[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		ordinals[i] = ordinal;
+		scores[i] = score;
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import documents.DocumentId;
+
+/**
+ * A least-recently-used cache of relevanceLookup results, keyed by lowercase term and k.
+ *
+ * A term's results only change when a document containing the term is added or removed, or
+ * when its idf becomes (or stops being) 0: any positive idf scales every score by the same
+ * factor, so it does not change their order. So the engine invalidates a term's entries when it
+ * adds a document containing the term, and every entry holding a document it removes; and a
+ * hit is only used if the idf is still 0, or still positive, as when the entry was computed.
+ *
+ * A lookup that misses reserves its key with a placeholder before it reads the index, and only
+ * stores its result if the placeholder is still there; so a result computed from a snapshot
+ * that an invalidation has since made stale is never stored.
+ */
+final class ResultCache {
+	/**
+	 * A cached result, or (while results is null) a placeholder for one being computed.
+	 */
+	static final class Entry {
+		final List<DocumentId> results;
+		final boolean zeroIdf;
+
+		Entry(List<DocumentId> results, boolean zeroIdf) {
+			this.results = results;
+			this.zeroIdf = zeroIdf;
+		}
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<String, Map<Integer, Entry>> terms = new LinkedHashMap<>(16, 0.75f, true);
+	private int size;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder invalidations = new LongAdder();
+	private final LatencyHistogram latencies = new LatencyHistogram();
+
+	/**
+	 * @param capacity the maximum number of entries
+	 */
+	ResultCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the entry for a key. If there is none, reserves the key with a new placeholder
+	 * and returns that; the caller should then compute the result and call put().
+	 *
+	 * @param term the lowercase term
+	 * @param k
+	 * @return a cached result; or a placeholder, owned by the caller; or null if another
+	 *         caller is already computing the result
+	 */
+	synchronized Entry get(String term, int k) {
+		Map<Integer, Entry> entries = terms.get(term);
+		if (entries == null) {
+			entries = new HashMap<>();
+			terms.put(term, entries);
+		}
+		Entry entry = entries.get(k);
+		if (entry == null) {
+			entry = new Entry(null, false);
+			entries.put(k, entry);
+			size++;
+			evict();
+			return entry;
+		}
+		return entry.results == null ? null : entry;
+	}
+
+	/**
+	 * Stores a result in place of an entry returned by get(), unless it has been invalidated
+	 * or evicted since.
+	 *
+	 * @param term the lowercase term
+	 * @param k
+	 * @param expected the entry returned by get()
+	 * @param results
+	 * @param zeroIdf whether the term's idf was 0 in the snapshot the result was computed from
+	 */
+	synchronized void put(String term, int k, Entry expected, List<DocumentId> results, boolean zeroIdf) {
+		Map<Integer, Entry> entries = terms.get(term);
+		if (entries != null && entries.get(k) == expected) {
+			entries.put(k, new Entry(results, zeroIdf));
+		}
+	}
+
+	private void evict() {
+		Iterator<Map<Integer, Entry>> eldest = terms.values().iterator();
+		while (size > capacity && eldest.hasNext()) {
+			size -= eldest.next().size();
+			eldest.remove();
+			evictions.increment();
+		}
+	}
+
+	/**
+	 * Invalidates every entry for the given terms.
+	 *
+	 * @param changed the lowercase terms of added documents
+	 */
+	synchronized void invalidate(Iterable<String> changed) {
+		if (size == 0) {
+			return;
+		}
+		for (String term : changed) {
+			Map<Integer, Entry> entries = terms.remove(term);
+			if (entries != null) {
+				size -= entries.size();
+				invalidations.add(entries.size());
+			}
+		}
+	}
+
+	/**
+	 * Invalidates every entry that holds a removed document, and every placeholder (whose result
+	 * might). This scans the whole cache.
+	 *
+	 * @param removed
+	 */
+	synchronized void invalidate(DocumentId removed) {
+		for (Iterator<Map<Integer, Entry>> i = terms.values().iterator(); i.hasNext();) {
+			Map<Integer, Entry> entries = i.next();
+			for (Iterator<Entry> j = entries.values().iterator(); j.hasNext();) {
+				Entry entry = j.next();
+				if (entry.results == null || entry.results.contains(removed)) {
+					j.remove();
+					size--;
+					invalidations.increment();
+				}
+			}
+			if (entries.isEmpty()) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Records one lookup.
+	 *
+	 * @param hit whether it was answered from the cache
+	 * @param nanos how long it took
+	 */
+	void record(boolean hit, long nanos) {
+		(hit ? hits : misses).increment();
+		latencies.record(nanos);
+	}
+
+	/**
+	 * @return the cache's statistics so far
+	 */
+	synchronized QueryCacheStats stats() {
+		return new QueryCacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), size,
+				latencies.counts());
+	}
+}
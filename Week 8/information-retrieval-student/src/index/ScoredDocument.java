@@ -0,0 +1,25 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import documents.DocumentId;
+
+/**
+ * A document paired with its relevance score for some query.
+ */
+public final class ScoredDocument {
+	public final DocumentId documentId;
+	public final double score;
+
+	public ScoredDocument(DocumentId documentId, double score) {
+		this.documentId = documentId;
+		this.score = score;
+	}
+
+	@Override
+	public String toString() {
+		return documentId + " (" + score + ")";
+	}
+}
@@ -5,21 +5,34 @@
 package index;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import javax.print.Doc;
-import javax.swing.text.Document;
-
-import comparators.TfIdfComparator;
 import documents.DocumentId;
 
 /**
@@ -35,22 +48,332 @@ import documents.DocumentId;
  * 
  * Lookups for documents can be done by term, and the most relevant document(s) to a specific term 
  * (as computed by tf-idf) can also be retrieved.
+ * 
+ * Documents are split into terms by a pluggable Tokenizer; by default, a WordTokenizer.
+ * 
+ * Internally, each document is given a dense int ordinal in the order it was added, and each 
+ * term maps to a compressed PostingList of (ordinal, term frequency) pairs.
+ * 
+ * An engine created with a directory can flush() its documents to immutable on-disk segments, 
+ * and an engine later created with the same directory serves them straight from memory-mapped 
+ * files (see MappedSegment), without rebuilding anything. Every file is forced to disk before the 
+ * manifest (or deletions file) that refers to it is atomically renamed into place, so a crash 
+ * leaves the directory as of the last completed flush or merge.
+ *
+ * New documents go into a small in-memory segment, which is sealed once it holds 
+ * setMaxBufferedDocuments() documents: written to disk if the engine has a directory, and kept 
+ * as it is otherwise. Whenever setMergeFactor() adjacent sealed segments are of about the same 
+ * size, a background thread merges them into one (as in Lucene's LogMergePolicy), so the number 
+ * of segments a lookup visits stays logarithmic in the number of documents.
+ *
+ * Documents can be removed or replaced. A removed document is only marked as deleted (a 
+ * tombstone), and disappears from every lookup at once; but it goes on counting towards N and M
+ * in inverseDocumentFrequency until its segment is merged (or, if it was still in memory, 
+ * flushed), which is when its postings are actually dropped.
+ *
+ * Every change publishes a new immutable snapshot of the index, and every lookup reads the latest
+ * snapshot without taking a lock. So any number of threads can look up documents, each against a
+ * consistent view, while other threads add documents and a merge runs; changes (which share one
+ * lock) still happen one at a time.
+ *
+ * Results of relevanceLookup are cached (see setQueryCacheSize), so repeated lookups of a 
+ * popular term do not rescore its postings.
+ *
+ * metrics() reports the size of the index, and the counts and latencies of adds, merges and 
+ * lookups.
  *
  * See:
  * - <https://en.wikipedia.org/wiki/Inverted_index>
  * - <https://en.wikipedia.org/wiki/Search_engine_(computing)> 
  * - <https://en.wikipedia.org/wiki/Tf%E2%80%93idf>
+ * - <https://en.wikipedia.org/wiki/Log-structured_merge-tree>
  * 
  * @author Marc Liberatore
  *
  */
 public class SearchEngine {
-	
+	private static final String MANIFEST = "segments";
+
+	private final Path directory;
+	private final List<SealedSegment> segments = new ArrayList<>();
+	private InMemorySegment buffer = new InMemorySegment();
+	private BitSet bufferDeleted = new BitSet();
+	private volatile IndexSnapshot snapshot;
+	private int nextSegment;
+	private int maxBufferedDocuments = 10000;
+	private int mergeFactor = 10;
+	private boolean indexPositions;
+	private ThreadPoolExecutor merges;
+	private final List<Future<?>> pendingMerges = new ArrayList<>();
+	private Exception mergeFailure;
+	private final EngineMetrics metrics = new EngineMetrics();
+	private volatile ResultCache cache = new ResultCache(1000);
+	private volatile Similarity similarity = Similarity.tfIdf();
+	private final Supplier<? extends Tokenizer> tokenizers;
+	// the tokenizer of the in-memory segment; replaced whenever the segment is sealed
+	private Tokenizer tokenizer;
+
+	/**
+	 * Creates an empty, in-memory search engine that splits documents with a WordTokenizer.
+	 */
+	public SearchEngine() {
+		this(WordTokenizer::new);
+	}
+
+	/**
+	 * Creates an empty, in-memory search engine.
+	 * 
+	 * @param tokenizers creates the tokenizers used to split documents into terms; one is 
+	 *        created for addDocument for each in-memory segment, and one per task for 
+	 *        addDocuments
+	 */
+	public SearchEngine(Supplier<? extends Tokenizer> tokenizers) {
+		this.directory = null;
+		this.tokenizers = tokenizers;
+		this.tokenizer = tokenizers.get();
+		publish();
+	}
+
+	/**
+	 * Creates a search engine stored in a directory, with a WordTokenizer.
+	 * 
+	 * @param directory
+	 * @throws IOException iff the directory or the segments in it cannot be read
+	 */
+	public SearchEngine(Path directory) throws IOException {
+		this(directory, WordTokenizer::new);
+	}
+
+	/**
+	 * Creates a search engine stored in a directory.
+	 * 
+	 * If the directory already holds segments flushed by an earlier engine, they are opened 
+	 * (memory-mapped) and served as they are, along with their deletions; otherwise the engine 
+	 * starts empty. The tokenizer should split documents the same way as the one that built the 
+	 * existing segments.
+	 * 
+	 * @param directory
+	 * @param tokenizers creates the tokenizers used to split documents into terms
+	 * @throws IOException iff the directory or the segments in it cannot be read
+	 */
+	public SearchEngine(Path directory, Supplier<? extends Tokenizer> tokenizers) throws IOException {
+		this.directory = directory;
+		this.tokenizers = tokenizers;
+		this.tokenizer = tokenizers.get();
+		Files.createDirectories(directory);
+		Path manifest = directory.resolve(MANIFEST);
+		if (Files.exists(manifest)) {
+			for (String name : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+				if (!name.isEmpty()) {
+					Path deletions = directory.resolve(name + ".del");
+					BitSet deleted = Files.exists(deletions) ? BitSet.valueOf(Files.readAllBytes(deletions)) : new BitSet();
+					segments.add(new SealedSegment(new MappedSegment(directory, name), deleted));
+					nextSegment = Math.max(nextSegment, Integer.parseInt(name.substring(1)) + 1);
+				}
+			}
+		}
+		publish();
+	}
+
+	/**
+	 * Sets how many documents the in-memory segment holds before it is sealed. The default is 
+	 * 10000.
+	 * 
+	 * @param maxBufferedDocuments
+	 * @throws IllegalArgumentException if maxBufferedDocuments is less than 1
+	 */
+	public synchronized void setMaxBufferedDocuments(int maxBufferedDocuments) {
+		if (maxBufferedDocuments < 1) {
+			throw new IllegalArgumentException("maxBufferedDocuments must be positive");
+		}
+		this.maxBufferedDocuments = maxBufferedDocuments;
+	}
+
+	/**
+	 * Sets how many segments of about the same size are merged at once. The default is 10.
+	 * 
+	 * @param mergeFactor
+	 * @throws IllegalArgumentException if mergeFactor is less than 2
+	 */
+	public synchronized void setMergeFactor(int mergeFactor) {
+		if (mergeFactor < 2) {
+			throw new IllegalArgumentException("mergeFactor must be at least 2");
+		}
+		this.mergeFactor = mergeFactor;
+	}
+
+	/**
+	 * Sets whether the positions of terms are indexed for documents added from now on. They are
+	 * not by default. Phrase and proximity queries (see Query.phrase and Query.near) only match 
+	 * documents indexed with positions; in exchange, positions take about as much space as the 
+	 * rest of the index.
+	 * 
+	 * @param indexPositions
+	 */
+	public synchronized void setIndexPositions(boolean indexPositions) {
+		this.indexPositions = indexPositions;
+	}
+
+	/**
+	 * Sets the scoring model used by relevanceLookup, relevanceStream, queryLookup and score. The 
+	 * default is Similarity.tfIdf(), which scores exactly as tfIdf does. Every statistic a 
+	 * similarity needs is kept up to date as documents are added, so switching takes effect at 
+	 * once, without reindexing.
+	 * 
+	 * Only tf-idf results are cached (see setQueryCacheSize): under other similarities, such as 
+	 * BM25, a result can change whenever the average document length does.
+	 * 
+	 * @param similarity
+	 * @throws IllegalArgumentException if similarity is null
+	 */
+	public synchronized void setSimilarity(Similarity similarity) {
+		if (similarity == null) {
+			throw new IllegalArgumentException("similarity must not be null");
+		}
+		this.similarity = similarity;
+	}
+
+	/**
+	 * @return the scoring model used by relevanceLookup, relevanceStream, queryLookup and score
+	 */
+	public Similarity getSimilarity() {
+		return similarity;
+	}
+
+	/**
+	 * Sets how many relevanceLookup results are cached, and clears the cache and its 
+	 * statistics. The default is 1000; 0 turns the cache off.
+	 * 
+	 * A cached result is dropped when a document containing its term is added, or a document 
+	 * in the result is removed. Each entry holds up to k document ids, so caching 
+	 * relevanceLookup(term), which returns every document with the term, can take a lot of memory.
+	 * 
+	 * @param entries
+	 * @throws IllegalArgumentException if entries is negative
+	 */
+	public synchronized void setQueryCacheSize(int entries) {
+		if (entries < 0) {
+			throw new IllegalArgumentException("entries must be non-negative");
+		}
+		cache = entries == 0 ? null : new ResultCache(entries);
+	}
+
+	/**
+	 * @return the statistics of the relevanceLookup cache since it was last cleared; all 0 if it
+	 *         is turned off
+	 */
+	public QueryCacheStats queryCacheStats() {
+		ResultCache c = cache;
+		return c == null ? new QueryCacheStats(0, 0, 0, 0, 0, new long[0]) : c.stats();
+	}
+
+	/**
+	 * Returns the engine's metrics: the size of its index (terms, postings, and estimated memory 
+	 * per structure), and counts and latencies of the documents it has added, the merges it has 
+	 * run and the lookups it has answered.
+	 * 
+	 * Recording the metrics costs a few uncontended increments per call, so they are always on. 
+	 * Measuring the index, though, takes time linear in its number of terms and documents, so this
+	 * method is meant to be called now and then, by a monitoring thread, say; it does not block 
+	 * lookups or changes.
+	 * 
+	 * @return the metrics, as of now
+	 */
+	public SearchEngineMetrics metrics() {
+		return metrics.snapshot(snapshot.measure(), queryCacheStats());
+	}
+
+	/**
+	 * Writes the documents added since the last flush to a new immutable segment in this 
+	 * engine's directory, and from then on serves them from the memory-mapped segment files.
+	 * Deletions made since the last flush are written too.
+	 * 
+	 * Once flush returns, the documents will be found by any engine later created with the 
+	 * same directory.
+	 * 
+	 * @throws IOException iff the segment cannot be written
+	 * @throws IllegalStateException if this engine was not created with a directory
+	 */
+	public synchronized void flush() throws IOException {
+		if (directory == null) {
+			throw new IllegalStateException("this search engine has no directory");
+		}
+		seal();
+		writeDeletions();
+		maybeMerge();
+	}
+
+	/**
+	 * Merges every segment, including the in-memory one, into a single segment, dropping all 
+	 * deleted documents. Waits for any background merge to finish first.
+	 * 
+	 * @throws IOException iff the merged segment cannot be written, or a background merge failed
+	 */
+	public void forceMerge() throws IOException {
+		while (true) {
+			awaitMerges();
+			synchronized (this) {
+				if (mergeFailure != null || !pendingMerges.isEmpty()) {
+					continue;
+				}
+				seal();
+				if (segments.size() > 1 || (segments.size() == 1 && !segments.get(0).deleted.isEmpty())) {
+					Merge merge = new Merge(new ArrayList<>(segments), nextName());
+					try {
+						merge.run(directory);
+					}
+					finally {
+						merge.release();
+					}
+					commit(merge);
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits until no background merge is running.
+	 * 
+	 * @throws IOException iff a background merge failed since the last call; the segments it was
+	 *         merging are left as they were
+	 */
+	public void awaitMerges() throws IOException {
+		while (true) {
+			Future<?> next;
+			synchronized (this) {
+				if (mergeFailure != null) {
+					Exception e = mergeFailure;
+					mergeFailure = null;
+					if (e instanceof IOException) {
+						throw (IOException) e;
+					}
+					throw (RuntimeException) e;
+				}
+				if (pendingMerges.isEmpty()) {
+					return;
+				}
+				next = pendingMerges.remove(0);
+			}
+			try {
+				next.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			catch (ExecutionException e) {
+				// runMerge records its own failures, so this is a bug
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+	}
+
 	/**
 	 * Inserts a document into the search engine for later analysis and retrieval.
 	 * 
 	 * The document is uniquely identified by a documentId; attempts to re-insert the same 
-	 * document are ignored.
+	 * document are ignored (use updateDocument to replace it).
 	 * 
 	 * The document is supplied as a Reader; this method stores the document contents for 
 	 * later analysis and retrieval.
@@ -59,26 +382,550 @@ public class SearchEngine {
 	 * @param reader
 	 * @throws IOException iff the reader throws an exception 
 	 */
-	public Map<String, Set<DocumentId>> map = new HashMap<String, Set<DocumentId>>();
-	public Map<DocumentId, Map<String,Integer>> frequency = new HashMap<DocumentId, Map<String,Integer>>();
-	public int size;
-	public void addDocument(DocumentId documentId, Reader reader) throws IOException {
-		Scanner s = new Scanner(reader);
-		s.useDelimiter("\\W+");
-		while (s.hasNext()){
-			String tempWord = s.next().toLowerCase();
-			Set<DocumentId> temp = map.getOrDefault(tempWord, new HashSet<>());
-			temp.add(documentId);
-			map.put(tempWord, temp);
-
-			int tempFreq = frequency.getOrDefault(documentId, new HashMap<>()).getOrDefault(tempWord,0);
-			Map<String, Integer> tempStringInt = frequency.getOrDefault(documentId, new HashMap<>());
-			tempFreq ++;
-			tempStringInt.put(tempWord, tempFreq);
-			frequency.put(documentId, tempStringInt);
-			
-		}	
-		size += 1;
+	public synchronized void addDocument(DocumentId documentId, Reader reader) throws IOException {
+		if (contains(documentId)) {
+			return;
+		}
+		long start = System.nanoTime();
+		Map<String, int[]> counts = countTerms(tokenizer, reader, indexPositions);
+		buffer.add(documentId, counts);
+		added();
+		invalidate(counts.keySet());
+		indexed(counts, start);
+	}
+
+	private void indexed(Map<String, int[]> counts, long start) {
+		long nanos = System.nanoTime() - start;
+		metrics.indexed(1, InMemorySegment.length(counts), nanos);
+		metrics.addDocument.record(nanos);
+	}
+
+	/**
+	 * Replaces a document, or adds it if it is not in the search engine.
+	 * 
+	 * @param documentId
+	 * @param reader
+	 * @throws IOException iff the reader throws an exception, in which case the old document is
+	 *         kept
+	 */
+	public synchronized void updateDocument(DocumentId documentId, Reader reader) throws IOException {
+		long start = System.nanoTime();
+		Map<String, int[]> counts = countTerms(tokenizer, reader, indexPositions);
+		boolean removed = remove(documentId);
+		buffer.add(documentId, counts);
+		added();
+		if (removed) {
+			invalidate(documentId);
+		}
+		invalidate(counts.keySet());
+		indexed(counts, start);
+	}
+
+	/**
+	 * Removes a document from the search engine.
+	 * 
+	 * @param documentId
+	 * @return true iff the document was in the search engine
+	 */
+	public synchronized boolean removeDocument(DocumentId documentId) {
+		if (remove(documentId)) {
+			publish();
+			invalidate(documentId);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Marks a document as deleted, without publishing the change.
+	 */
+	private boolean remove(DocumentId documentId) {
+		int ordinal = buffer.ordinal(documentId);
+		if (ordinal >= 0 && !bufferDeleted.get(ordinal)) {
+			bufferDeleted.set(ordinal);
+			return true;
+		}
+		for (SealedSegment segment : segments) {
+			ordinal = segment.liveOrdinal(documentId);
+			if (ordinal >= 0) {
+				segment.delete(ordinal);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Inserts many documents into the search engine, tokenizing them in parallel.
+	 * 
+	 * The result is exactly as if addDocument had been called for each entry, in the map's 
+	 * iteration order: documents already in the engine are ignored, and the in-memory segment is 
+	 * sealed each time it fills up, so it never holds more than maxBufferedDocuments.
+	 * 
+	 * The documents are split into runs that each fill the in-memory segment, and each run into 
+	 * contiguous shards, each of which is tokenized into a partial index on the common 
+	 * ForkJoinPool. Each partial index is itself split into groups by term, and each group is 
+	 * merged into the shared index by its own task, so no two tasks ever touch the same posting 
+	 * list. Every run is tokenized before any is added, so if any reader throws, no document from 
+	 * the batch is added.
+	 * 
+	 * @param batch the documents to add, keyed by id
+	 * @throws IOException iff one of the readers throws an exception, or a full in-memory segment 
+	 *         cannot be written
+	 */
+	public synchronized void addDocuments(Map<DocumentId, ? extends Reader> batch) throws IOException {
+		List<DocumentId> ids = new ArrayList<>();
+		List<Reader> readers = new ArrayList<>();
+		for (Map.Entry<DocumentId, ? extends Reader> e : batch.entrySet()) {
+			if (!contains(e.getKey())) {
+				ids.add(e.getKey());
+				readers.add(e.getValue());
+			}
+		}
+		if (ids.isEmpty()) {
+			return;
+		}
+		long start = System.nanoTime();
+
+		// the end of each run; the first fills what room the in-memory segment has left, and each 
+		// later one a new, empty segment
+		List<Integer> ends = new ArrayList<>();
+		int end = Math.min(ids.size(), Math.max(1, maxBufferedDocuments - buffer.documentCount()));
+		ends.add(end);
+		while (end < ids.size()) {
+			end = (int) Math.min(ids.size(), (long) end + maxBufferedDocuments);
+			ends.add(end);
+		}
+
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		float[] norms = new float[ids.size()];
+		int[] lengths = new int[ids.size()];
+		List<List<List<Map<String, PostingList>>>> runs = new ArrayList<>();
+		int from = 0;
+		for (int to : ends) {
+			// a run's documents get the ordinals after those already in its segment
+			int ordinal = from == 0 ? buffer.documentCount() : 0;
+			runs.add(tokenize(pool, readers, from, to, ordinal - from, norms, lengths));
+			from = to;
+		}
+
+		from = 0;
+		for (int r = 0; r < runs.size(); r++) {
+			int to = ends.get(r);
+			List<List<Map<String, PostingList>>> partials = runs.get(r);
+			merge(pool, partials);
+			for (int i = from; i < to; i++) {
+				buffer.register(ids.get(i), norms[i], lengths[i]);
+			}
+			added();
+			if (cache != null) {
+				Set<String> terms = new HashSet<>();
+				for (List<Map<String, PostingList>> partial : partials) {
+					for (Map<String, PostingList> group : partial) {
+						terms.addAll(group.keySet());
+					}
+				}
+				invalidate(terms);
+			}
+			from = to;
+		}
+		long tokens = 0;
+		for (int length : lengths) {
+			tokens += length;
+		}
+		long nanos = System.nanoTime() - start;
+		metrics.indexed(ids.size(), tokens, nanos);
+		metrics.addDocuments.record(nanos);
+	}
+
+	/**
+	 * Tokenizes the documents from (inclusive) to to (exclusive) of a batch into partial 
+	 * indexes, one per shard, each split into groups by term. Their postings are for the 
+	 * ordinals of the documents plus offset, and their norms and lengths are stored at their 
+	 * indexes in the batch.
+	 */
+	private List<List<Map<String, PostingList>>> tokenize(ForkJoinPool pool, List<Reader> readers, int from, int to,
+			int offset, float[] norms, int[] lengths) throws IOException {
+		int groups = pool.getParallelism();
+		int shards = Math.min(to - from, 4 * pool.getParallelism());
+		boolean positions = indexPositions;
+		List<Callable<List<Map<String, PostingList>>>> tokenizeTasks = new ArrayList<>();
+		for (int s = 0; s < shards; s++) {
+			int shardFrom = from + (int) ((long) s * (to - from) / shards);
+			int shardTo = from + (int) ((long) (s + 1) * (to - from) / shards);
+			tokenizeTasks.add(() -> {
+				List<Map<String, PostingList>> partial = new ArrayList<>();
+				for (int g = 0; g < groups; g++) {
+					partial.add(new HashMap<>());
+				}
+				Tokenizer shardTokenizer = tokenizers.get();
+				for (int i = shardFrom; i < shardTo; i++) {
+					Map<String, int[]> counts;
+					try {
+						counts = countTerms(shardTokenizer, readers.get(i), positions);
+					}
+					catch (IOException e) {
+						// ForkJoinPool would wrap a checked exception in a plain RuntimeException
+						throw new UncheckedIOException(e);
+					}
+					norms[i] = InMemorySegment.norm(counts);
+					lengths[i] = InMemorySegment.length(counts);
+					for (Map.Entry<String, int[]> e : counts.entrySet()) {
+						Map<String, PostingList> group = partial.get(group(e.getKey(), groups));
+						PostingList list = group.get(e.getKey());
+						if (list == null) {
+							list = new PostingList();
+							group.put(e.getKey(), list);
+						}
+						int[] count = e.getValue();
+						list.add(offset + i, count[0], count.length > 1 ? count : null, 1);
+					}
+				}
+				return partial;
+			});
+		}
+		return invokeAll(pool, tokenizeTasks);
+	}
+
+	/**
+	 * Merges the partial indexes of a run into the in-memory segment, one task per group.
+	 */
+	private void merge(ForkJoinPool pool, List<List<Map<String, PostingList>>> partials) throws IOException {
+		// shards are merged in order, so each posting list is still appended in ordinal order
+		List<Callable<Map<String, PostingList>>> mergeTasks = new ArrayList<>();
+		for (int g = 0; g < pool.getParallelism(); g++) {
+			int group = g;
+			mergeTasks.add(() -> {
+				Map<String, PostingList> touched = new HashMap<>();
+				for (List<Map<String, PostingList>> partial : partials) {
+					for (Map.Entry<String, PostingList> e : partial.get(group).entrySet()) {
+						PostingList list = buffer.postingList(e.getKey());
+						if (list == null) {
+							list = touched.get(e.getKey());
+						}
+						if (list == null) {
+							touched.put(e.getKey(), e.getValue());
+						}
+						else {
+							list.addAll(e.getValue());
+							touched.put(e.getKey(), list);
+						}
+					}
+				}
+				return touched;
+			});
+		}
+		for (Map<String, PostingList> touched : invokeAll(pool, mergeTasks)) {
+			buffer.putPostingLists(touched);
+		}
+	}
+
+	/**
+	 * Drops the cached results of terms in added documents. Called after the documents are 
+	 * published, so that a lookup cannot cache a result from an older snapshot afterwards.
+	 */
+	private void invalidate(Iterable<String> terms) {
+		ResultCache c = cache;
+		if (c != null) {
+			c.invalidate(terms);
+		}
+	}
+
+	/**
+	 * Drops the cached results that hold a removed document. Called after the removal is 
+	 * published.
+	 */
+	private void invalidate(DocumentId removed) {
+		ResultCache c = cache;
+		if (c != null) {
+			c.invalidate(removed);
+		}
+	}
+
+	/**
+	 * @return true iff a document is in the search engine, and not deleted
+	 */
+	private boolean contains(DocumentId documentId) {
+		int ordinal = buffer.ordinal(documentId);
+		if (ordinal >= 0 && !bufferDeleted.get(ordinal)) {
+			return true;
+		}
+		for (SealedSegment segment : segments) {
+			if (segment.liveOrdinal(documentId) >= 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Called after documents are added to the in-memory segment; seals it if it is full, and 
+	 * publishes them.
+	 */
+	private void added() throws IOException {
+		if (buffer.documentCount() >= maxBufferedDocuments) {
+			seal();
+			maybeMerge();
+		}
+		else {
+			publish();
+		}
+	}
+
+	/**
+	 * Seals the in-memory segment: writes its live documents to a new segment on disk if this 
+	 * engine has a directory, and keeps it (with its deletions) as a sealed segment otherwise.
+	 */
+	private void seal() throws IOException {
+		if (bufferDeleted.cardinality() < buffer.documentCount()) {
+			if (directory != null) {
+				String name = nextName();
+				try (SegmentWriter writer = new SegmentWriter(directory, name)) {
+					SegmentMerger.merge(List.of(buffer), List.of(bufferDeleted), writer);
+				}
+				segments.add(new SealedSegment(new MappedSegment(directory, name), new BitSet()));
+				writeManifest();
+			}
+			else {
+				segments.add(new SealedSegment(buffer.publish(), bufferDeleted));
+			}
+		}
+		buffer = new InMemorySegment();
+		bufferDeleted = new BitSet();
+		// a fresh tokenizer, so that one caching the terms it has seen (as WordTokenizer does) 
+		// only ever holds those of a single segment
+		tokenizer = tokenizers.get();
+		publish();
+	}
+
+	/**
+	 * @return the name for a new on-disk segment, or null if this engine has no directory
+	 */
+	private String nextName() {
+		return directory == null ? null : "_" + nextSegment++;
+	}
+
+	/**
+	 * Starts a background merge for each run of mergeFactor adjacent segments at the same level,
+	 * where a segment's level is the number of times its live document count can be divided by
+	 * mergeFactor before it fits in the in-memory segment.
+	 */
+	private void maybeMerge() {
+		if (mergeFailure != null) {
+			return;
+		}
+		int run = 0;
+		int runLevel = -1;
+		for (int i = 0; i < segments.size(); i++) {
+			SealedSegment segment = segments.get(i);
+			int level = segment.merging ? -1 : level(segment.segment.documentCount() - segment.deleted.cardinality());
+			if (level >= 0 && level == runLevel) {
+				run++;
+			}
+			else {
+				run = level >= 0 ? 1 : 0;
+				runLevel = level;
+			}
+			if (run == mergeFactor) {
+				startMerge(new Merge(new ArrayList<>(segments.subList(i - run + 1, i + 1)), nextName()));
+				run = 0;
+				runLevel = -1;
+			}
+		}
+	}
+
+	private int level(int documents) {
+		int level = 0;
+		for (long limit = maxBufferedDocuments; documents > limit; limit *= mergeFactor) {
+			level++;
+		}
+		return level;
+	}
+
+	private void startMerge(Merge merge) {
+		if (merges == null) {
+			merges = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+				Thread thread = new Thread(r, "SearchEngine merge");
+				thread.setDaemon(true);
+				return thread;
+			});
+			merges.allowCoreThreadTimeOut(true);
+		}
+		pendingMerges.removeIf(Future::isDone);
+		pendingMerges.add(merges.submit(() -> runMerge(merge)));
+	}
+
+	/**
+	 * Runs a merge on the merge thread, without holding the lock, then commits it.
+	 */
+	private void runMerge(Merge merge) {
+		try {
+			merge.run(directory);
+			synchronized (this) {
+				merge.release();
+				commit(merge);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			synchronized (this) {
+				merge.release();
+				mergeFailure = e;
+			}
+			if (merge.name != null && !merge.committed) {
+				deleteSegmentFiles(merge.name);
+			}
+		}
+	}
+
+	/**
+	 * Replaces a merge's source segments with its result. Documents deleted from the sources 
+	 * while the merge was running are deleted from the result too.
+	 */
+	private void commit(Merge merge) throws IOException {
+		BitSet deleted = new BitSet();
+		for (int i = 0; i < merge.sources.size(); i++) {
+			BitSet now = merge.sources.get(i).deleted;
+			BitSet then = merge.deleted.get(i);
+			for (int d = now.nextSetBit(0); d >= 0; d = now.nextSetBit(d + 1)) {
+				if (then == null || !then.get(d)) {
+					deleted.set(merge.docMaps[i][d]);
+				}
+			}
+		}
+		SealedSegment merged = new SealedSegment(merge.merged, deleted);
+		merged.dirty = !deleted.isEmpty();
+		int start = segments.indexOf(merge.sources.get(0));
+		segments.subList(start, start + merge.sources.size()).clear();
+		segments.add(start, merged);
+		merge.committed = true;
+		metrics.merged(merge.nanos);
+		publish();
+		if (directory != null) {
+			writeDeletions();
+			writeManifest();
+			for (SealedSegment source : merge.sources) {
+				deleteSegmentFiles(((MappedSegment) source.segment).name());
+			}
+		}
+		maybeMerge();
+	}
+
+	private void writeManifest() throws IOException {
+		List<String> names = new ArrayList<>();
+		for (SealedSegment segment : segments) {
+			names.add(((MappedSegment) segment.segment).name());
+		}
+		Path temp = directory.resolve(MANIFEST + ".tmp");
+		Files.write(temp, names, StandardCharsets.UTF_8);
+		SegmentWriter.force(temp);
+		SegmentWriter.forceDirectory(directory);
+		Files.move(temp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		SegmentWriter.forceDirectory(directory);
+	}
+
+	/**
+	 * Writes the deletions of each on-disk segment that has new ones to NAME.del.
+	 */
+	private void writeDeletions() throws IOException {
+		boolean written = false;
+		for (SealedSegment segment : segments) {
+			if (segment.dirty) {
+				String name = ((MappedSegment) segment.segment).name();
+				Path temp = directory.resolve(name + ".del.tmp");
+				Files.write(temp, segment.deleted.toByteArray());
+				SegmentWriter.force(temp);
+				Files.move(temp, directory.resolve(name + ".del"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				segment.dirty = false;
+				written = true;
+			}
+		}
+		if (written) {
+			SegmentWriter.forceDirectory(directory);
+		}
+	}
+
+	private void deleteSegmentFiles(String name) {
+		for (String extension : new String[] {".tdict", ".post", ".docs", ".norms", ".del"}) {
+			try {
+				Files.deleteIfExists(directory.resolve(name + extension));
+			}
+			catch (IOException e) {
+				// the segment is no longer in the manifest, so a leftover file is harmless
+			}
+		}
+	}
+
+	/**
+	 * Publishes a snapshot of the current segments, for lookups to read. Only called with the 
+	 * lock held.
+	 */
+	private void publish() {
+		Segment[] all = new Segment[segments.size() + 1];
+		BitSet[] deleted = new BitSet[segments.size() + 1];
+		for (int i = 0; i < segments.size(); i++) {
+			all[i] = segments.get(i).segment;
+			deleted[i] = segments.get(i).published();
+		}
+		all[segments.size()] = buffer.publish();
+		deleted[segments.size()] = bufferDeleted.isEmpty() ? null : (BitSet) bufferDeleted.clone();
+		snapshot = new IndexSnapshot(all, deleted);
+	}
+
+	/**
+	 * Tokenizes a document into terms, and counts the occurrences of each. If positions is true,
+	 * each count is followed by the positions (token numbers, from 0) of the occurrences.
+	 */
+	private static Map<String, int[]> countTerms(Tokenizer tokenizer, Reader reader, boolean positions) throws IOException {
+		Map<String, int[]> counts = new HashMap<>();
+		int[] position = new int[1];
+		tokenizer.tokenize(reader, term -> {
+			int[] count = counts.get(term);
+			if (count == null) {
+				count = new int[positions ? 2 : 1];
+				counts.put(term, count);
+			}
+			else if (positions && count[0] + 1 == count.length) {
+				count = Arrays.copyOf(count, count.length * 2);
+				counts.put(term, count);
+			}
+			count[0]++;
+			if (positions) {
+				count[count[0]] = position[0];
+			}
+			position[0]++;
+		});
+		return counts;
+	}
+
+	private static int group(String term, int groups) {
+		return (term.hashCode() & 0x7fffffff) % groups;
+	}
+
+	private static <T> List<T> invokeAll(ForkJoinPool pool, List<Callable<T>> tasks) throws IOException {
+		List<T> results = new ArrayList<>();
+		for (Future<T> future : pool.invokeAll(tasks)) {
+			try {
+				results.add(future.get());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+		return results;
 	}
 	
 	/**
@@ -88,7 +935,13 @@ public class SearchEngine {
 	 * @return the set of DocumentIds that contain a given term
 	 */
 	public Set<DocumentId> indexLookup(String term) {
-		return map.getOrDefault(term.toLowerCase(), new HashSet<>());
+		IndexSnapshot index = snapshot;
+		Set<DocumentId> result = new HashSet<>();
+		PostingsCursor cursor = index.cursor(term.toLowerCase());
+		while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+			result.add(index.documentId(cursor.ordinal()));
+		}
+		return result;
 	}
 	
 	/**
@@ -103,10 +956,16 @@ public class SearchEngine {
 	 * @throws IllegalArgumentException if the documentId has not been added to the engine
 	 */
 	public int termFrequency(DocumentId documentId, String term) throws IllegalArgumentException {
-		if (!frequency.containsKey(documentId)){
+		return termFrequency(snapshot, documentId, term);
+	}
+
+	private static int termFrequency(IndexSnapshot index, DocumentId documentId, String term) {
+		int ordinal = index.ordinal(documentId);
+		if (ordinal < 0){
 			throw new IllegalArgumentException();
 		}
-		return frequency.get(documentId).getOrDefault(term, 0);
+		PostingsCursor cursor = index.cursor(term.toLowerCase());
+		return cursor.advance(ordinal) == ordinal ? cursor.frequency() : 0;
 	}
 	
 	/**
@@ -116,13 +975,16 @@ public class SearchEngine {
 	 * N is the number of documents in total, and M
 	 * is the number of documents where the term appears.
 	 * 
+	 * Deleted documents are counted in both until their segment is merged.
+	 * 
+	 * The result is cached until the next change to the index, so repeated calls (as from 
+	 * TfIdfComparator) cost a hash lookup.
+	 * 
 	 * @param term
 	 * @return the inverse document frequency of term 
 	 */
 	public double inverseDocumentFrequency(String term) {
-		double n = size;
-		double m = indexLookup(term).size();
-		return Math.log((1+n)/(1+m));
+		return snapshot.idf(term.toLowerCase());
 	}
 	
 	/**
@@ -136,26 +998,389 @@ public class SearchEngine {
 	 * @throws IllegalArgumentException if the documentId has not been added to the engine
 	 */
 	public double tfIdf(DocumentId documentId, String term) throws IllegalArgumentException {
-		return termFrequency(documentId, term)*inverseDocumentFrequency(term);
+		IndexSnapshot index = snapshot;
+		return termFrequency(index, documentId, term)*index.idf(term.toLowerCase());
+	}
+
+	/**
+	 * Returns the cosine-normalized tfidf score of a particular term for a particular document.
+	 * 
+	 * This is the tfidf multiplied by the document's norm, 1 / sqrt(the sum of the squares of 
+	 * the term frequencies of every term in the document), so that a long document does not 
+	 * outscore a short one just by repeating more words.
+	 * 
+	 * @param documentId
+	 * @param term
+	 * @return the normalized tfidf of the term/document
+	 * @throws IllegalArgumentException if the documentId has not been added to the engine
+	 */
+	public double normalizedTfIdf(DocumentId documentId, String term) throws IllegalArgumentException {
+		IndexSnapshot index = snapshot;
+		int ordinal = index.ordinal(documentId);
+		if (ordinal < 0) {
+			throw new IllegalArgumentException();
+		}
+		return termFrequency(index, documentId, term) * index.idf(term.toLowerCase()) * index.norm(ordinal);
 	}
 	
+	/**
+	 * Returns the score of a particular term for a particular document under the engine's 
+	 * similarity (see setSimilarity); by default, the same as tfIdf.
+	 * 
+	 * @param documentId
+	 * @param term
+	 * @return the document's score for the term
+	 * @throws IllegalArgumentException if the documentId has not been added to the engine
+	 */
+	public double score(DocumentId documentId, String term) throws IllegalArgumentException {
+		IndexSnapshot index = snapshot;
+		String lowercase = term.toLowerCase();
+		int ordinal = index.ordinal(documentId);
+		if (ordinal < 0) {
+			throw new IllegalArgumentException();
+		}
+		Similarity.Scorer scorer = scorer(index, lowercase, similarity);
+		PostingsCursor cursor = index.cursor(lowercase);
+		if (cursor.advance(ordinal) != ordinal) {
+			return scorer.score(0, index.length(ordinal), index.norm(ordinal));
+		}
+		return scorer.score(cursor.frequency(), cursor.length(), cursor.norm());
+	}
+
+	private static Similarity.Scorer scorer(IndexSnapshot index, String lowercase, Similarity similarity) {
+		return similarity.scorer(index.maxOrdinal(), index.documentFrequency(lowercase), index.averageLength());
+	}
+
 	/**
 	 * Returns a sorted list of documents, most relevant to least relevant, for the given term.
 	 * 
-	 * A document with a larger tfidf score is more relevant than a document with a lower tfidf score.
+	 * A document with a larger score, by the engine's configured Similarity (see setSimilarity), 
+	 * is more relevant than a document with a lower score.
 	 * 
 	 * Each document in the returned list must contain the term.
 	 * 
 	 * @param term
-	 * @return a list of documents sorted in descending order by tfidf
+	 * @return a list of documents sorted in descending order by score
 	 */
 	public List<DocumentId> relevanceLookup(String term) {
-		List<DocumentId> result = new ArrayList<>();
-		for (DocumentId i: indexLookup(term)){
-			result.add(i);
+		return relevanceLookup(term, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the k most relevant documents for the given term, most relevant to least relevant.
+	 * 
+	 * The order is the same as relevanceLookup(term), including the tie-break on document id, but 
+	 * each posting is scored only once and only the best k are kept (see TopKCollector).
+	 * 
+	 * Results are cached; a cached result costs a hash lookup and a copy.
+	 * 
+	 * @param term
+	 * @param k the maximum number of documents to return
+	 * @return at most k documents sorted in descending order by score
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public List<DocumentId> relevanceLookup(String term, int k) {
+		long start = System.nanoTime();
+		List<DocumentId> result = cachedRelevanceLookup(term, k, start);
+		metrics.relevanceLookup.record(System.nanoTime() - start);
+		return result;
+	}
+
+	private List<DocumentId> cachedRelevanceLookup(String term, int k, long start) {
+		ResultCache c = cache;
+		Similarity s = similarity;
+		if (c == null || s != Similarity.tfIdf()) {
+			return relevanceLookup(term, k, s);
+		}
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be non-negative");
+		}
+		String lowercase = term.toLowerCase();
+		// reserve the key before reading the snapshot; see ResultCache
+		ResultCache.Entry entry = c.get(lowercase, k);
+		IndexSnapshot index = snapshot;
+		boolean zeroIdf = index.idf(lowercase) == 0;
+		List<DocumentId> result;
+		boolean hit = entry != null && entry.results != null && entry.zeroIdf == zeroIdf;
+		if (hit) {
+			result = new ArrayList<>(entry.results);
+		}
+		else {
+			result = relevanceLookup(index, lowercase, k, s);
+			if (entry != null) {
+				c.put(lowercase, k, entry, new ArrayList<>(result), zeroIdf);
+			}
+		}
+		c.record(hit, System.nanoTime() - start);
+		return result;
+	}
+
+	/**
+	 * Returns the k most relevant documents for the given term by normalizedTfIdf, most relevant 
+	 * to least relevant. Ties are broken by document id, as in relevanceLookup.
+	 * 
+	 * @param term
+	 * @param k the maximum number of documents to return
+	 * @return at most k documents sorted in descending order by normalized tfidf
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public List<DocumentId> normalizedRelevanceLookup(String term, int k) {
+		return relevanceLookup(term, k, Similarity.normalizedTfIdf());
+	}
+
+	/**
+	 * Returns the documents containing a term with their scores (by the engine's similarity), most
+	 * relevant to least relevant, as a lazy stream. The order is the same as relevanceLookup(term).
+	 * 
+	 * The term's postings are scored in one pass, into primitive arrays, but they are only sorted
+	 * as the stream is read (see RankedIterator): reading the first k documents costs 
+	 * O(n + k log n), and no DocumentId or ScoredDocument is created for a document that is never 
+	 * read. So, for example, relevanceStream(term).skip(20).limit(10) reads a third page of 
+	 * results cheaply. The stream reads the index as it was when this method was called.
+	 * 
+	 * @param term
+	 * @return the scored documents containing the term, in descending order by score
+	 */
+	public Stream<ScoredDocument> relevanceStream(String term) {
+		IndexSnapshot index = snapshot;
+		String lowercase = term.toLowerCase();
+		PostingsCursor cursor = index.cursor(lowercase);
+		Similarity.Scorer scorer = scorer(index, lowercase, similarity);
+		int[] ordinals = new int[(int) Math.min(cursor.cost(), Integer.MAX_VALUE - 8)];
+		double[] scores = new double[ordinals.length];
+		int size = 0;
+		while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+			ordinals[size] = cursor.ordinal();
+			scores[size] = scorer.score(cursor.frequency(), cursor.length(), cursor.norm());
+			size++;
+		}
+		RankedIterator ranked = new RankedIterator(ordinals, scores, size, index::documentId);
+		return StreamSupport.stream(Spliterators.spliterator(ranked, size,
+				Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+	}
+
+	private List<DocumentId> relevanceLookup(String term, int k, Similarity similarity) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be non-negative");
+		}
+		return relevanceLookup(snapshot, term.toLowerCase(), k, similarity);
+	}
+
+	/**
+	 * The term's statistics are looked up once, in the scorer, so scoring a posting costs a few
+	 * arithmetic operations (one multiply, for tf-idf), plus reads of the segment's norms and 
+	 * lengths.
+	 */
+	private static List<DocumentId> relevanceLookup(IndexSnapshot index, String lowercase, int k, Similarity similarity) {
+		PostingsCursor cursor = index.cursor(lowercase);
+		Similarity.Scorer scorer = scorer(index, lowercase, similarity);
+		TopKCollector collector = new TopKCollector(index::documentId, k, cursor.cost());
+		while (cursor.next() != PostingsCursor.NO_MORE_DOCS) {
+			collector.collect(cursor.ordinal(), scorer.score(cursor.frequency(), cursor.length(), cursor.norm()));
+		}
+		return toDocumentIds(collector.results());
+	}
+
+	/**
+	 * Returns the documents matching a boolean query, most relevant to least relevant.
+	 * 
+	 * The query is parsed with Query.parse(String); for example, "tomato AND (sauce OR paste) 
+	 * NOT pizza".
+	 * 
+	 * @param query
+	 * @return a list of matching documents sorted in descending order by summed score
+	 * @throws IllegalArgumentException if the query is malformed
+	 */
+	public List<DocumentId> queryLookup(String query) {
+		return queryLookup(Query.parse(query), Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the k most relevant documents matching a boolean query, most relevant to least
+	 * relevant.
+	 * 
+	 * A document's relevance is the sum of the scores (by the engine's similarity; tf-idf by 
+	 * default) of the query's terms that it contains, not counting terms that appear only under 
+	 * a NOT. Ties are broken by document id, as in relevanceLookup.
+	 * 
+	 * Conjunctions are answered by intersecting posting lists, rarest first, using skip entries 
+	 * to jump through the longer lists; so an AND of a rare and a common term costs about the 
+	 * size of the rare term's list.
+	 * 
+	 * A plain OR of terms is answered with MaxScore dynamic pruning: once k documents have been
+	 * found, documents that cannot outscore them are skipped without being fully scored.
+	 * 
+	 * @param query
+	 * @param k the maximum number of documents to return
+	 * @return at most k matching documents sorted in descending order by summed score
+	 * @throws IllegalArgumentException if k is negative
+	 */
+	public List<DocumentId> queryLookup(Query query, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be non-negative");
+		}
+		long start = System.nanoTime();
+		List<DocumentId> result = queryLookup(snapshot, query, k);
+		metrics.queryLookup.record(System.nanoTime() - start);
+		return result;
+	}
+
+	private List<DocumentId> queryLookup(IndexSnapshot index, Query query, int k) {
+		List<String> terms = new ArrayList<>(query.scoringTerms());
+		PostingsCursor[] cursors = new PostingsCursor[terms.size()];
+		Similarity.Scorer[] scorers = new Similarity.Scorer[terms.size()];
+		Similarity s = similarity;
+		for (int i = 0; i < cursors.length; i++) {
+			cursors[i] = index.cursor(terms.get(i));
+			scorers[i] = scorer(index, terms.get(i), s);
+		}
+		if (isDisjunctionOfTerms(query)) {
+			long cost = 0;
+			for (PostingsCursor cursor : cursors) {
+				cost += cursor.cost();
+			}
+			TopKCollector collector = new TopKCollector(index::documentId, k, cost);
+			long read = MaxScore.collect(cursors, scorers, collector);
+			metrics.rankedPostings.add(cost);
+			metrics.skippedPostings.add(cost - read);
+			return toDocumentIds(collector.results());
+		}
+		DocIterator matches = query.iterator(index);
+		TopKCollector collector = new TopKCollector(index::documentId, k, matches.cost());
+		for (int ordinal = matches.next(); ordinal != DocIterator.NO_MORE_DOCS; ordinal = matches.next()) {
+			double score = 0;
+			for (int i = 0; i < cursors.length; i++) {
+				if (cursors[i].advance(ordinal) == ordinal) {
+					score += scorers[i].score(cursors[i].frequency(), cursors[i].length(), cursors[i].norm());
+				}
+			}
+			collector.collect(ordinal, score);
+		}
+		return toDocumentIds(collector.results());
+	}
+
+	private static boolean isDisjunctionOfTerms(Query query) {
+		if (!(query instanceof Query.Or)) {
+			return false;
+		}
+		for (Query q : ((Query.Or) query).queries) {
+			if (!(q instanceof Query.Term)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the total number of postings of the terms of every pruned (OR of terms) query
+	 */
+	long rankedPostings() {
+		return metrics.rankedPostings.sum();
+	}
+
+	/**
+	 * @return how many of rankedPostings() were skipped by MaxScore without being read
+	 */
+	long skippedPostings() {
+		return metrics.skippedPostings.sum();
+	}
+
+	private static List<DocumentId> toDocumentIds(List<ScoredDocument> scored) {
+		List<DocumentId> result = new ArrayList<>(scored.size());
+		for (ScoredDocument d : scored) {
+			result.add(d.documentId);
 		}
-		Comparator<DocumentId> something = new TfIdfComparator(this, term);
-		result.sort(something);
 		return result;
 	}
+
+	/**
+	 * A sealed segment, with the ordinals of its deleted documents.
+	 */
+	private static final class SealedSegment {
+		final Segment segment;
+		final BitSet deleted;
+		private BitSet published;
+		/** whether deleted has changed since it was last written to disk */
+		boolean dirty;
+		/** whether a merge is rewriting this segment */
+		boolean merging;
+
+		SealedSegment(Segment segment, BitSet deleted) {
+			this.segment = segment;
+			this.deleted = deleted;
+		}
+
+		/**
+		 * @return the ordinal of a document in this segment, or -1 if it is absent or deleted
+		 */
+		int liveOrdinal(DocumentId documentId) {
+			int ordinal = segment.ordinal(documentId);
+			return ordinal >= 0 && !deleted.get(ordinal) ? ordinal : -1;
+		}
+
+		void delete(int ordinal) {
+			deleted.set(ordinal);
+			published = null;
+			dirty = true;
+		}
+
+		/**
+		 * @return a copy of the deletions that is never modified, or null if there are none
+		 */
+		BitSet published() {
+			if (published == null && !deleted.isEmpty()) {
+				published = (BitSet) deleted.clone();
+			}
+			return published;
+		}
+	}
+
+	/**
+	 * A merge of adjacent sealed segments. The sources and their deletions are captured when the
+	 * merge is created, under the engine's lock, so that run() can read them without it.
+	 */
+	private static final class Merge {
+		final List<SealedSegment> sources;
+		final List<BitSet> deleted = new ArrayList<>();
+		final String name;
+		Segment merged;
+		int[][] docMaps;
+		long nanos;
+		boolean committed;
+
+		Merge(List<SealedSegment> sources, String name) {
+			this.sources = sources;
+			this.name = name;
+			for (SealedSegment source : sources) {
+				source.merging = true;
+				deleted.add(source.published());
+			}
+		}
+
+		void run(Path directory) throws IOException {
+			long start = System.nanoTime();
+			List<Segment> segments = new ArrayList<>();
+			for (SealedSegment source : sources) {
+				segments.add(source.segment);
+			}
+			if (directory == null) {
+				InMemorySegment result = new InMemorySegment();
+				docMaps = SegmentMerger.merge(segments, deleted, result);
+				merged = result.publish();
+			}
+			else {
+				try (SegmentWriter writer = new SegmentWriter(directory, name)) {
+					docMaps = SegmentMerger.merge(segments, deleted, writer);
+				}
+				merged = new MappedSegment(directory, name);
+			}
+			nanos = System.nanoTime() - start;
+		}
+
+		void release() {
+			for (SealedSegment source : sources) {
+				source.merging = false;
+			}
+		}
+	}
 }
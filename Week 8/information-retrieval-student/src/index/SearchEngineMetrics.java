@@ -0,0 +1,291 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.Locale;
+
+/**
+ * The size of a SearchEngine's index, and what it has done since it was created, as of one
+ * moment.
+ *
+ * Counts of work done (documents added, lookups answered, merges) cover the engine's whole
+ * life. Sizes describe one snapshot of the index: deleted documents count until their segment
+ * is merged, and a term counts once per segment it appears in. Latency percentiles are accurate
+ * to within 12.5% (see QueryCacheStats.latencyPercentile), and heap sizes are estimates.
+ *
+ * @see SearchEngine#metrics()
+ */
+public final class SearchEngineMetrics {
+	private final IndexSize size;
+	private final long documentsAdded;
+	private final long tokensIndexed;
+	private final long indexingNanos;
+	private final long[] addDocumentLatencies;
+	private final long[] addDocumentsLatencies;
+	private final long merges;
+	private final long mergeNanos;
+	private final long[] relevanceLookupLatencies;
+	private final long[] queryLookupLatencies;
+	private final long rankedPostings;
+	private final long skippedPostings;
+	private final QueryCacheStats queryCache;
+
+	SearchEngineMetrics(IndexSize size, long documentsAdded, long tokensIndexed, long indexingNanos,
+			long[] addDocumentLatencies, long[] addDocumentsLatencies, long merges, long mergeNanos, long[] relevanceLookupLatencies,
+			long[] queryLookupLatencies, long rankedPostings, long skippedPostings, QueryCacheStats queryCache) {
+		this.size = size;
+		this.documentsAdded = documentsAdded;
+		this.tokensIndexed = tokensIndexed;
+		this.indexingNanos = indexingNanos;
+		this.addDocumentLatencies = addDocumentLatencies;
+		this.addDocumentsLatencies = addDocumentsLatencies;
+		this.merges = merges;
+		this.mergeNanos = mergeNanos;
+		this.relevanceLookupLatencies = relevanceLookupLatencies;
+		this.queryLookupLatencies = queryLookupLatencies;
+		this.rankedPostings = rankedPostings;
+		this.skippedPostings = skippedPostings;
+		this.queryCache = queryCache;
+	}
+
+	/**
+	 * @return the number of segments that hold any documents, including the in-memory one
+	 */
+	public int segmentCount() {
+		return size.segments;
+	}
+
+	/**
+	 * @return the number of documents in the index, including deleted documents not yet merged
+	 *         away
+	 */
+	public long documentCount() {
+		return size.documents;
+	}
+
+	/**
+	 * @return the number of deleted documents not yet merged away
+	 */
+	public long deletedDocumentCount() {
+		return size.deletedDocuments;
+	}
+
+	/**
+	 * @return the number of entries in the segments' term dictionaries: a term counts once per
+	 *         segment it appears in
+	 */
+	public long termCount() {
+		return size.terms;
+	}
+
+	/**
+	 * @return the number of (document, term) postings
+	 */
+	public long postingCount() {
+		return size.postings;
+	}
+
+	/**
+	 * @return the mean number of postings per dictionary entry, or 0 if there are none
+	 */
+	public double meanPostingsPerTerm() {
+		return size.terms == 0 ? 0 : (double) size.postings / size.terms;
+	}
+
+	/**
+	 * Returns a percentile of the number of postings per dictionary entry; for example,
+	 * postingsPerTermPercentile(50) is the document frequency of the median term.
+	 *
+	 * @param percentile between 0 and 100
+	 * @return the number of postings, or 0 if there are no terms
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	public long postingsPerTermPercentile(double percentile) {
+		return LatencyHistogram.percentile(size.postingsPerTerm, percentile);
+	}
+
+	/**
+	 * @return the estimated heap used by the posting lists of in-memory segments, in bytes
+	 */
+	public long postingsHeapBytes() {
+		return size.postingsHeap;
+	}
+
+	/**
+	 * @return the estimated heap used by the term dictionaries of in-memory segments, in bytes
+	 */
+	public long dictionaryHeapBytes() {
+		return size.dictionaryHeap;
+	}
+
+	/**
+	 * @return the estimated heap used by the document ids, norms and lengths of in-memory
+	 *         segments, in bytes
+	 */
+	public long documentsHeapBytes() {
+		return size.documentsHeap;
+	}
+
+	/**
+	 * @return the estimated heap used by the index, in bytes: the sum of the three above
+	 */
+	public long heapBytes() {
+		return size.postingsHeap + size.dictionaryHeap + size.documentsHeap;
+	}
+
+	/**
+	 * @return the size of the memory-mapped segment files, which are outside the heap, in bytes
+	 */
+	public long mappedBytes() {
+		return size.mapped;
+	}
+
+	/**
+	 * @return the number of documents added (or replaced) by addDocument, updateDocument and
+	 *         addDocuments
+	 */
+	public long documentsAdded() {
+		return documentsAdded;
+	}
+
+	/**
+	 * @return the number of tokens in those documents
+	 */
+	public long tokensIndexed() {
+		return tokensIndexed;
+	}
+
+	/**
+	 * @return the total time spent in addDocument, updateDocument and addDocuments, in
+	 *         nanoseconds, including any segment they sealed
+	 */
+	public long indexingNanos() {
+		return indexingNanos;
+	}
+
+	/**
+	 * @return tokensIndexed() per second of indexingNanos(), or 0 if nothing has been added
+	 */
+	public double tokensPerSecond() {
+		return indexingNanos == 0 ? 0 : tokensIndexed * 1e9 / indexingNanos;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return a percentile of the latency of addDocument and updateDocument (but not
+	 *         addDocuments; see addDocumentsLatencyPercentile), in nanoseconds, or 0 if there
+	 *         were none
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	public long addDocumentLatencyPercentile(double percentile) {
+		return LatencyHistogram.percentile(addDocumentLatencies, percentile);
+	}
+
+	/**
+	 * @return the number of addDocuments calls that added any documents
+	 */
+	public long addDocumentsCount() {
+		return LatencyHistogram.total(addDocumentsLatencies);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return a percentile of the latency of whole addDocuments calls that added any documents,
+	 *         in nanoseconds, or 0 if there were none
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	public long addDocumentsLatencyPercentile(double percentile) {
+		return LatencyHistogram.percentile(addDocumentsLatencies, percentile);
+	}
+
+	/**
+	 * @return the number of merges committed, in the background or by forceMerge
+	 */
+	public long mergeCount() {
+		return merges;
+	}
+
+	/**
+	 * @return the total time those merges spent reading and writing segments, in nanoseconds
+	 */
+	public long mergeNanos() {
+		return mergeNanos;
+	}
+
+	/**
+	 * @return the number of relevanceLookup calls answered, from the cache or not
+	 */
+	public long relevanceLookupCount() {
+		return LatencyHistogram.total(relevanceLookupLatencies);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return a percentile of the latency of relevanceLookup, in nanoseconds, or 0 if there were
+	 *         none
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	public long relevanceLookupLatencyPercentile(double percentile) {
+		return LatencyHistogram.percentile(relevanceLookupLatencies, percentile);
+	}
+
+	/**
+	 * @return the number of queryLookup calls answered
+	 */
+	public long queryLookupCount() {
+		return LatencyHistogram.total(queryLookupLatencies);
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return a percentile of the latency of queryLookup, in nanoseconds, or 0 if there were none
+	 * @throws IllegalArgumentException if percentile is not between 0 and 100
+	 */
+	public long queryLookupLatencyPercentile(double percentile) {
+		return LatencyHistogram.percentile(queryLookupLatencies, percentile);
+	}
+
+	/**
+	 * @return the total number of postings of the terms of every OR-of-terms query, which are
+	 *         answered with MaxScore
+	 */
+	public long rankedPostings() {
+		return rankedPostings;
+	}
+
+	/**
+	 * @return how many of rankedPostings() MaxScore skipped without reading them
+	 */
+	public long skippedPostings() {
+		return skippedPostings;
+	}
+
+	/**
+	 * @return the statistics of the relevanceLookup cache (see SearchEngine.queryCacheStats)
+	 */
+	public QueryCacheStats queryCacheStats() {
+		return queryCache;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,
+				"segments=%d documents=%d deleted=%d terms=%d postings=%d postingsPerTerm(p50=%d p99=%d max=%d) "
+				+ "heap(postings=%d dictionary=%d documents=%d) mapped=%d "
+				+ "added=%d tokens=%d tokensPerSecond=%.0f addDocument(p50=%dns p99=%dns) "
+				+ "addDocuments(count=%d p50=%dns p99=%dns) merges=%d mergeNanos=%d "
+				+ "relevanceLookup(count=%d p50=%dns p99=%dns) queryLookup(count=%d p50=%dns p99=%dns) "
+				+ "rankedPostings=%d skippedPostings=%d queryCache(%s)",
+				segmentCount(), documentCount(), deletedDocumentCount(), termCount(), postingCount(),
+				postingsPerTermPercentile(50), postingsPerTermPercentile(99), postingsPerTermPercentile(100),
+				postingsHeapBytes(), dictionaryHeapBytes(), documentsHeapBytes(), mappedBytes(),
+				documentsAdded, tokensIndexed, tokensPerSecond(), addDocumentLatencyPercentile(50),
+				addDocumentLatencyPercentile(99), addDocumentsCount(), addDocumentsLatencyPercentile(50),
+				addDocumentsLatencyPercentile(99), merges, mergeNanos,
+				relevanceLookupCount(), relevanceLookupLatencyPercentile(50), relevanceLookupLatencyPercentile(99),
+				queryLookupCount(), queryLookupLatencyPercentile(50), queryLookupLatencyPercentile(99),
+				rankedPostings, skippedPostings, queryCache);
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.Iterator;
+
+import documents.DocumentId;
+
+/**
+ * A self-contained slice of the index: a set of documents, numbered by dense ordinals starting
+ * at 0, and the posting lists of every term in them.
+ */
+interface Segment {
+	/**
+	 * @return the number of documents in this segment
+	 */
+	int documentCount();
+
+	/**
+	 * @param ordinal
+	 * @return the id of the document with the given ordinal
+	 */
+	DocumentId documentId(int ordinal);
+
+	/**
+	 * @param ordinal
+	 * @return the norm of the document with the given ordinal (see InMemorySegment.norm(Map))
+	 */
+	float norm(int ordinal);
+
+	/**
+	 * @param ordinal
+	 * @return the length of the document with the given ordinal: its number of terms, counting 
+	 *         repeats
+	 */
+	int length(int ordinal);
+
+	/**
+	 * @return the sum of the lengths of every document in this segment, deleted or not
+	 */
+	long totalLength();
+
+	/**
+	 * @param documentId
+	 * @return the ordinal of the document in this segment, or -1 if it is not in this segment
+	 */
+	int ordinal(DocumentId documentId);
+
+	/**
+	 * @param term a lowercased term
+	 * @return the number of documents in this segment that contain the term
+	 */
+	int documentFrequency(String term);
+
+	/**
+	 * @param term a lowercased term
+	 * @return a cursor over the term's postings, or null if no document here contains the term
+	 */
+	PostingsCursor cursor(String term);
+
+	/**
+	 * @return every term in this segment, in no particular order
+	 */
+	Iterator<String> terms();
+
+	/**
+	 * Adds this segment's terms and postings, deleted or not, and estimates of the memory it 
+	 * uses, to a tally. Takes time linear in the number of terms and documents.
+	 *
+	 * @param size
+	 */
+	void measure(IndexSize size);
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import documents.DocumentId;
+
+/**
+ * Merges segments into a single new segment, dropping deleted documents.
+ *
+ * The live documents of the sources are renumbered densely, in source order, and each term's
+ * postings are rewritten through the new numbering. Terms whose postings all belonged to
+ * deleted documents disappear, so a merged segment's document frequencies count only live
+ * documents.
+ */
+final class SegmentMerger {
+	/**
+	 * The destination of a merge; both SegmentWriter and InMemorySegment are sinks.
+	 */
+	interface Sink {
+		/**
+		 * Adds the next document; documents are added in ordinal order.
+		 */
+		void addDocument(DocumentId documentId, float norm, int length) throws IOException;
+
+		/**
+		 * Adds the next term; terms are added in increasing order of their UTF-8 bytes.
+		 */
+		void addTerm(String term, PostingList list) throws IOException;
+	}
+
+	private SegmentMerger() {
+	}
+
+	/**
+	 * Merges segments into a sink.
+	 *
+	 * @param sources the segments to merge, in ordinal order
+	 * @param deleted the deleted ordinals of each source, or null where there are none
+	 * @param sink
+	 * @return for each source, the new ordinal of each of its documents, or -1 if it was deleted
+	 * @throws IOException iff the sink throws an exception
+	 */
+	static int[][] merge(List<? extends Segment> sources, List<BitSet> deleted, Sink sink) throws IOException {
+		int[][] docMaps = new int[sources.size()][];
+		int next = 0;
+		for (int i = 0; i < sources.size(); i++) {
+			Segment source = sources.get(i);
+			BitSet dead = deleted.get(i);
+			docMaps[i] = new int[source.documentCount()];
+			for (int d = 0; d < docMaps[i].length; d++) {
+				if (dead != null && dead.get(d)) {
+					docMaps[i][d] = -1;
+				}
+				else {
+					docMaps[i][d] = next++;
+					sink.addDocument(source.documentId(d), source.norm(d), source.length(d));
+				}
+			}
+		}
+
+		Set<String> union = new HashSet<>();
+		for (Segment source : sources) {
+			for (Iterator<String> it = source.terms(); it.hasNext(); ) {
+				union.add(it.next());
+			}
+		}
+		List<byte[]> sorted = new ArrayList<>(union.size());
+		for (String term : union) {
+			sorted.add(term.getBytes(StandardCharsets.UTF_8));
+		}
+		sorted.sort(Arrays::compareUnsigned);
+
+		for (byte[] bytes : sorted) {
+			String term = new String(bytes, StandardCharsets.UTF_8);
+			PostingList merged = new PostingList();
+			for (int i = 0; i < sources.size(); i++) {
+				PostingsCursor cursor = sources.get(i).cursor(term);
+				if (cursor == null) {
+					continue;
+				}
+				while (cursor.next() != DocIterator.NO_MORE_DOCS) {
+					int ordinal = docMaps[i][cursor.ordinal()];
+					if (ordinal >= 0) {
+						int[] positions = cursor.positions();
+						merged.add(ordinal, cursor.frequency(), positions.length == 0 ? null : positions, 0);
+					}
+				}
+			}
+			if (merged.size() > 0) {
+				sink.addTerm(term, merged);
+			}
+		}
+		return docMaps;
+	}
+}
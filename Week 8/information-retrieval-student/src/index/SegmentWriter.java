@@ -0,0 +1,211 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import documents.DocumentId;
+
+/**
+ * Writes an immutable segment to four files, which MappedSegment reads back:
+ *
+ * - NAME.tdict, the term dictionary: a header, then one fixed-size entry per term (sorted by the
+ *   unsigned bytes of its UTF-8 encoding) holding the offset and length of the term's bytes and
+ *   the offset of its posting list, then the term bytes themselves.
+ * - NAME.post, the postings: a header, then each term's PostingList in the layout of
+ *   PostingList.writeTo(DataOutput).
+ * - NAME.docs, the document table: a header, then one fixed-size entry per ordinal holding the
+ *   offset and length of the document id's bytes, then the ordinals sorted by document id, then
+ *   the id bytes themselves.
+ * - NAME.norms, the document norms and lengths: a header, then one float norm per ordinal, then
+ *   one int length per ordinal, then the sum of the lengths as a long.
+ *
+ * Every header is a magic number followed by the number of entries (which is always 0 for the
+ * postings file, since its lists are only reachable through the term dictionary). All offsets
+ * are from the start of their file, and all ints are big-endian.
+ *
+ * close() forces all four files to disk before it returns, so a manifest that names the segment
+ * never outlives the segment's contents in a crash.
+ */
+final class SegmentWriter implements SegmentMerger.Sink, Closeable {
+	static final int TERMS_MAGIC = 0x54444943; // "TDIC"
+	static final int POSTINGS_MAGIC = 0x504f5354; // "POST"
+	static final int DOCUMENTS_MAGIC = 0x444f4353; // "DOCS"
+	static final int NORMS_MAGIC = 0x4e4f524d; // "NORM"
+
+	private final Path directory;
+	private final String name;
+	private final DataOutputStream postings;
+	private long postingsLength;
+	private final List<byte[]> terms = new ArrayList<>();
+	private final List<Integer> postingsOffsets = new ArrayList<>();
+	private final List<byte[]> documents = new ArrayList<>();
+	private float[] norms = new float[16];
+	private int[] lengths = new int[16];
+	private long totalLength;
+
+	/**
+	 * @param directory
+	 * @param name the name of the new segment
+	 * @throws IOException iff the postings file cannot be created
+	 */
+	SegmentWriter(Path directory, String name) throws IOException {
+		this.directory = directory;
+		this.name = name;
+		this.postings = open(directory.resolve(name + ".post"));
+		postings.writeInt(POSTINGS_MAGIC);
+		postings.writeInt(0);
+		postingsLength = 8;
+	}
+
+	/**
+	 * Adds the next document; documents must be added in ordinal order.
+	 *
+	 * @param documentId
+	 * @param norm the document's norm
+	 * @param length the document's length
+	 */
+	@Override
+	public void addDocument(DocumentId documentId, float norm, int length) {
+		if (documents.size() == norms.length) {
+			norms = Arrays.copyOf(norms, norms.length * 2);
+			lengths = Arrays.copyOf(lengths, lengths.length * 2);
+		}
+		norms[documents.size()] = norm;
+		lengths[documents.size()] = length;
+		totalLength += length;
+		documents.add(documentId.id.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Override
+	public void addTerm(String term, PostingList list) throws IOException {
+		addTerm(term.getBytes(StandardCharsets.UTF_8), list);
+	}
+
+	/**
+	 * Adds the next term; terms must be added in increasing order of their UTF-8 bytes.
+	 *
+	 * @param term the term's UTF-8 bytes
+	 * @param list the term's postings
+	 * @throws IOException iff writing fails, or the postings file would exceed 2GB
+	 */
+	void addTerm(byte[] term, PostingList list) throws IOException {
+		if (!terms.isEmpty() && Arrays.compareUnsigned(terms.get(terms.size() - 1), term) >= 0) {
+			throw new IllegalArgumentException("terms must be added in increasing order");
+		}
+		if (postingsLength + list.encodedLength() > Integer.MAX_VALUE) {
+			throw new IOException("segment " + name + " is too large to be memory-mapped");
+		}
+		terms.add(term);
+		postingsOffsets.add((int) postingsLength);
+		list.writeTo(postings);
+		postingsLength += list.encodedLength();
+	}
+
+	/**
+	 * Finishes the postings file, writes the term dictionary and document table, and forces all
+	 * four files to disk.
+	 */
+	@Override
+	public void close() throws IOException {
+		postings.close();
+
+		try (DataOutputStream out = open(directory.resolve(name + ".tdict"))) {
+			out.writeInt(TERMS_MAGIC);
+			out.writeInt(terms.size());
+			int offset = 8 + 12 * terms.size();
+			for (int i = 0; i < terms.size(); i++) {
+				out.writeInt(offset);
+				out.writeInt(terms.get(i).length);
+				out.writeInt(postingsOffsets.get(i));
+				offset += terms.get(i).length;
+			}
+			for (byte[] term : terms) {
+				out.write(term);
+			}
+		}
+
+		try (DataOutputStream out = open(directory.resolve(name + ".docs"))) {
+			out.writeInt(DOCUMENTS_MAGIC);
+			out.writeInt(documents.size());
+			int offset = 8 + 12 * documents.size();
+			for (byte[] id : documents) {
+				out.writeInt(offset);
+				out.writeInt(id.length);
+				offset += id.length;
+			}
+			Integer[] byId = new Integer[documents.size()];
+			for (int i = 0; i < byId.length; i++) {
+				byId[i] = i;
+			}
+			Arrays.sort(byId, (a, b) -> Arrays.compareUnsigned(documents.get(a), documents.get(b)));
+			for (int ordinal : byId) {
+				out.writeInt(ordinal);
+			}
+			for (byte[] id : documents) {
+				out.write(id);
+			}
+		}
+
+		try (DataOutputStream out = open(directory.resolve(name + ".norms"))) {
+			out.writeInt(NORMS_MAGIC);
+			out.writeInt(documents.size());
+			for (int i = 0; i < documents.size(); i++) {
+				out.writeFloat(norms[i]);
+			}
+			for (int i = 0; i < documents.size(); i++) {
+				out.writeInt(lengths[i]);
+			}
+			out.writeLong(totalLength);
+		}
+
+		for (String extension : new String[] {".post", ".tdict", ".docs", ".norms"}) {
+			force(directory.resolve(name + extension));
+		}
+	}
+
+	/**
+	 * Forces the contents of a written (and closed) file to disk.
+	 *
+	 * @param path
+	 * @throws IOException iff the file cannot be opened or synced
+	 */
+	static void force(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+	}
+
+	/**
+	 * Forces a directory's entries (the files created, renamed or deleted in it) to disk, where 
+	 * the platform allows it: some (such as Windows) cannot open a directory at all, and then 
+	 * this does nothing.
+	 *
+	 * @param directory
+	 */
+	static void forceDirectory(Path directory) {
+		try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+		catch (IOException e) {
+			// the platform cannot sync a directory; its renames are as durable as it makes them
+		}
+	}
+
+	private static DataOutputStream open(Path path) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+	}
+}
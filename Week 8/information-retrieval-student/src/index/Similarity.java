@@ -0,0 +1,193 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+/**
+ * A scoring model: how relevant a document is to a term, given how often the term appears in
+ * the document, how long the document is, and statistics of the whole collection.
+ *
+ * A Similarity does no work per document beyond Scorer.score(): the engine keeps every
+ * document's length and norm, and the collection's size and total length, up to date as
+ * documents are added, and hands them to the scorer. So a SearchEngine can switch between
+ * similarities (see SearchEngine.setSimilarity) without reindexing.
+ *
+ * See:
+ * - <https://en.wikipedia.org/wiki/Tf%E2%80%93idf>
+ * - <https://en.wikipedia.org/wiki/Okapi_BM25>
+ */
+public abstract class Similarity {
+	/**
+	 * Scores the postings of one term. Everything that depends only on the term and the
+	 * collection is computed when the scorer is created, so score() is only a few arithmetic
+	 * operations.
+	 */
+	public abstract static class Scorer {
+		/**
+		 * @param frequency the number of times the term appears in the document
+		 * @param length the document's length: its number of terms, counting repeats
+		 * @param norm the document's norm: 1 / sqrt(the sum of the squares of its term
+		 *        frequencies)
+		 * @return the document's score for the term
+		 */
+		public abstract double score(int frequency, int length, float norm);
+
+		/**
+		 * @param maxFrequency the largest frequency of any posting to be scored
+		 * @return an upper bound on the score of any such posting, of any length and norm
+		 */
+		public abstract double maxScore(int maxFrequency);
+	}
+
+	/**
+	 * Returns a scorer for one term.
+	 *
+	 * @param documentCount N, the number of documents (including deleted documents that have not
+	 *        yet been merged away, as in SearchEngine.inverseDocumentFrequency)
+	 * @param documentFrequency M, the number of those documents that contain the term
+	 * @param averageLength the average length of those documents
+	 * @return a scorer
+	 */
+	public abstract Scorer scorer(long documentCount, long documentFrequency, double averageLength);
+
+	/**
+	 * Returns the default similarity, raw tf-idf: a document's score is its frequency times
+	 * log((1 + N) / (1 + M)), exactly as SearchEngine.tfIdf.
+	 *
+	 * @return the tf-idf similarity
+	 */
+	public static Similarity tfIdf() {
+		return TfIdf.INSTANCE;
+	}
+
+	/**
+	 * Returns length-normalized tf-idf: tf-idf times the document's norm, exactly as
+	 * SearchEngine.normalizedTfIdf, so that a long document does not outscore a short one just by
+	 * repeating more words.
+	 *
+	 * @return the normalized tf-idf similarity
+	 */
+	public static Similarity normalizedTfIdf() {
+		return NormalizedTfIdf.INSTANCE;
+	}
+
+	/**
+	 * Returns BM25 with the usual parameters, k1 = 1.2 and b = 0.75.
+	 *
+	 * @return the BM25 similarity
+	 */
+	public static Similarity bm25() {
+		return bm25(1.2, 0.75);
+	}
+
+	/**
+	 * Returns BM25: a document's score is
+	 * idf * frequency * (k1 + 1) / (frequency + k1 * (1 - b + b * length / averageLength)),
+	 * where idf is log(1 + (N - M + 0.5) / (M + 0.5)). The frequency saturates (more occurrences
+	 * add less and less), and b controls how much longer documents are penalized.
+	 *
+	 * @param k1 the saturation of the frequency; non-negative
+	 * @param b how much of the length to normalize by, between 0 and 1
+	 * @return the BM25 similarity
+	 * @throws IllegalArgumentException if k1 or b is out of range
+	 */
+	public static Similarity bm25(double k1, double b) {
+		if (!(k1 >= 0) || !(b >= 0 && b <= 1)) {
+			throw new IllegalArgumentException("k1 must be non-negative, and b between 0 and 1");
+		}
+		return new BM25(k1, b);
+	}
+
+	static double idf(long documentCount, long documentFrequency) {
+		return Math.log((1.0 + documentCount) / (1.0 + documentFrequency));
+	}
+
+	static final class TfIdf extends Similarity {
+		static final TfIdf INSTANCE = new TfIdf();
+
+		@Override
+		public Scorer scorer(long documentCount, long documentFrequency, double averageLength) {
+			double idf = idf(documentCount, documentFrequency);
+			return new Scorer() {
+				@Override
+				public double score(int frequency, int length, float norm) {
+					return frequency * idf;
+				}
+
+				@Override
+				public double maxScore(int maxFrequency) {
+					return maxFrequency * idf;
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "tf-idf";
+		}
+	}
+
+	static final class NormalizedTfIdf extends Similarity {
+		static final NormalizedTfIdf INSTANCE = new NormalizedTfIdf();
+
+		@Override
+		public Scorer scorer(long documentCount, long documentFrequency, double averageLength) {
+			double idf = idf(documentCount, documentFrequency);
+			return new Scorer() {
+				@Override
+				public double score(int frequency, int length, float norm) {
+					return frequency * idf * norm;
+				}
+
+				@Override
+				public double maxScore(int maxFrequency) {
+					// the norm is at most 1 / frequency, so frequency * norm is at most 1
+					return maxFrequency == 0 ? 0 : idf;
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "normalized tf-idf";
+		}
+	}
+
+	static final class BM25 extends Similarity {
+		private final double k1;
+		private final double b;
+
+		BM25(double k1, double b) {
+			this.k1 = k1;
+			this.b = b;
+		}
+
+		@Override
+		public Scorer scorer(long documentCount, long documentFrequency, double averageLength) {
+			double idf = Math.log(1 + (documentCount - documentFrequency + 0.5) / (documentFrequency + 0.5));
+			double numerator = idf * (k1 + 1);
+			// frequency + k1 * (1 - b + b * length / averageLength) = frequency + constant + perLength * length
+			double constant = k1 * (1 - b);
+			double perLength = averageLength == 0 ? 0 : k1 * b / averageLength;
+			return new Scorer() {
+				@Override
+				public double score(int frequency, int length, float norm) {
+					return numerator * frequency / (frequency + constant + perLength * length);
+				}
+
+				@Override
+				public double maxScore(int maxFrequency) {
+					// the score grows with the frequency, and is largest for the shortest document,
+					// which is at least as long as its frequency
+					return maxFrequency == 0 ? 0 : numerator * maxFrequency / (maxFrequency + constant + perLength * maxFrequency);
+				}
+			};
+		}
+
+		@Override
+		public String toString() {
+			return "BM25(k1=" + k1 + ", b=" + b + ")";
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+/**
+ * Interns terms given as slices of a char array.
+ * 
+ * This is an open-addressing hash table (with linear probing) of Strings, looked up directly by 
+ * the characters of a slice, so finding a term that is already present allocates nothing. 
+ * Hashes are the same as String.hashCode(), which lets the returned Strings reuse them.
+ */
+public final class TermDictionary {
+	private String[] terms = new String[1024];
+	private int[] hashes = new int[1024];
+	private int size;
+
+	/**
+	 * Returns the String with the given characters, creating it only if this dictionary has 
+	 * not seen those characters before.
+	 * 
+	 * @param chars
+	 * @param offset the start of the slice
+	 * @param length the length of the slice
+	 * @return the unique String in this dictionary equal to the slice
+	 */
+	public String intern(char[] chars, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++) {
+			hash = 31 * hash + chars[i];
+		}
+		int mask = terms.length - 1;
+		for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+			String term = terms[slot];
+			if (term == null) {
+				term = new String(chars, offset, length);
+				terms[slot] = term;
+				hashes[slot] = hash;
+				if (++size > terms.length / 4 * 3) {
+					grow();
+				}
+				return term;
+			}
+			if (hashes[slot] == hash && matches(term, chars, offset, length)) {
+				return term;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of distinct terms in this dictionary
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static boolean matches(String term, char[] chars, int offset, int length) {
+		if (term.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (term.charAt(i) != chars[offset + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private void grow() {
+		String[] oldTerms = terms;
+		int[] oldHashes = hashes;
+		terms = new String[oldTerms.length * 2];
+		hashes = new int[oldTerms.length * 2];
+		int mask = terms.length - 1;
+		for (int i = 0; i < oldTerms.length; i++) {
+			if (oldTerms[i] != null) {
+				int slot = mix(oldHashes[i]) & mask;
+				while (terms[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				terms[slot] = oldTerms[i];
+				hashes[slot] = oldHashes[i];
+			}
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * Splits a document into the terms that the SearchEngine indexes.
+ * 
+ * A SearchEngine creates its tokenizers from a Supplier, and never uses one tokenizer from two 
+ * threads at once, so implementations may keep reusable buffers in their fields. Nor does it use 
+ * one tokenizer for more than one in-memory segment, so implementations may also cache the 
+ * terms they have seen, without that cache growing for the life of the engine.
+ */
+public interface Tokenizer {
+	/**
+	 * Reads the document to its end, passing each term to the consumer in order.
+	 * 
+	 * Terms must already be lowercased. Implementations may pass the same String instance 
+	 * every time the same term occurs.
+	 * 
+	 * @param reader the document
+	 * @param terms receives each term
+	 * @throws IOException iff the reader throws an exception
+	 */
+	void tokenize(Reader reader, Consumer<String> terms) throws IOException;
+}
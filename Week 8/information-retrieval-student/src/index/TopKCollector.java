@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.IntFunction;
+
+import comparators.ScoredDocumentComparator;
+import documents.DocumentId;
+
+/**
+ * Collects the k most relevant of a stream of scored document ordinals.
+ *
+ * The best k seen so far are kept in a min-heap (by relevance) whose head is the next one to
+ * evict, so collecting n documents costs O(n log k) at worst, and a document that cannot enter
+ * the heap costs one comparison and no allocation. When k is at least the number of documents
+ * that can be collected, they are simply gathered and sorted.
+ */
+final class TopKCollector {
+	private final IntFunction<DocumentId> documents;
+	private final int k;
+	private final Comparator<ScoredDocument> order = new ScoredDocumentComparator();
+	private final PriorityQueue<ScoredDocument> heap;
+	private final List<ScoredDocument> all;
+
+	/**
+	 * @param documents maps ordinals to document ids
+	 * @param k the maximum number of documents to keep
+	 * @param expected an upper bound on the number of documents that will be collected
+	 */
+	TopKCollector(IntFunction<DocumentId> documents, int k, long expected) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k must be non-negative");
+		}
+		this.documents = documents;
+		this.k = k;
+		if (k >= expected) {
+			heap = null;
+			all = new ArrayList<>((int) expected);
+		}
+		else {
+			heap = new PriorityQueue<>(Math.max(k, 1), order.reversed());
+			all = null;
+		}
+	}
+
+	/**
+	 * Offers a document to the collector.
+	 * 
+	 * @param ordinal the document's ordinal
+	 * @param score the document's score
+	 */
+	void collect(int ordinal, double score) {
+		if (heap == null) {
+			all.add(new ScoredDocument(documents.apply(ordinal), score));
+			return;
+		}
+		if (heap.size() < k) {
+			heap.add(new ScoredDocument(documents.apply(ordinal), score));
+			return;
+		}
+		if (k == 0) {
+			return;
+		}
+		ScoredDocument worst = heap.peek();
+		if (score < worst.score) {
+			return;
+		}
+		DocumentId documentId = documents.apply(ordinal);
+		if (score > worst.score || documentId.id.compareTo(worst.documentId.id) < 0) {
+			heap.poll();
+			heap.add(new ScoredDocument(documentId, score));
+		}
+	}
+
+	/**
+	 * Returns the score a document must reach to have any chance of being kept: the score of 
+	 * the worst document kept, once k have been collected, and negative infinity until then. 
+	 * A document scoring exactly the threshold may still be kept, if its id breaks the tie.
+	 */
+	double threshold() {
+		if (k == 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (heap == null || heap.size() < k) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return heap.peek().score;
+	}
+
+	/**
+	 * @return the collected documents, most relevant first
+	 */
+	List<ScoredDocument> results() {
+		List<ScoredDocument> result = heap == null ? all : new ArrayList<>(heap);
+		result.sort(order);
+		return result;
+	}
+}
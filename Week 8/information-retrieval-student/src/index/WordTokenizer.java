@@ -0,0 +1,52 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * The default Tokenizer: terms are the lowercased maximal runs of word characters.
+ * 
+ * Word characters are [a-zA-Z0-9_], that is, the complement of the regex class \W, so this
+ * splits documents exactly as a Scanner delimited by "\\W+" would. But it reads the document 
+ * through a reusable char buffer, lowercases in place, and interns each term through a 
+ * TermDictionary, so a term that has been seen before costs no allocation at all.
+ */
+public class WordTokenizer implements Tokenizer {
+	private final char[] buffer = new char[8192];
+	private char[] token = new char[32];
+	private final TermDictionary dictionary = new TermDictionary();
+
+	@Override
+	public void tokenize(Reader reader, Consumer<String> terms) throws IOException {
+		int length = 0;
+		int n;
+		while ((n = reader.read(buffer, 0, buffer.length)) != -1) {
+			for (int i = 0; i < n; i++) {
+				char c = buffer[i];
+				if (c >= 'A' && c <= 'Z') {
+					c = (char) (c + ('a' - 'A'));
+				}
+				else if (!((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_')) {
+					if (length > 0) {
+						terms.accept(dictionary.intern(token, 0, length));
+						length = 0;
+					}
+					continue;
+				}
+				if (length == token.length) {
+					token = Arrays.copyOf(token, length * 2);
+				}
+				token[length++] = c;
+			}
+		}
+		if (length > 0) {
+			terms.accept(dictionary.intern(token, 0, length));
+		}
+	}
+}
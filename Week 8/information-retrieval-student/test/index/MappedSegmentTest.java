@@ -0,0 +1,250 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+import documents.DocumentId;
+
+public class MappedSegmentTest {
+
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(10); // 10 seconds
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Path directory;
+	private SearchEngine expected;
+
+	@Before
+	public void setup() throws Exception {
+		directory = folder.getRoot().toPath();
+		expected = new SearchEngine();
+	}
+
+	private void add(SearchEngine engine, Random random, int from, int to) throws Exception {
+		for (int i = from; i < to; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(30); j >= 0; j--) {
+				sb.append("w").append((int) Math.abs(random.nextGaussian() * 100)).append(' ');
+			}
+			sb.append(i % 2 == 0 ? "even café" : "odd");
+			engine.addDocument(new DocumentId("D" + i + "é"), new StringReader(sb.toString()));
+			expected.addDocument(new DocumentId("D" + i + "é"), new StringReader(sb.toString()));
+		}
+	}
+
+	private void assertSameResults(SearchEngine actual) {
+		for (String term : new String[] {"w0", "w1", "w50", "w250", "even", "odd", "caf", "missing"}) {
+			assertEquals(expected.indexLookup(term), actual.indexLookup(term));
+			assertEquals(expected.inverseDocumentFrequency(term), actual.inverseDocumentFrequency(term), 0.0);
+			assertEquals(expected.relevanceLookup(term), actual.relevanceLookup(term));
+			assertEquals(expected.relevanceLookup(term, 5), actual.relevanceLookup(term, 5));
+			assertEquals(expected.normalizedRelevanceLookup(term, 5), actual.normalizedRelevanceLookup(term, 5));
+		}
+		assertEquals(expected.queryLookup("w1 AND even NOT w2"), actual.queryLookup("w1 AND even NOT w2"));
+		// BM25 reads the document lengths, which are stored with the segments
+		expected.setSimilarity(Similarity.bm25());
+		actual.setSimilarity(Similarity.bm25());
+		for (String term : new String[] {"w0", "w50", "even"}) {
+			assertEquals(expected.relevanceLookup(term, 5), actual.relevanceLookup(term, 5));
+		}
+		assertEquals(expected.queryLookup(Query.parse("w1 OR w2 OR odd"), 5), actual.queryLookup(Query.parse("w1 OR w2 OR odd"), 5));
+		expected.setSimilarity(Similarity.tfIdf());
+		actual.setSimilarity(Similarity.tfIdf());
+		for (int i = 0; i < 1500; i += 7) {
+			DocumentId id = new DocumentId("D" + i + "é");
+			assertEquals(expected.termFrequency(id, "w3"), actual.termFrequency(id, "w3"));
+		}
+	}
+
+	@Test
+	public void testFlushAndReopen() throws Exception {
+		Random random = new Random(0);
+		SearchEngine engine = new SearchEngine(directory);
+		add(engine, random, 0, 500);
+		engine.flush();
+		add(engine, random, 500, 1000);
+		engine.flush();
+		add(engine, random, 1000, 1500);
+		assertSameResults(engine);
+
+		engine.flush();
+		SearchEngine reopened = new SearchEngine(directory);
+		assertSameResults(reopened);
+
+		// new documents go after the reopened segments, and re-inserts are still ignored
+		reopened.addDocument(new DocumentId("D0é"), new StringReader("odd odd odd"));
+		assertEquals(0, reopened.termFrequency(new DocumentId("D0é"), "odd"));
+		reopened.addDocument(new DocumentId("NEW"), new StringReader("brand new"));
+		reopened.flush();
+		assertEquals(1, new SearchEngine(directory).indexLookup("brand").size());
+	}
+
+	@Test
+	public void testTokenizerTermsBoundedAcrossFlushes() throws Exception {
+		// each tokenizer records the distinct terms it has seen, as WordTokenizer's dictionary does
+		List<Set<String>> seen = new ArrayList<>();
+		SearchEngine engine = new SearchEngine(directory, () -> {
+			WordTokenizer words = new WordTokenizer();
+			Set<String> terms = new HashSet<>();
+			seen.add(terms);
+			return (reader, consumer) -> words.tokenize(reader, term -> {
+				terms.add(term);
+				consumer.accept(term);
+			});
+		});
+		for (int i = 0; i < 1000; i++) {
+			engine.addDocument(new DocumentId("D" + i), new StringReader("shared unique" + i));
+			if (i % 100 == 99) {
+				engine.flush();
+			}
+		}
+		assertEquals(11, seen.size());
+		for (Set<String> terms : seen) {
+			assertTrue(terms.size() <= 101);
+		}
+		assertEquals(1000, engine.indexLookup("shared").size());
+		assertEquals(1, engine.indexLookup("unique999").size());
+	}
+
+	@Test
+	public void testDeletionsAndMergesReopen() throws Exception {
+		Random random = new Random(0);
+		SearchEngine engine = new SearchEngine(directory);
+		engine.setMaxBufferedDocuments(100);
+		engine.setMergeFactor(3);
+		add(engine, random, 0, 1000);
+		for (int i = 0; i < 1000; i += 3) {
+			DocumentId id = new DocumentId("D" + i + "é");
+			assertTrue(engine.removeDocument(id));
+			expected.removeDocument(id);
+		}
+		engine.flush();
+		engine.awaitMerges();
+
+		SearchEngine reopened = new SearchEngine(directory);
+		for (String term : new String[] {"w0", "w1", "w50", "even", "odd"}) {
+			assertEquals(expected.indexLookup(term), reopened.indexLookup(term));
+			assertEquals(expected.relevanceLookup(term, 5), reopened.relevanceLookup(term, 5));
+		}
+		assertFalse(reopened.removeDocument(new DocumentId("D0é")));
+
+		reopened.forceMerge();
+		expected.forceMerge();
+		for (String term : new String[] {"w0", "w1", "w50", "even", "odd"}) {
+			assertEquals(expected.inverseDocumentFrequency(term), reopened.inverseDocumentFrequency(term), 0.0);
+			assertEquals(expected.relevanceLookup(term), reopened.relevanceLookup(term));
+		}
+		SearchEngineMetrics inMemory = expected.metrics();
+		SearchEngineMetrics mapped = reopened.metrics();
+		assertEquals(1, mapped.segmentCount());
+		assertEquals(inMemory.documentCount(), mapped.documentCount());
+		assertEquals(inMemory.termCount(), mapped.termCount());
+		assertEquals(inMemory.postingCount(), mapped.postingCount());
+		assertEquals(inMemory.postingsPerTermPercentile(90), mapped.postingsPerTermPercentile(90));
+		assertEquals(0, mapped.heapBytes());
+		assertTrue(mapped.mappedBytes() > 0);
+		assertEquals(0, inMemory.mappedBytes());
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.post")) {
+			int count = 0;
+			for (Iterator<Path> it = files.iterator(); it.hasNext(); it.next()) {
+				count++;
+			}
+			assertEquals(1, count);
+		}
+		assertEquals(expected.indexLookup("even"), new SearchEngine(directory).indexLookup("even"));
+	}
+
+	@Test
+	public void testPositionsReopen() throws Exception {
+		Random random = new Random(0);
+		SearchEngine engine = new SearchEngine(directory);
+		engine.setIndexPositions(true);
+		expected.setIndexPositions(true);
+		add(engine, random, 0, 300);
+		engine.flush();
+		add(engine, random, 300, 600);
+		engine.flush();
+		SearchEngine reopened = new SearchEngine(directory);
+		reopened.forceMerge();
+		for (String q : new String[] {"\"w1 w2\"~5", "\"w0 w0\"~3", "\"w0 w1 w2\"~20", "\"odd\" OR \"even caf\""}) {
+			assertFalse(q, expected.queryLookup(q).isEmpty());
+			assertEquals(expected.queryLookup(q), reopened.queryLookup(q));
+		}
+	}
+
+	@Test
+	public void testEmptyDirectory() throws Exception {
+		SearchEngine engine = new SearchEngine(directory.resolve("sub"));
+		engine.flush();
+		assertEquals(0, engine.indexLookup("foo").size());
+		assertEquals(0.0, engine.inverseDocumentFrequency("foo"), 0.0);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFlushWithoutDirectory() throws Exception {
+		new SearchEngine().flush();
+	}
+
+	@Test
+	public void testSegment() throws Exception {
+		InMemorySegment buffer = new InMemorySegment();
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			Map<String, int[]> counts = new HashMap<>();
+			counts.put("all", new int[] {1 + i % 3});
+			if (random.nextInt(10) == 0) {
+				counts.put("rare", new int[] {1});
+			}
+			buffer.add(new DocumentId("doc" + i), counts);
+		}
+		try (SegmentWriter writer = new SegmentWriter(directory, "_0")) {
+			SegmentMerger.merge(List.of(buffer), Collections.singletonList(null), writer);
+		}
+		MappedSegment segment = new MappedSegment(directory, "_0");
+
+		assertEquals(1000, segment.documentCount());
+		assertEquals(new DocumentId("doc17"), segment.documentId(17));
+		assertEquals(17, segment.ordinal(new DocumentId("doc17")));
+		assertEquals(buffer.norm(17), segment.norm(17), 0.0f);
+		assertEquals(-1, segment.ordinal(new DocumentId("doc1000")));
+		assertEquals(1000, segment.documentFrequency("all"));
+		assertEquals(buffer.documentFrequency("rare"), segment.documentFrequency("rare"));
+		assertNull(segment.cursor("none"));
+
+		PostingsCursor cursor = segment.cursor("all");
+		assertEquals(500, cursor.advance(500));
+		assertEquals(1 + 500 % 3, cursor.frequency());
+		assertEquals(999, cursor.advance(999));
+		assertEquals(DocIterator.NO_MORE_DOCS, cursor.next());
+
+		Iterator<String> terms = segment.terms();
+		assertEquals("all", terms.next());
+		assertEquals("rare", terms.next());
+		assertFalse(terms.hasNext());
+	}
+}
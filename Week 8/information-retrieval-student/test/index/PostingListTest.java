@@ -0,0 +1,174 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class PostingListTest {
+
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(10); // 10 seconds
+
+	private PostingList list;
+
+	@Before
+	public void setup() {
+		list = new PostingList();
+	}
+
+	/**
+	 * @return the term frequency stored for an ordinal, or 0 if there is no such posting
+	 */
+	private static int frequency(PostingList list, int ordinal) {
+		PostingsCursor cursor = list.cursor();
+		return cursor.advance(ordinal) == ordinal ? cursor.frequency() : 0;
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertEquals(0, list.size());
+		assertEquals(0, frequency(list, 0));
+		assertEquals(PostingsCursor.NO_MORE_DOCS, list.cursor().next());
+	}
+
+	@Test
+	public void testAddAndIterate() throws Exception {
+		list.add(0, 1);
+		list.add(3, 200);
+		list.add(100000, 7);
+		PostingsCursor cursor = list.cursor();
+		assertEquals(0, cursor.next());
+		assertEquals(1, cursor.frequency());
+		assertEquals(3, cursor.next());
+		assertEquals(200, cursor.frequency());
+		assertEquals(100000, cursor.next());
+		assertEquals(7, cursor.frequency());
+		assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.next());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddOutOfOrder() throws Exception {
+		list.add(5, 1);
+		list.add(5, 1);
+	}
+
+	@Test
+	public void testCursorIgnoresLaterAdds() throws Exception {
+		list.add(1, 1);
+		PostingsCursor cursor = list.cursor();
+		list.add(2, 1);
+		assertEquals(1, cursor.next());
+		assertEquals(PostingsCursor.NO_MORE_DOCS, cursor.next());
+	}
+
+	@Test
+	public void testAdvanceRandom() throws Exception {
+		Random random = new Random(0);
+		TreeMap<Integer, Integer> expected = new TreeMap<>();
+		int ordinal = 0;
+		for (int i = 0; i < 10000; i++) {
+			ordinal += 1 + random.nextInt(50);
+			int frequency = 1 + random.nextInt(1000);
+			list.add(ordinal, frequency);
+			expected.put(ordinal, frequency);
+		}
+		assertEquals(expected.size(), list.size());
+
+		PostingsCursor cursor = list.cursor();
+		int target = 0;
+		while (true) {
+			target += random.nextInt(2000);
+			Integer ceiling = expected.ceilingKey(target);
+			int actual = cursor.advance(target);
+			if (ceiling == null) {
+				assertEquals(PostingsCursor.NO_MORE_DOCS, actual);
+				break;
+			}
+			assertEquals(ceiling.intValue(), actual);
+			assertEquals(expected.get(ceiling).intValue(), cursor.frequency());
+		}
+
+		for (int i = 0; i < 1000; i++) {
+			int probe = random.nextInt(ordinal + 10);
+			assertEquals(expected.getOrDefault(probe, 0).intValue(), frequency(list, probe));
+		}
+	}
+
+	@Test
+	public void testPositions() throws Exception {
+		Random random = new Random(0);
+		TreeMap<Integer, int[]> expected = new TreeMap<>();
+		int ordinal = 0;
+		for (int i = 0; i < 1000; i++) {
+			ordinal += 1 + random.nextInt(10);
+			int frequency = 1 + random.nextInt(5);
+			// the first postings have no positions, and are given empty ones once some arrive
+			int[] positions = i < 100 ? new int[0] : new int[frequency];
+			for (int j = 0, p = -1; j < positions.length; j++) {
+				p += 1 + random.nextInt(300);
+				positions[j] = p;
+			}
+			int[] withCount = new int[positions.length + 1];
+			withCount[0] = frequency;
+			System.arraycopy(positions, 0, withCount, 1, positions.length);
+			list.add(ordinal, frequency, i < 100 ? null : withCount, 1);
+			expected.put(ordinal, positions);
+		}
+
+		PostingsCursor cursor = list.cursor();
+		for (int o : expected.keySet()) {
+			assertEquals(o, cursor.next());
+			if (random.nextBoolean()) {
+				assertArrayEquals(expected.get(o), cursor.positions());
+			}
+		}
+
+		cursor = list.cursor();
+		int target = 0;
+		while (true) {
+			target += random.nextInt(300);
+			Integer ceiling = expected.ceilingKey(target);
+			if (ceiling == null) {
+				break;
+			}
+			assertEquals(ceiling.intValue(), cursor.advance(target));
+			assertArrayEquals(expected.get(ceiling), cursor.positions());
+		}
+
+		PostingList copy = new PostingList();
+		copy.addAll(list);
+		cursor = copy.cursor();
+		assertEquals(expected.lastKey().intValue(), cursor.advance(expected.lastKey()));
+		assertArrayEquals(expected.lastEntry().getValue(), cursor.positions());
+	}
+
+	@Test
+	public void testNoPositions() throws Exception {
+		list.add(1, 2);
+		PostingsCursor cursor = list.cursor();
+		cursor.next();
+		assertEquals(0, cursor.positions().length);
+		assertTrue(Arrays.equals(new int[0], cursor.positions()));
+	}
+
+	@Test
+	public void testCompact() throws Exception {
+		for (int i = 0; i < 100000; i++) {
+			list.add(i * 3, 1 + i % 5);
+		}
+		// two one-byte values per posting, plus array slack and skip entries
+		list.publish();
+		assertTrue(list.published().heapBytes() < 100000 * 4);
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import documents.DocumentId;
+
+public class QueryTest {
+
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(10); // 10 seconds
+
+	private SearchEngine searchEngine;
+
+	@Before
+	public void setup() {
+		searchEngine = new SearchEngine();
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		assertEquals("tomato", Query.parse("Tomato").toString());
+		assertEquals("(a AND b)", Query.parse("a b").toString());
+		assertEquals("(a AND b)", Query.parse("a AND b").toString());
+		assertEquals("((a AND b) OR c)", Query.parse("a AND b OR c").toString());
+		assertEquals("(a AND (b OR c))", Query.parse("a AND (b OR c)").toString());
+		assertEquals("(a AND NOT b)", Query.parse("a NOT b").toString());
+		assertEquals("NOT NOT a", Query.parse("NOT NOT a").toString());
+		assertEquals("(and AND or)", Query.parse("and or").toString());
+	}
+
+	@Test
+	public void testParsePhrases() throws Exception {
+		assertEquals("\"tomato sauce\"", Query.parse("\"Tomato, Sauce\"").toString());
+		assertEquals("(\"a b\"~3 OR c)", Query.parse("\"a b\"~3 OR c").toString());
+		assertEquals("a", Query.parse("\"a\"").toString());
+		assertEquals("(\"a b\" AND NOT c)", Query.parse("\"a b\" NOT c").toString());
+		assertEquals(new HashSet<>(List.of("a", "b")), Query.parse("\"a b a\"").scoringTerms());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseUnterminatedPhrase() throws Exception {
+		Query.parse("\"a b");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseEmptyPhrase() throws Exception {
+		Query.parse("a \" \"");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseEmpty() throws Exception {
+		Query.parse(" ... ");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseUnbalanced() throws Exception {
+		Query.parse("(a OR b");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseDanglingOperator() throws Exception {
+		Query.parse("a AND");
+	}
+
+	@Test
+	public void testScoringTerms() throws Exception {
+		assertEquals(new HashSet<>(List.of("a", "c")), Query.parse("a NOT b OR c").scoringTerms());
+		assertEquals(new HashSet<>(List.of("b")), Query.parse("NOT a AND NOT NOT b").scoringTerms());
+	}
+
+	@Test
+	public void testSimpleQueries() throws Exception {
+		DocumentId d1 = new DocumentId("D1");
+		DocumentId d2 = new DocumentId("D2");
+		DocumentId d3 = new DocumentId("D3");
+		searchEngine.addDocument(d1, new StringReader("tomato sauce"));
+		searchEngine.addDocument(d2, new StringReader("tomato tomato soup"));
+		searchEngine.addDocument(d3, new StringReader("pasta sauce"));
+
+		assertEquals(List.of(d1), searchEngine.queryLookup("tomato AND sauce"));
+		assertEquals(List.of(d2, d1), searchEngine.queryLookup("tomato"));
+		assertEquals(List.of(d2), searchEngine.queryLookup("tomato NOT sauce"));
+		assertEquals(List.of(d3), searchEngine.queryLookup("NOT tomato"));
+		assertEquals(List.of(d2, d3, d1), searchEngine.queryLookup("soup OR pasta OR tomato"));
+		assertEquals(List.of(), searchEngine.queryLookup("missing AND tomato"));
+		assertEquals(List.of(d2), searchEngine.queryLookup(Query.parse("soup OR pasta OR tomato"), 1));
+	}
+
+	@Test
+	public void testPhraseQueries() throws Exception {
+		DocumentId d1 = new DocumentId("D1");
+		DocumentId d2 = new DocumentId("D2");
+		DocumentId d3 = new DocumentId("D3");
+		DocumentId d4 = new DocumentId("D4");
+		searchEngine.addDocument(d4, new StringReader("tomato sauce, indexed before positions"));
+		searchEngine.setIndexPositions(true);
+		searchEngine.addDocument(d1, new StringReader("a rich tomato sauce"));
+		searchEngine.addDocument(d2, new StringReader("sauce made from a tomato"));
+		searchEngine.addDocument(d3, new StringReader("tomato and basil sauce"));
+
+		assertEquals(List.of(d1), searchEngine.queryLookup("\"tomato sauce\""));
+		assertEquals(List.of(d1), searchEngine.queryLookup(Query.phrase("Tomato", "Sauce"), 10));
+		assertEquals(List.of(), searchEngine.queryLookup("\"sauce tomato\""));
+		assertEquals(List.of(d1, d3), searchEngine.queryLookup("\"tomato sauce\"~2"));
+		assertEquals(List.of(d1, d2, d3), searchEngine.queryLookup("\"tomato sauce\"~3"));
+		assertEquals(List.of(d2, d3), searchEngine.queryLookup("sauce NOT \"tomato sauce\"").subList(0, 2));
+		assertEquals(List.of(), searchEngine.queryLookup("\"tomato tomato\"~10"));
+	}
+
+	@Test
+	public void testRandomPhrasesMatchBruteForce() throws Exception {
+		searchEngine.setMaxBufferedDocuments(150);
+		searchEngine.setMergeFactor(2);
+		Random random = new Random(0);
+		String[] words = {"a", "b", "c", "d"};
+		int n = 1000;
+		List<List<String>> texts = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			if (i == 100) {
+				searchEngine.setIndexPositions(true);
+			}
+			List<String> text = new ArrayList<>();
+			for (int j = random.nextInt(12); j >= 0; j--) {
+				text.add(words[random.nextInt(words.length)]);
+			}
+			texts.add(i < 100 ? List.of() : text);
+			searchEngine.addDocument(new DocumentId(String.format("D%04d", i)), new StringReader(String.join(" ", text)));
+		}
+		String[] queries = {"\"a b\"", "\"b a\"", "\"a b c\"", "\"a a\"", "\"a b\"~1", "\"a b c\"~2", "\"a a b\"~1", "\"c d\" OR \"d c\""};
+		for (int round = 0; round < 2; round++) {
+			for (String q : queries) {
+				Query query = Query.parse(q);
+				Set<DocumentId> expected = new HashSet<>();
+				for (int i = 0; i < n; i++) {
+					if (matches(query, texts.get(i))) {
+						expected.add(new DocumentId(String.format("D%04d", i)));
+					}
+				}
+				assertEquals(q, expected, new HashSet<>(searchEngine.queryLookup(q)));
+			}
+			searchEngine.forceMerge();
+		}
+	}
+
+	@Test
+	public void testRandomQueriesMatchBruteForce() throws Exception {
+		Random random = new Random(0);
+		String[] words = {"a", "b", "c", "d", "e"};
+		int n = 2000;
+		List<List<String>> texts = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			List<String> text = new ArrayList<>();
+			for (int j = 0; j < 5; j++) {
+				// a is common, e is rare
+				int w = (int) Math.floor(-Math.log(1 - random.nextDouble()) * 1.5);
+				if (w < words.length) {
+					text.add(words[w]);
+				}
+			}
+			texts.add(text);
+			searchEngine.addDocument(new DocumentId(String.format("D%04d", i)), new StringReader(String.join(" ", text)));
+		}
+		String[] queries = {"a AND e", "e a", "b OR e", "a NOT b", "NOT (a OR b)", "(c OR d) AND NOT e", "a b c d", "NOT a AND NOT b"};
+		for (String q : queries) {
+			Query query = Query.parse(q);
+			Set<String> terms = query.scoringTerms();
+			List<ScoredDocument> expected = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				if (matches(query, texts.get(i))) {
+					double score = 0;
+					for (String t : terms) {
+						score += searchEngine.tfIdf(new DocumentId(String.format("D%04d", i)), t);
+					}
+					expected.add(new ScoredDocument(new DocumentId(String.format("D%04d", i)), score));
+				}
+			}
+			expected.sort(new comparators.ScoredDocumentComparator());
+			List<DocumentId> expectedIds = new ArrayList<>();
+			for (ScoredDocument d : expected) {
+				expectedIds.add(d.documentId);
+			}
+			assertEquals(q, expectedIds, searchEngine.queryLookup(q));
+			assertEquals(q, expectedIds.subList(0, Math.min(10, expectedIds.size())), searchEngine.queryLookup(query, 10));
+		}
+	}
+
+	@Test
+	public void testPrunedDisjunctionsMatchExhaustive() throws Exception {
+		Random random = new Random(0);
+		int n = 3000;
+		List<DocumentId> ids = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			StringBuilder text = new StringBuilder();
+			for (int j = random.nextInt(40); j >= 0; j--) {
+				// a Zipf-like spread of words, some repeated many times in a document
+				text.append("w").append((int) (1 / (random.nextDouble() + 0.02))).append(' ');
+			}
+			DocumentId id = new DocumentId(String.format("D%04d", i));
+			ids.add(id);
+			searchEngine.addDocument(id, new StringReader(text.toString()));
+		}
+		for (int i = 0; i < n; i += 17) {
+			searchEngine.removeDocument(ids.get(i));
+		}
+		String[] queries = {"w1 OR w2", "w1 OR w7 OR w30", "w3 OR w4 OR w5 OR w6 OR w49", "w20 OR w1 OR missing"};
+		for (Similarity similarity : new Similarity[] {Similarity.tfIdf(), Similarity.normalizedTfIdf(), Similarity.bm25()}) {
+			searchEngine.setSimilarity(similarity);
+			for (String q : queries) {
+				Query query = Query.parse(q);
+				List<ScoredDocument> expected = new ArrayList<>();
+				for (int i = 0; i < n; i++) {
+					if (i % 17 == 0) {
+						continue;
+					}
+					double score = 0;
+					boolean any = false;
+					for (String t : query.scoringTerms()) {
+						any |= searchEngine.termFrequency(ids.get(i), t) > 0;
+						score += searchEngine.score(ids.get(i), t);
+					}
+					if (any) {
+						expected.add(new ScoredDocument(ids.get(i), score));
+					}
+				}
+				expected.sort(new comparators.ScoredDocumentComparator());
+				List<DocumentId> expectedIds = new ArrayList<>();
+				for (ScoredDocument d : expected) {
+					expectedIds.add(d.documentId);
+				}
+				for (int k : new int[] {0, 1, 5, 10, 100, Integer.MAX_VALUE}) {
+					assertEquals(similarity + " " + q + " " + k, expectedIds.subList(0, Math.min(k, expectedIds.size())), searchEngine.queryLookup(query, k));
+				}
+			}
+		}
+		long skipped = searchEngine.skippedPostings();
+		assertTrue(skipped > 0);
+		assertTrue(skipped < searchEngine.rankedPostings());
+	}
+
+	private static boolean matches(Query query, List<String> text) {
+		if (query instanceof Query.Phrase) {
+			return matches((Query.Phrase) query, text);
+		}
+		if (query instanceof Query.Term) {
+			return text.contains(((Query.Term) query).term);
+		}
+		if (query instanceof Query.Not) {
+			return !matches(((Query.Not) query).query, text);
+		}
+		if (query instanceof Query.And) {
+			for (Query q : ((Query.And) query).queries) {
+				if (!matches(q, text)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for (Query q : ((Query.Or) query).queries) {
+			if (matches(q, text)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean matches(Query.Phrase phrase, List<String> text) {
+		int n = phrase.terms.length;
+		for (int start = 0; start < text.size(); start++) {
+			if (phrase.slop == 0) {
+				if (start + n <= text.size() && text.subList(start, start + n).equals(List.of(phrase.terms))) {
+					return true;
+				}
+			}
+			else {
+				List<String> window = new ArrayList<>(text.subList(start, Math.min(text.size(), start + n + phrase.slop)));
+				boolean all = true;
+				for (String term : phrase.terms) {
+					all &= window.remove(term);
+				}
+				if (all) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+}
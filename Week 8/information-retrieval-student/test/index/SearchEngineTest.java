@@ -7,16 +7,25 @@ package index;
 import static org.junit.Assert.*;
 
 import java.io.IOException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 
-
+import comparators.ScoreComparator;
+import comparators.TfIdfComparator;
 import documents.DocumentId;
 
 public class SearchEngineTest {
@@ -272,6 +281,517 @@ public class SearchEngineTest {
 				searchEngine.relevanceLookup("beef"));
 	}
 	
+	@Test
+	public void testReinsertIgnored() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT2));
+		assertEquals(2, searchEngine.termFrequency(DOCUMENT1_ID, "a"));
+		assertEquals(0, searchEngine.termFrequency(DOCUMENT1_ID, "example"));
+		assertEquals(0.0, searchEngine.inverseDocumentFrequency("this"), 0.0);
+	}
+
+	@Test
+	public void testManyDocuments() throws Exception {
+		for (int i = 0; i < 1000; i++) {
+			searchEngine.addDocument(new DocumentId("D" + i), new StringReader("common " + (i % 3 == 0 ? "fizz " : "") + "n" + i));
+		}
+		assertEquals(1000, searchEngine.indexLookup("common").size());
+		assertEquals(334, searchEngine.indexLookup("fizz").size());
+		assertEquals(1, searchEngine.termFrequency(new DocumentId("D999"), "fizz"));
+		assertEquals(0, searchEngine.termFrequency(new DocumentId("D998"), "fizz"));
+		assertEquals(1, searchEngine.termFrequency(new DocumentId("D998"), "N998"));
+	}
+
+	@Test
+	public void testNormalizedTfIdf() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		double idf = searchEngine.inverseDocumentFrequency("example");
+		// "this is another another example example example": 1 + 1 + 4 + 9
+		assertEquals(3 * idf / Math.sqrt(15), searchEngine.normalizedTfIdf(DOCUMENT2_ID, "example"), 1e-6);
+		assertEquals(0.0, searchEngine.normalizedTfIdf(DOCUMENT1_ID, "example"), 0.0);
+	}
+
+	@Test
+	public void testNormalizedRelevanceLookup() throws Exception {
+		addFood();
+		for (String term : new String[] {"dish", "meat", "the", "rice"}) {
+			List<DocumentId> expected = new ArrayList<>(searchEngine.indexLookup(term));
+			expected.sort((a, b) -> {
+				int c = Double.compare(searchEngine.normalizedTfIdf(b, term), searchEngine.normalizedTfIdf(a, term));
+				return c != 0 ? c : a.id.compareTo(b.id);
+			});
+			assertEquals(expected, searchEngine.normalizedRelevanceLookup(term, Integer.MAX_VALUE));
+			assertEquals(expected.subList(0, 2), searchEngine.normalizedRelevanceLookup(term, 2));
+		}
+	}
+
+	@Test
+	public void testDefaultSimilarityIsTfIdf() throws Exception {
+		addFood();
+		for (String term : new String[] {"dish", "meat", "the", "rice"}) {
+			for (DocumentId id : searchEngine.indexLookup("the")) {
+				assertEquals(searchEngine.tfIdf(id, term), searchEngine.score(id, term), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void testBM25() throws Exception {
+		DocumentId shortId = new DocumentId("short");
+		DocumentId longId = new DocumentId("long");
+		searchEngine.addDocument(shortId, new StringReader("a b"));
+		searchEngine.addDocument(longId, new StringReader("a c c c c c"));
+		searchEngine.addDocument(new DocumentId("other"), new StringReader("d"));
+		List<DocumentId> tfIdf = searchEngine.relevanceLookup("a");
+		// with equal frequencies, tf-idf ties (broken by id); BM25 prefers the shorter document
+		assertEquals(Arrays.asList(longId, shortId), tfIdf);
+		searchEngine.setSimilarity(Similarity.bm25());
+		assertEquals(Arrays.asList(shortId, longId), searchEngine.relevanceLookup("a"));
+		assertEquals(Arrays.asList(shortId, longId), searchEngine.queryLookup("a OR missing"));
+
+		double idf = Math.log(1 + (3 - 2 + 0.5) / (2 + 0.5));
+		double averageLength = 9.0 / 3;
+		double expected = idf * 1 * 2.2 / (1 + 1.2 * (1 - 0.75 + 0.75 * 2 / averageLength));
+		assertEquals(expected, searchEngine.score(shortId, "a"), 1e-12);
+		assertEquals(0.0, searchEngine.score(shortId, "c"), 0.0);
+
+		List<DocumentId> sorted = new ArrayList<>(Arrays.asList(longId, shortId));
+		sorted.sort(new ScoreComparator(searchEngine, "a"));
+		assertEquals(Arrays.asList(shortId, longId), sorted);
+
+		// no reindexing: switching back restores the tf-idf order
+		searchEngine.setSimilarity(Similarity.tfIdf());
+		assertEquals(tfIdf, searchEngine.relevanceLookup("a"));
+	}
+
+	@Test
+	public void testNormalizedTfIdfSimilarity() throws Exception {
+		addFood();
+		searchEngine.setSimilarity(Similarity.normalizedTfIdf());
+		for (String term : new String[] {"dish", "meat", "the", "rice"}) {
+			assertEquals(searchEngine.normalizedRelevanceLookup(term, Integer.MAX_VALUE), searchEngine.relevanceLookup(term));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBM25BadParameters() {
+		Similarity.bm25(1.2, 1.5);
+	}
+
+	@Test
+	public void testRemoveDocument() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		searchEngine.addDocument(DOCUMENT3_ID, new StringReader(DOCUMENT3));
+		assertTrue(searchEngine.removeDocument(DOCUMENT2_ID));
+		assertFalse(searchEngine.removeDocument(DOCUMENT2_ID));
+		assertEquals(new HashSet<>(Arrays.asList(DOCUMENT3_ID)), searchEngine.indexLookup("example"));
+		assertEquals(Arrays.asList(DOCUMENT1_ID), searchEngine.relevanceLookup("this"));
+		assertEquals(Arrays.asList(DOCUMENT3_ID), searchEngine.queryLookup("NOT this"));
+
+		// the deleted document counts towards idf until it is merged away
+		assertEquals(Math.log(4.0 / 3.0), searchEngine.inverseDocumentFrequency("this"), 0.0);
+		searchEngine.forceMerge();
+		assertEquals(Math.log(3.0 / 2.0), searchEngine.inverseDocumentFrequency("this"), 0.0);
+		assertEquals(Arrays.asList(DOCUMENT1_ID), searchEngine.relevanceLookup("this"));
+
+		searchEngine.addDocument(DOCUMENT2_ID, new StringReader(DOCUMENT2));
+		assertEquals(3, searchEngine.termFrequency(DOCUMENT2_ID, "example"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTermFrequencyRemoved() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.removeDocument(DOCUMENT1_ID);
+		searchEngine.termFrequency(DOCUMENT1_ID, "a");
+	}
+
+	@Test
+	public void testUpdateDocument() throws Exception {
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.updateDocument(DOCUMENT1_ID, new StringReader(DOCUMENT2));
+		assertEquals(3, searchEngine.termFrequency(DOCUMENT1_ID, "example"));
+		assertEquals(0, searchEngine.termFrequency(DOCUMENT1_ID, "a"));
+		assertTrue(searchEngine.indexLookup("sample").isEmpty());
+		searchEngine.updateDocument(DOCUMENT3_ID, new StringReader(DOCUMENT3));
+		assertEquals(new HashSet<>(Arrays.asList(DOCUMENT1_ID, DOCUMENT3_ID)), searchEngine.indexLookup("example"));
+	}
+
+	@Test
+	public void testBackgroundMergesMatchFreshEngine() throws Exception {
+		searchEngine.setMaxBufferedDocuments(7);
+		searchEngine.setMergeFactor(3);
+		Random random = new Random(0);
+		Map<DocumentId, String> live = new LinkedHashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			DocumentId id = new DocumentId("D" + random.nextInt(200));
+			String text = "common w" + random.nextInt(20) + " w" + random.nextInt(20);
+			int action = random.nextInt(4);
+			if (action == 0) {
+				assertEquals(live.remove(id) != null, searchEngine.removeDocument(id));
+			}
+			else if (action == 1) {
+				searchEngine.updateDocument(id, new StringReader(text));
+				live.put(id, text);
+			}
+			else {
+				searchEngine.addDocument(id, new StringReader(text));
+				live.putIfAbsent(id, text);
+			}
+			if (i % 50 == 0) {
+				assertEquals(live.keySet(), searchEngine.indexLookup("common"));
+			}
+		}
+		searchEngine.awaitMerges();
+		assertEquals(live.keySet(), searchEngine.indexLookup("common"));
+
+		searchEngine.forceMerge();
+		SearchEngine fresh = new SearchEngine();
+		for (Map.Entry<DocumentId, String> e : live.entrySet()) {
+			fresh.addDocument(e.getKey(), new StringReader(e.getValue()));
+		}
+		for (int w = 0; w < 20; w++) {
+			String term = "w" + w;
+			assertEquals(fresh.indexLookup(term), searchEngine.indexLookup(term));
+			assertEquals(fresh.inverseDocumentFrequency(term), searchEngine.inverseDocumentFrequency(term), 0.0);
+			assertEquals(fresh.relevanceLookup(term), searchEngine.relevanceLookup(term));
+		}
+		assertEquals(fresh.queryLookup("w1 OR NOT w2"), searchEngine.queryLookup("w1 OR NOT w2"));
+	}
+
+	@Test
+	public void testLookupsDuringWrites() throws Exception {
+		searchEngine.setMaxBufferedDocuments(50);
+		searchEngine.setMergeFactor(3);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		List<Thread> readers = new ArrayList<>();
+		for (int r = 0; r < 3; r++) {
+			readers.add(new Thread(() -> {
+				try {
+					int last = 0;
+					while (!done.get()) {
+						// every live document contains "common", in every consistent snapshot
+						assertEquals(0.0, searchEngine.inverseDocumentFrequency("common"), 0.0);
+						int size = searchEngine.indexLookup("common").size();
+						assertTrue(size >= last);
+						last = size;
+						assertTrue(searchEngine.relevanceLookup("common", 10).size() >= Math.min(10, size));
+						searchEngine.queryLookup("w1 OR w2");
+					}
+				}
+				catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			}));
+		}
+		for (Thread reader : readers) {
+			reader.start();
+		}
+		Random random = new Random(0);
+		for (int i = 0; i < 2000; i++) {
+			String text = "common w" + random.nextInt(20) + " w" + random.nextInt(20);
+			if (i % 100 == 0) {
+				Map<DocumentId, Reader> batch = new LinkedHashMap<>();
+				for (int j = 0; j < 20; j++) {
+					batch.put(new DocumentId("B" + i + "-" + j), new StringReader(text));
+				}
+				searchEngine.addDocuments(batch);
+			}
+			else if (i % 3 == 0) {
+				searchEngine.updateDocument(new DocumentId("D" + random.nextInt(i)), new StringReader(text));
+			}
+			else {
+				searchEngine.addDocument(new DocumentId("D" + i), new StringReader(text));
+			}
+		}
+		done.set(true);
+		for (Thread reader : readers) {
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(failure.get());
+		}
+		searchEngine.awaitMerges();
+		assertEquals(0.0, searchEngine.inverseDocumentFrequency("common"), 0.0);
+	}
+
+	@Test
+	public void testQueryCache() throws Exception {
+		addFood();
+		List<DocumentId> meat = searchEngine.relevanceLookup("meat", 2);
+		assertEquals(meat, searchEngine.relevanceLookup("MEAT", 2));
+		QueryCacheStats stats = searchEngine.queryCacheStats();
+		assertEquals(1, stats.hitCount());
+		assertEquals(1, stats.missCount());
+		assertEquals(0.5, stats.hitRate(), 0.0);
+		assertTrue(stats.latencyPercentile(99) >= stats.latencyPercentile(50));
+
+		DocumentId id = new DocumentId("meaty");
+		searchEngine.addDocument(id, new StringReader("meat meat meat meat meat"));
+		assertEquals(id, searchEngine.relevanceLookup("meat", 2).get(0));
+		searchEngine.removeDocument(id);
+		assertEquals(meat, searchEngine.relevanceLookup("meat", 2));
+		assertEquals(2, searchEngine.queryCacheStats().invalidationCount());
+
+		searchEngine.setQueryCacheSize(0);
+		assertEquals(meat, searchEngine.relevanceLookup("meat", 2));
+		assertEquals(0, searchEngine.queryCacheStats().missCount());
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		SearchEngineMetrics empty = searchEngine.metrics();
+		assertEquals(0, empty.documentCount());
+		assertEquals(0, empty.termCount());
+		assertEquals(0, empty.tokensPerSecond(), 0.0);
+		assertEquals(0, empty.relevanceLookupLatencyPercentile(99));
+
+		searchEngine.addDocument(new DocumentId("a"), new StringReader("x y y"));
+		searchEngine.addDocument(new DocumentId("b"), new StringReader("y z"));
+		searchEngine.addDocument(new DocumentId("a"), new StringReader("ignored"));
+		Map<DocumentId, Reader> batch = new LinkedHashMap<>();
+		batch.put(new DocumentId("c"), new StringReader("x x x x"));
+		batch.put(new DocumentId("d"), new StringReader(""));
+		searchEngine.addDocuments(batch);
+		searchEngine.updateDocument(new DocumentId("b"), new StringReader("w"));
+		searchEngine.relevanceLookup("y");
+		searchEngine.relevanceLookup("y", 1);
+		searchEngine.queryLookup("x OR y");
+
+		SearchEngineMetrics metrics = searchEngine.metrics();
+		assertEquals(1, metrics.segmentCount());
+		assertEquals(5, metrics.documentCount());
+		assertEquals(1, metrics.deletedDocumentCount());
+		// x: a, c; y: a, b (deleted); z: b (deleted); w: b
+		assertEquals(4, metrics.termCount());
+		assertEquals(6, metrics.postingCount());
+		assertEquals(1.5, metrics.meanPostingsPerTerm(), 0.0);
+		assertEquals(1, metrics.postingsPerTermPercentile(50));
+		assertEquals(2, metrics.postingsPerTermPercentile(100));
+		assertEquals(5, metrics.documentsAdded());
+		assertEquals(10, metrics.tokensIndexed());
+		assertTrue(metrics.tokensPerSecond() > 0);
+		assertTrue(metrics.addDocumentLatencyPercentile(99) >= metrics.addDocumentLatencyPercentile(50));
+		assertTrue(metrics.addDocumentLatencyPercentile(50) > 0);
+		assertEquals(1, metrics.addDocumentsCount());
+		assertTrue(metrics.addDocumentsLatencyPercentile(50) > 0);
+		assertEquals(2, metrics.relevanceLookupCount());
+		assertEquals(1, metrics.queryLookupCount());
+		assertTrue(metrics.queryLookupLatencyPercentile(50) > 0);
+		assertEquals(2, metrics.queryCacheStats().missCount());
+		assertTrue(metrics.postingsHeapBytes() > 0);
+		assertTrue(metrics.dictionaryHeapBytes() > 0);
+		assertTrue(metrics.documentsHeapBytes() > 0);
+		assertEquals(metrics.postingsHeapBytes() + metrics.dictionaryHeapBytes() + metrics.documentsHeapBytes(),
+				metrics.heapBytes());
+		assertEquals(0, metrics.mappedBytes());
+		assertEquals(0, metrics.mergeCount());
+
+		searchEngine.forceMerge();
+		metrics = searchEngine.metrics();
+		assertEquals(1, metrics.mergeCount());
+		assertEquals(4, metrics.documentCount());
+		assertEquals(0, metrics.deletedDocumentCount());
+		assertEquals(3, metrics.termCount());
+		assertEquals(4, metrics.postingCount());
+	}
+
+	@Test
+	public void testQueryCacheIdfGoesPositive() throws Exception {
+		DocumentId a = new DocumentId("a");
+		DocumentId b = new DocumentId("b");
+		searchEngine.addDocument(a, new StringReader("x"));
+		searchEngine.addDocument(b, new StringReader("x x"));
+		// every document has x, so every score is 0, and ties are broken by id
+		assertEquals(Arrays.asList(a, b), searchEngine.relevanceLookup("x", 2));
+		searchEngine.addDocument(new DocumentId("c"), new StringReader("y"));
+		assertEquals(Arrays.asList(b, a), searchEngine.relevanceLookup("x", 2));
+	}
+
+	@Test
+	public void testQueryCacheMatchesUncached() throws Exception {
+		SearchEngine uncached = new SearchEngine();
+		uncached.setQueryCacheSize(0);
+		searchEngine.setQueryCacheSize(5);
+		searchEngine.setMaxBufferedDocuments(10);
+		Random random = new Random(0);
+		for (int i = 0; i < 1000; i++) {
+			DocumentId id = new DocumentId("D" + random.nextInt(100));
+			// "common" is sometimes in every document, so that its idf goes to 0 and back
+			String text = (random.nextInt(10) == 0 ? "" : "common ") + "w" + random.nextInt(10) + " w" + random.nextInt(10);
+			int action = random.nextInt(3);
+			if (action == 0) {
+				searchEngine.removeDocument(id);
+				uncached.removeDocument(id);
+			}
+			else if (action == 1) {
+				searchEngine.updateDocument(id, new StringReader(text));
+				uncached.updateDocument(id, new StringReader(text));
+			}
+			else {
+				searchEngine.addDocument(id, new StringReader(text));
+				uncached.addDocument(id, new StringReader(text));
+			}
+			String term = random.nextBoolean() ? "common" : "w" + random.nextInt(10);
+			int k = random.nextInt(5);
+			assertEquals(uncached.relevanceLookup(term, k), searchEngine.relevanceLookup(term, k));
+		}
+		assertTrue(searchEngine.queryCacheStats().hitCount() > 0);
+		assertTrue(searchEngine.queryCacheStats().evictionCount() > 0);
+	}
+
+	@Test
+	public void testTopKRelevanceLookup() throws Exception {
+		addFood();
+		assertEquals(Arrays.asList(PAELLA_ID, FRIED_RICE_ID), searchEngine.relevanceLookup("meat", 2));
+		assertEquals(Arrays.asList(), searchEngine.relevanceLookup("meat", 0));
+		assertEquals(searchEngine.relevanceLookup("meat"), searchEngine.relevanceLookup("meat", 100));
+	}
+
+	@Test
+	public void testTopKMatchesComparatorSort() throws Exception {
+		Random random = new Random(0);
+		for (int i = 0; i < 500; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(5); j >= 0; j--) {
+				sb.append("common ");
+			}
+			searchEngine.addDocument(new DocumentId("D" + random.nextInt(100000)), new StringReader(sb.toString()));
+		}
+		List<DocumentId> expected = new ArrayList<>(searchEngine.indexLookup("common"));
+		expected.sort(new TfIdfComparator(searchEngine, "common"));
+		assertEquals(expected, searchEngine.relevanceLookup("common"));
+		for (int k : new int[] {1, 7, 64, 300}) {
+			assertEquals(expected.subList(0, k), searchEngine.relevanceLookup("common", k));
+		}
+	}
+
+	@Test
+	public void testRelevanceStream() throws Exception {
+		addFood();
+		List<DocumentId> ids = new ArrayList<>();
+		searchEngine.relevanceStream("MEAT").forEach(d -> {
+			assertEquals(searchEngine.tfIdf(d.documentId, "meat"), d.score, 0.0);
+			ids.add(d.documentId);
+		});
+		assertEquals(searchEngine.relevanceLookup("meat"), ids);
+		assertEquals(0, searchEngine.relevanceStream("foobar").count());
+	}
+
+	@Test
+	public void testRelevanceStreamPages() throws Exception {
+		Random random = new Random(0);
+		for (int i = 0; i < 500; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(5); j >= 0; j--) {
+				sb.append("w").append(random.nextInt(3)).append(" ");
+			}
+			searchEngine.addDocument(new DocumentId("D" + i), new StringReader(sb.toString()));
+		}
+		List<DocumentId> all = searchEngine.relevanceLookup("w1");
+		for (int page = 0; page * 25 < all.size(); page++) {
+			List<DocumentId> ids = new ArrayList<>();
+			searchEngine.relevanceStream("w1").skip(page * 25).limit(25).forEach(d -> ids.add(d.documentId));
+			assertEquals(all.subList(page * 25, Math.min(all.size(), page * 25 + 25)), ids);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTopKNegative() throws Exception {
+		searchEngine.relevanceLookup("meat", -1);
+	}
+
+	@Test
+	public void testAddDocumentsMatchesSerial() throws Exception {
+		Random random = new Random(0);
+		SearchEngine serial = new SearchEngine();
+		Map<DocumentId, StringReader> batch = new LinkedHashMap<>();
+		Map<DocumentId, String> texts = new LinkedHashMap<>();
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(20); j >= 0; j--) {
+				sb.append("w").append(random.nextInt(300)).append(random.nextBoolean() ? " " : ", ");
+			}
+			texts.put(new DocumentId("D" + i), sb.toString());
+		}
+		serial.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		texts.put(DOCUMENT1_ID, DOCUMENT2);
+		for (Map.Entry<DocumentId, String> e : texts.entrySet()) {
+			serial.addDocument(e.getKey(), new StringReader(e.getValue()));
+			batch.put(e.getKey(), new StringReader(e.getValue()));
+		}
+		searchEngine.addDocuments(batch);
+
+		for (String term : new String[] {"w0", "w7", "w299", "this", "example", "missing"}) {
+			assertEquals(serial.indexLookup(term), searchEngine.indexLookup(term));
+			assertEquals(serial.relevanceLookup(term), searchEngine.relevanceLookup(term));
+			assertEquals(serial.inverseDocumentFrequency(term), searchEngine.inverseDocumentFrequency(term), 0.0);
+		}
+		assertEquals(2, searchEngine.termFrequency(DOCUMENT1_ID, "a"));
+		for (DocumentId id : texts.keySet()) {
+			assertEquals(serial.termFrequency(id, "w5"), searchEngine.termFrequency(id, "w5"));
+		}
+	}
+
+	@Test
+	public void testAddDocumentsSealsFullSegments() throws Exception {
+		searchEngine.setMaxBufferedDocuments(10);
+		searchEngine.setMergeFactor(100);
+		SearchEngine serial = new SearchEngine();
+		serial.setMaxBufferedDocuments(10);
+		serial.setMergeFactor(100);
+		for (int i = 0; i < 3; i++) {
+			searchEngine.addDocument(new DocumentId("D" + i), new StringReader("common w" + i));
+			serial.addDocument(new DocumentId("D" + i), new StringReader("common w" + i));
+		}
+		Map<DocumentId, Reader> batch = new LinkedHashMap<>();
+		for (int i = 3; i < 98; i++) {
+			batch.put(new DocumentId("D" + i), new StringReader("common w" + i % 7));
+			serial.addDocument(new DocumentId("D" + i), new StringReader("common w" + i % 7));
+		}
+		searchEngine.addDocuments(batch);
+
+		// nine full segments, and eight documents in the in-memory one
+		SearchEngineMetrics metrics = searchEngine.metrics();
+		assertEquals(10, metrics.segmentCount());
+		assertEquals(98, metrics.documentCount());
+		assertEquals(1, metrics.addDocumentsCount());
+		assertTrue(metrics.addDocumentsLatencyPercentile(50) > 0);
+		for (String term : new String[] {"common", "w0", "w6", "w50"}) {
+			assertEquals(serial.indexLookup(term), searchEngine.indexLookup(term));
+			assertEquals(serial.relevanceLookup(term), searchEngine.relevanceLookup(term));
+		}
+	}
+
+	@Test
+	public void testAddDocumentsFailureAddsNothing() throws Exception {
+		Map<DocumentId, Reader> batch = new LinkedHashMap<>();
+		batch.put(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		batch.put(DOCUMENT2_ID, new Reader() {
+			@Override
+			public int read(char[] cbuf, int off, int len) throws IOException {
+				throw new IOException("broken");
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		try {
+			searchEngine.addDocuments(batch);
+			fail();
+		}
+		catch (IOException e) {
+			assertEquals("broken", e.getMessage());
+		}
+		assertEquals(new HashSet<DocumentId>(), searchEngine.indexLookup("this"));
+		searchEngine.addDocument(DOCUMENT1_ID, new StringReader(DOCUMENT1));
+		assertEquals(1, searchEngine.indexLookup("this").size());
+	}
+
 	@Test
 	public void testIrrelevantLookup() throws Exception {
 		addFood();
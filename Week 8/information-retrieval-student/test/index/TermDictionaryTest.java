@@ -0,0 +1,40 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TermDictionaryTest {
+
+	@Test
+	public void testIntern() throws Exception {
+		TermDictionary dictionary = new TermDictionary();
+		char[] chars = "xxfoobar".toCharArray();
+		String foo = dictionary.intern(chars, 2, 3);
+		assertEquals("foo", foo);
+		assertSame(foo, dictionary.intern("foo".toCharArray(), 0, 3));
+		assertEquals("", dictionary.intern(chars, 0, 0));
+		assertEquals(2, dictionary.size());
+	}
+
+	@Test
+	public void testManyTerms() throws Exception {
+		TermDictionary dictionary = new TermDictionary();
+		Map<String, String> expected = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			String term = "t" + (i % 50000);
+			String interned = dictionary.intern(term.toCharArray(), 0, term.length());
+			assertEquals(term, interned);
+			expected.putIfAbsent(term, interned);
+			assertSame(expected.get(term), interned);
+		}
+		assertEquals(50000, dictionary.size());
+	}
+}
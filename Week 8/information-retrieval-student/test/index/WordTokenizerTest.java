@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 Marc Liberatore.
+ */
+
+package index;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+public class WordTokenizerTest {
+
+	@Rule
+	public Timeout globalTimeout = Timeout.seconds(10); // 10 seconds
+
+	private WordTokenizer tokenizer;
+
+	@Before
+	public void setup() {
+		tokenizer = new WordTokenizer();
+	}
+
+	private List<String> tokenize(String text) throws Exception {
+		List<String> result = new ArrayList<>();
+		tokenizer.tokenize(new StringReader(text), result::add);
+		return result;
+	}
+
+	private static List<String> scan(String text) {
+		List<String> result = new ArrayList<>();
+		Scanner s = new Scanner(text);
+		s.useDelimiter("\\W+");
+		while (s.hasNext()) {
+			result.add(s.next().toLowerCase());
+		}
+		return result;
+	}
+
+	@Test
+	public void testEmpty() throws Exception {
+		assertEquals(List.of(), tokenize(""));
+		assertEquals(List.of(), tokenize(" .,; "));
+	}
+
+	@Test
+	public void testSimple() throws Exception {
+		assertEquals(List.of("pizza", "is", "a", "flatbread"), tokenize("Pizza is a  flatbread."));
+		assertEquals(List.of("10th", "snake_case", "spa", "etti"), tokenize("10th snake_case [spaˈɡetti]"));
+	}
+
+	@Test
+	public void testInterned() throws Exception {
+		List<String> terms = tokenize("Oven oven OVEN");
+		assertSame(terms.get(0), terms.get(1));
+		assertSame(terms.get(0), terms.get(2));
+		assertSame(terms.get(0), tokenize("oven").get(0));
+	}
+
+	@Test
+	public void testRandomMatchesScanner() throws Exception {
+		Random random = new Random(0);
+		String alphabet = "aAbBzZ09_ \t\n.,-'éßΩ ˈ";
+		for (int round = 0; round < 200; round++) {
+			StringBuilder sb = new StringBuilder();
+			for (int i = random.nextInt(20000); i > 0; i--) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			if (random.nextBoolean()) {
+				for (int i = 0; i < 10000; i++) {
+					sb.append('x');
+				}
+			}
+			String text = sb.toString();
+			assertEquals(scan(text), tokenize(text));
+		}
+	}
+}